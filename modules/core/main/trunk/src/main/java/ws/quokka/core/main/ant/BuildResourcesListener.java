@@ -30,6 +30,7 @@ import java.util.Set;
  * BuildResourcesListener recreates extracted build resources if they have been cleared.
  * This can happen if the temporary directory is deleted prior to the execution of a
  * target. This usually occurs if a target is executed immediately after "clean".
+ * As targets may be executed in parallel, extraction is synchronised.
  */
 public class BuildResourcesListener implements BuildListener {
     //~ Instance fields ------------------------------------------------------------------------------------------------
@@ -51,7 +52,7 @@ public class BuildResourcesListener implements BuildListener {
         return buildResources;
     }
 
-    public void addResource(String key) {
+    public synchronized void addResource(String key) {
         resources.add(key);
     }
 
@@ -61,7 +62,7 @@ public class BuildResourcesListener implements BuildListener {
     public void buildFinished(BuildEvent event) {
     }
 
-    public void targetStarted(BuildEvent event) {
+    public synchronized void targetStarted(BuildEvent event) {
         if ((project == event.getProject()) && (resources.size() != 0) && !buildResources.getTempDir().exists()) {
             event.getProject().log("Extracting build resources", Project.MSG_DEBUG);
 
@@ -19,25 +19,40 @@ package ws.quokka.core.main.ant;
 
 import org.apache.tools.ant.Project;
 
+import ws.quokka.core.repo_spi.BatchingRepository;
 import ws.quokka.core.repo_spi.RepoArtifact;
 import ws.quokka.core.repo_spi.RepoArtifactId;
 import ws.quokka.core.repo_spi.Repository;
 import ws.quokka.core.repo_spi.RepositoryFactory;
 
+import java.io.File;
+
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 
 /**
- *
+ * CachingRepository caches resolved artifacts from the underlying repository. Concurrent requests for the
+ * same artifact are coalesced so that only one request is made to the underlying repository, while requests
+ * for different artifacts proceed in parallel.
+ * <p/>
+ * Artifacts resolved without their content (metadata only) are held in a separate cache. They satisfy
+ * later metadata only requests, but are upgraded if the artifact itself is subsequently requested.
+ * <p/>
+ * When the cache outlives a build, for example within a {@link QuokkaDaemon}, {@link #revalidate()} should be
+ * called before it is reused to discard entries that may have changed since.
  */
-public class CachingRepository implements Repository {
+public class CachingRepository implements Repository, BatchingRepository {
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private Repository repository;
-    private final Map cache = Collections.synchronizedMap(new HashMap());
+    private final Object lock = new Object();
+    private final Map cache = new HashMap(); // Artifacts with content
+    private final Map metadataCache = new HashMap(); // Artifacts without content
+    private final SingleFlight requests = new SingleFlight(lock);
+    private final Map fingerprints = new HashMap(); // Fingerprints of the local copies of cached artifacts
     private Project project;
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
@@ -52,40 +67,118 @@ public class CachingRepository implements Repository {
     public void initialise() {
     }
 
+    public void setProject(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Evicts any artifacts whose local copies have changed since they were cached, along with all metadata only
+     * artifacts as there is nothing to validate them against
+     */
+    public void revalidate() {
+        int evicted = 0;
+
+        synchronized (lock) {
+            evicted += metadataCache.size();
+            metadataCache.clear();
+
+            for (Iterator i = cache.entrySet().iterator(); i.hasNext();) {
+                Map.Entry entry = (Map.Entry)i.next();
+                File localCopy = ((RepoArtifact)entry.getValue()).getLocalCopy();
+
+                if ((localCopy == null)
+                        || !DaemonRegistry.getFingerprint(localCopy).equals(fingerprints.get(entry.getKey()))) {
+                    fingerprints.remove(entry.getKey());
+                    i.remove();
+                    evicted++;
+                }
+            }
+        }
+
+        project.log("Evicted " + evicted + " changed artifact(s) from the repository cache", Project.MSG_DEBUG);
+    }
+
     public RepoArtifact resolve(RepoArtifactId artifactId) {
         return resolve(artifactId, true);
     }
 
-    public RepoArtifact resolve(RepoArtifactId artifactId, boolean retrieveArtifact) {
+    public RepoArtifact resolve(final RepoArtifactId artifactId, final boolean retrieveArtifact) {
         project.log("\nResolving: " + artifactId.toShortString(), Project.MSG_DEBUG);
 
-        synchronized (cache) {
-            RepoArtifact artifact = (RepoArtifact)cache.get(artifactId);
+        final RepoArtifactId key = artifactId.intern(); // Canonical keys avoid retaining the caller's annotations
 
-            if (artifact != null) {
-                return artifact;
-            }
+        // A request for metadata only is also satisfied by a request for the artifact in progress
+        Request alternative = retrieveArtifact ? null : new Request(key, true);
 
-            artifact = repository.resolve(artifactId, retrieveArtifact);
+        return (RepoArtifact)requests.get(new Request(key, retrieveArtifact), alternative,
+            new SingleFlight.Call() {
+                public Object getCached() {
+                    return CachingRepository.this.getCached(artifactId, retrieveArtifact);
+                }
 
-            if (retrieveArtifact || (artifact.getLocalCopy() != null)) {
-                // Make sure cache doesn't contain artifacts without content
-                // TODO: Add a separate cache for them ...
-                cache.put(artifactId, artifact);
-            }
+                public Object call() {
+                    RepoArtifact artifact = repository.resolve(artifactId, retrieveArtifact);
+                    project.log("Resolved: " + artifact, Project.MSG_DEBUG);
 
-            project.log("Resolved: " + artifact, Project.MSG_DEBUG);
+                    return artifact;
+                }
 
-            return artifact;
-        }
+                public void cache(Object result) {
+                    RepoArtifact artifact = (RepoArtifact)result;
+
+                    if (retrieveArtifact || (artifact.getLocalCopy() != null)) {
+                        cache.put(key, artifact);
+                        metadataCache.remove(key);
+
+                        if (artifact.getLocalCopy() != null) {
+                            fingerprints.put(key, DaemonRegistry.getFingerprint(artifact.getLocalCopy()));
+                        }
+                    } else {
+                        metadataCache.put(key, artifact);
+                    }
+                }
+            });
+    }
+
+    private RepoArtifact getCached(RepoArtifactId artifactId, boolean retrieveArtifact) {
+        RepoArtifact artifact = (RepoArtifact)cache.get(artifactId);
+
+        return ((artifact != null) || retrieveArtifact) ? artifact : (RepoArtifact)metadataCache.get(artifactId);
     }
 
     public void install(RepoArtifact artifact) {
         repository.install(artifact);
+        evict(artifact.getId());
     }
 
     public void remove(RepoArtifactId artifactId) {
         repository.remove(artifactId);
+        evict(artifactId);
+    }
+
+    public void startBatch() {
+        if (repository instanceof BatchingRepository) {
+            ((BatchingRepository)repository).startBatch();
+        }
+    }
+
+    public void commitBatch() {
+        if (repository instanceof BatchingRepository) {
+            ((BatchingRepository)repository).commitBatch();
+        }
+    }
+
+    /**
+     * Evicts the artifact given so that it is resolved again from the underlying repository
+     */
+    private void evict(RepoArtifactId artifactId) {
+        RepoArtifactId key = artifactId.intern();
+
+        synchronized (lock) {
+            cache.remove(key);
+            metadataCache.remove(key);
+            fingerprints.remove(key);
+        }
     }
 
     public Collection listArtifactIds(boolean includeReferenced) {
@@ -125,4 +218,37 @@ public class CachingRepository implements Repository {
     public void rebuildCaches() {
         repository.rebuildCaches();
     }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Request identifies a call to the underlying repository
+     */
+    private static class Request {
+        private RepoArtifactId id;
+        private boolean retrieveArtifact;
+
+        public Request(RepoArtifactId id, boolean retrieveArtifact) {
+            this.id = id;
+            this.retrieveArtifact = retrieveArtifact;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Request)) {
+                return false;
+            }
+
+            Request request = (Request)o;
+
+            return (retrieveArtifact == request.retrieveArtifact) && id.equals(request.id);
+        }
+
+        public int hashCode() {
+            return (31 * id.hashCode()) + (retrieveArtifact ? 1 : 0);
+        }
+    }
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.AntClassLoader;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.Path;
+
+import ws.quokka.core.model.Target;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * ClassLoaderPool allows plugin class loaders to be reused by targets with the same class path, avoiding
+ * reloading the plugin's classes for each target. A single pool is shared by the root project and all of
+ * its sub-projects and is closed when the root project finishes.
+ * <p/>
+ * Loaders are obtained via {@link #acquire(Target, Path)} and must be returned via {@link #release(AntClassLoader)}.
+ * Any loaders that have not been released by the time the pool is closed are reported as leaks.
+ * Plugins that rely on static state can opt out of pooling by adding their group to the
+ * "q.project.isolatedPlugins" property, or pooling can be disabled entirely by setting
+ * "q.project.poolClassLoaders" to false.
+ * <p/>
+ * Within a {@link QuokkaDaemon} the pool is persistent: it is obtained from the {@link DaemonRegistry} and
+ * its loaders are reused by later builds. A loader is discarded if its class path has changed since it was
+ * created, as determined by the fingerprints of the class path's entries.
+ */
+public class ClassLoaderPool implements BuildListener {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final String POOL = "q.classLoaderPool";
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Project project;
+    private Map loaders = new HashMap();
+    private Map borrowed = new HashMap();
+    private Map fingerprints = new HashMap(); // AntClassLoader -> class path fingerprint
+    private boolean persistent;
+    private int created;
+    private int reused;
+    private boolean closed;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public ClassLoaderPool(Project project) {
+        this(project, false);
+    }
+
+    /**
+     * @param persistent if true, loaders are retained for later builds when the root project finishes
+     */
+    public ClassLoaderPool(Project project, boolean persistent) {
+        this.project = project;
+        this.persistent = persistent;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the pool shared by the root project of the project given, creating it if necessary
+     */
+    public static ClassLoaderPool getPool(Project project) {
+        Project root = project;
+
+        while (root.getReference("q.parentProject") != null) {
+            root = (Project)root.getReference("q.parentProject");
+        }
+
+        synchronized (ClassLoaderPool.class) {
+            ClassLoaderPool pool = (ClassLoaderPool)root.getReference(POOL);
+
+            if (pool == null) {
+                DaemonRegistry registry = DaemonRegistry.getInstance();
+                pool = (registry == null) ? new ClassLoaderPool(root) : registry.getPool(root);
+                pool.attach(root);
+                root.addReference(POOL, pool);
+                root.addBuildListener(pool);
+            }
+
+            return pool;
+        }
+    }
+
+    /**
+     * Returns a loader for the class path given, reusing an existing loader if one exists
+     */
+    public synchronized AntClassLoader acquire(Target target, Path classPath) {
+        List key = new ArrayList();
+        key.add(classPath.toString());
+        key.add(project.getCoreLoader());
+
+        AntClassLoader loader = (AntClassLoader)loaders.get(key);
+        String fingerprint = getFingerprint(classPath);
+
+        if ((loader != null) && !fingerprint.equals(fingerprints.get(loader))) {
+            project.log("Class path has changed, discarding class loader for " + target.getName(), Project.MSG_VERBOSE);
+            discard(key, loader);
+            loader = null;
+        }
+
+        if (loader == null) {
+            loader = createLoader(project, target, classPath);
+            loaders.put(key, loader);
+            fingerprints.put(loader, fingerprint);
+            created++;
+        } else {
+            reused++;
+            project.log("Reusing class loader for " + target.getName(), Project.MSG_DEBUG);
+        }
+
+        Integer count = (Integer)borrowed.get(loader);
+        borrowed.put(loader, new Integer((count == null) ? 1 : (count.intValue() + 1)));
+
+        return loader;
+    }
+
+    /**
+     * Binds the pool and its loaders to the root project of a new build
+     */
+    private synchronized void attach(Project root) {
+        project = root;
+
+        for (Iterator i = loaders.values().iterator(); i.hasNext();) {
+            ((AntClassLoader)i.next()).setProject(root);
+        }
+    }
+
+    private void discard(List key, AntClassLoader loader) {
+        loaders.remove(key);
+        fingerprints.remove(loader);
+
+        if (!borrowed.containsKey(loader)) {
+            loader.cleanup();
+        }
+    }
+
+    /**
+     * Returns a fingerprint of the entries of the class path given
+     */
+    private String getFingerprint(Path classPath) {
+        StringBuffer fingerprint = new StringBuffer();
+        String[] entries = classPath.list();
+
+        for (int i = 0; i < entries.length; i++) {
+            fingerprint.append(DaemonRegistry.getFingerprint(new File(entries[i]))).append(";");
+        }
+
+        return fingerprint.toString();
+    }
+
+    /**
+     * Returns a loader to the pool. The loader remains open for reuse until the pool is closed.
+     */
+    public synchronized void release(AntClassLoader loader) {
+        Integer count = (Integer)borrowed.get(loader);
+
+        if (count != null) {
+            if (count.intValue() == 1) {
+                borrowed.remove(loader);
+            } else {
+                borrowed.put(loader, new Integer(count.intValue() - 1));
+            }
+        }
+
+        if (closed) {
+            loader.cleanup(); // Released after the pool was closed
+        }
+    }
+
+    /**
+     * Cleans up all pooled loaders, reporting any that are still in use
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        report();
+
+        for (Iterator i = loaders.values().iterator(); i.hasNext();) {
+            AntClassLoader loader = (AntClassLoader)i.next();
+
+            if (!borrowed.containsKey(loader)) {
+                loader.cleanup();
+            }
+        }
+
+        loaders.clear();
+        fingerprints.clear();
+    }
+
+    /**
+     * Reports the use of the pool during the build and any loaders that are still in use
+     */
+    private void report() {
+        project.log("Class loader pool: created " + created + ", reused " + reused, Project.MSG_VERBOSE);
+
+        for (Iterator i = borrowed.entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry)i.next();
+            project.log("Class loader leaked: " + entry.getKey() + " has " + entry.getValue()
+                + " unreleased reference(s)", Project.MSG_WARN);
+        }
+    }
+
+    public synchronized int getCreated() {
+        return created;
+    }
+
+    public synchronized int getReused() {
+        return reused;
+    }
+
+    public synchronized int getBorrowed() {
+        return borrowed.size();
+    }
+
+    /**
+     * Creates a new loader for the class path given, using a {@link QuokkaLoader} if debugging class loaders
+     */
+    static AntClassLoader createLoader(Project project, Target target, Path classPath) {
+        AntClassLoader loader;
+
+        if ("true".equals(project.getProperty("q.project.debugClassLoaders"))) {
+            loader = new QuokkaLoader(target, project.getClass().getClassLoader(), project, classPath);
+        } else {
+            loader = project.createClassLoader(classPath);
+        }
+
+        loader.setParent(project.getCoreLoader());
+        loader.setParentFirst(true);
+        loader.setIsolated(false);
+
+        return loader;
+    }
+
+    public synchronized void buildFinished(BuildEvent event) {
+        if (!persistent) {
+            close();
+
+            return;
+        }
+
+        // Retain the loaders for the next build. Ant closes their jars at the end of each build and they are
+        // reopened on demand.
+        report();
+        borrowed.clear();
+        created = 0;
+        reused = 0;
+    }
+
+    public void buildStarted(BuildEvent event) {
+    }
+
+    public void targetStarted(BuildEvent event) {
+    }
+
+    public void targetFinished(BuildEvent event) {
+    }
+
+    public void taskStarted(BuildEvent event) {
+    }
+
+    public void taskFinished(BuildEvent event) {
+    }
+
+    public void messageLogged(BuildEvent event) {
+    }
+}
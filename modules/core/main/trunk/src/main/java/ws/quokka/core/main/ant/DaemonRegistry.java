@@ -0,0 +1,105 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.Project;
+
+import java.io.File;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * DaemonRegistry holds the state that is kept warm between builds when running within a {@link QuokkaDaemon}:
+ * the repository factories and caches, keyed by their configuration, and the plugin class loader pool.
+ * Outside of a daemon there is no registry and this state is discarded when the root project finishes.
+ * <p/>
+ * State reused by a later build is invalidated using fingerprints (the size and modification time) of its
+ * file inputs. Cached artifacts are evicted if their local copies have changed (see
+ * {@link CachingRepository#revalidate()}) and class loaders are discarded if any entry of their class path
+ * has changed. Parsed plugins are cached for the life of the JVM by
+ * {@link ws.quokka.core.main.parser.StandardPluginParser}, keyed by a fingerprint of the plugin's jar.
+ */
+public class DaemonRegistry {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final int MAX_REPOSITORIES = 16;
+    private static DaemonRegistry instance;
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Map repositories = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_REPOSITORIES;
+            }
+        };
+
+    private ClassLoaderPool pool;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Enables the registry for the remainder of the life of the JVM
+     */
+    public static synchronized void enable() {
+        if (instance == null) {
+            instance = new DaemonRegistry();
+        }
+    }
+
+    /**
+     * Discards the registry and any state it holds
+     */
+    public static synchronized void disable() {
+        instance = null;
+    }
+
+    /**
+     * Returns the registry, or null if not running within a daemon
+     */
+    public static synchronized DaemonRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the shared repositories, keyed by configuration. Access must be synchronized on the map.
+     */
+    public Map getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * Returns the class loader pool, creating it for the root project given if necessary
+     */
+    public synchronized ClassLoaderPool getPool(Project root) {
+        if (pool == null) {
+            pool = new ClassLoaderPool(root, true);
+        }
+
+        return pool;
+    }
+
+    /**
+     * Returns a fingerprint of the file given that changes if the file is modified, replaced or removed
+     */
+    public static String getFingerprint(File file) {
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+}
@@ -31,12 +31,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 
 /**
@@ -97,7 +101,7 @@ public class DefaultBuildResources implements BuildResources {
      * Returns a file matching the resource key. If the key returns multiple resources, a directory
      * will be returned containing the resources.
      */
-    public File getFile(String key) {
+    public synchronized File getFile(String key) {
         Map urls = new HashMap();
         urls.put(toKey(key), getURL(key));
 
@@ -192,7 +196,9 @@ public class DefaultBuildResources implements BuildResources {
      */
     private void copy(URL url, File file) throws IOException {
         // Check if the file is up to date
-        if (isUpToDate(url, file)) {
+        Stamp stamp = getStamp(url);
+
+        if (isUpToDate(stamp, file)) {
             return;
         }
 
@@ -206,14 +212,75 @@ public class DefaultBuildResources implements BuildResources {
         File tempFile = new File(parentFile, file.getName() + "$quokka.tmp");
         Assert.isTrue(!tempFile.exists() || tempFile.delete(), "Unable to delete file: " + tempFile.getPath());
 
-        // Not a valid file URL, so retrieve data from URL and write to a file
-        new IOUtils().copyStream(url, tempFile);
+        // Not a valid file URL, so retrieve data from URL and write to a file. Closing the stream closes the jar.
+        new IOUtils().copyStream(openConnection(url).getInputStream(), tempFile);
 
         Assert.isTrue(tempFile.renameTo(file), "Unable to rename " + tempFile.getPath() + " to " + file.getPath());
+
+        // Stamp the copy with the resource's modification time so that it can be checked next time
+        if (stamp != null) {
+            file.setLastModified(stamp.lastModified);
+        }
+    }
+
+    /**
+     * Returns true if the file was previously copied from the resource with the stamp given and the resource
+     * hasn't changed since
+     */
+    private boolean isUpToDate(Stamp stamp, File file) {
+        long granularity = FileUtils.getFileUtils().getFileTimestampGranularity();
+
+        return (stamp != null) && file.exists() && (file.length() == stamp.length)
+        && (Math.abs(file.lastModified() - stamp.lastModified) <= granularity);
+    }
+
+    /**
+     * Returns the size and modification time of the resource, or null if either is unknown. Connections to jar
+     * entries generally don't report them, so they are read from the entry itself.
+     */
+    private Stamp getStamp(URL url) throws IOException {
+        URLConnection connection = openConnection(url);
+        long length;
+        long lastModified;
+
+        if (connection instanceof JarURLConnection) {
+            JarURLConnection jarConnection = (JarURLConnection)connection;
+            JarFile jar = jarConnection.getJarFile();
+
+            try {
+                JarEntry entry = (jarConnection.getEntryName() == null) ? null
+                                                                        : jar.getJarEntry(jarConnection.getEntryName());
+
+                if (entry == null) {
+                    return null;
+                }
+
+                length = entry.getSize();
+                lastModified = entry.getTime();
+            } finally {
+                jar.close(); // Not shared as caching is disabled
+            }
+        } else {
+            try {
+                length = connection.getContentLength();
+                lastModified = connection.getLastModified();
+            } finally {
+                connection.getInputStream().close();
+            }
+        }
+
+        return ((length < 0) || (lastModified <= 0)) ? null : new Stamp(length, lastModified);
     }
 
-    private boolean isUpToDate(URL url, File file) {
-        return false; // TODO: implement checking to prevent unecessary copying
+    /**
+     * Opens a connection to the URL with caching disabled, so that any jar it refers to is closed once the
+     * connection is finished with rather than being held open by the JVM
+     */
+    private URLConnection openConnection(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+
+        return connection;
     }
 
     public void putAll(Map buildResources) {
@@ -224,11 +291,11 @@ public class DefaultBuildResources implements BuildResources {
         resources.put(entry, resource);
     }
 
-    public Map getFiles(String root) {
+    public synchronized Map getFiles(String root) {
         return urlsToFiles(getURLs(root), false);
     }
 
-    public File getFileOrDir(String key) {
+    public synchronized File getFileOrDir(String key) {
         Map files = urlsToFiles(getURLs(key), true);
         Map.Entry entry = (Map.Entry)files.entrySet().iterator().next(); // Always at least one
         String firstKey = (String)entry.getKey();
@@ -265,4 +332,19 @@ public class DefaultBuildResources implements BuildResources {
                 }
             }.soften();
     }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Stamp holds the size and modification time of a resource
+     */
+    private static class Stamp {
+        private long length;
+        private long lastModified;
+
+        public Stamp(long length, long lastModified) {
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+
+import ws.quokka.core.bootstrap_util.Assert;
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.plugin_spi.Fingerprint;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * DefaultFingerprint stores the digests of a target's inputs and outputs in a properties file. Inputs are
+ * digested once, before the target does any work, so that changes made to inputs while the target executes
+ * cause it to execute again next time.
+ */
+public class DefaultFingerprint implements Fingerprint {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final String INPUTS = "inputs";
+    private static final String OUTPUTS = "outputs";
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private File file;
+    private Project project;
+    private List inputs = new ArrayList();
+    private List outputs = new ArrayList();
+    private String inputsDigest;
+    private boolean saved;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * @param file the file the fingerprint is stored in
+     */
+    public DefaultFingerprint(File file, Project project) {
+        this.file = file;
+        this.project = project;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void addInput(File file) {
+        add(inputs, file);
+    }
+
+    public void addInput(FileSet fileSet) {
+        add(inputs, fileSet);
+    }
+
+    public void addInput(Path path) {
+        String[] elements = path.list();
+
+        for (int i = 0; i < elements.length; i++) {
+            add(inputs, new File(elements[i]));
+        }
+    }
+
+    public void addProperty(String key, String value) {
+        add(inputs, key + "=" + ((value == null) ? "" : value));
+    }
+
+    public void addOutput(File file) {
+        add(outputs, file);
+    }
+
+    public void addOutput(FileSet fileSet) {
+        add(outputs, fileSet);
+    }
+
+    public boolean isUpToDate() {
+        String current = getInputsDigest(); // Always digest the inputs before the target does any work
+
+        if (!file.exists()) {
+            return false;
+        }
+
+        Properties previous = new IOUtils().loadProperties(file);
+
+        return current.equals(previous.getProperty(INPUTS))
+        && digest(outputs).equals(previous.getProperty(OUTPUTS));
+    }
+
+    public void save() {
+        Properties properties = new Properties();
+        properties.setProperty(INPUTS, getInputsDigest());
+        properties.setProperty(OUTPUTS, digest(outputs));
+
+        File dir = file.getParentFile();
+        Assert.isTrue(dir.exists() || dir.mkdirs(), "Unable to create directory: " + dir.getPath());
+        new IOUtils().saveProperties(file, properties);
+        saved = true;
+    }
+
+    /**
+     * Saves the fingerprint unless it has already been saved explicitly
+     */
+    public void saveIfRequired() {
+        if (!saved) {
+            save();
+        }
+    }
+
+    private String getInputsDigest() {
+        if (inputsDigest == null) {
+            inputsDigest = digest(inputs);
+        }
+
+        return inputsDigest;
+    }
+
+    private void add(List entries, Object entry) {
+        entries.add(entry);
+        inputsDigest = null;
+    }
+
+    /**
+     * Digests the entries. Files and file sets are expanded at this point so that the files present and their
+     * sizes and modification times are current.
+     */
+    private String digest(List entries) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+
+            for (Iterator i = entries.iterator(); i.hasNext();) {
+                Object entry = i.next();
+
+                if (entry instanceof File) {
+                    update(digest, (File)entry);
+                } else if (entry instanceof FileSet) {
+                    DirectoryScanner scanner = ((FileSet)entry).getDirectoryScanner(project);
+                    String[] files = scanner.getIncludedFiles();
+                    Arrays.sort(files);
+                    update(digest, "fileset:" + scanner.getBasedir().getAbsolutePath());
+
+                    for (int j = 0; j < files.length; j++) {
+                        update(digest, new File(scanner.getBasedir(), files[j]));
+                    }
+                } else {
+                    update(digest, "property:" + entry);
+                }
+            }
+
+            return new IOUtils().toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException(e);
+        }
+    }
+
+    private void update(MessageDigest digest, File file) {
+        if (file.isDirectory()) {
+            update(digest, "dir:" + file.getAbsolutePath());
+
+            String[] names = file.list();
+            Arrays.sort(names);
+
+            for (int i = 0; i < names.length; i++) {
+                update(digest, new File(file, names[i]));
+            }
+        } else {
+            update(digest,
+                "file:" + file.getAbsolutePath() + ":"
+                + (file.exists() ? (file.length() + ":" + file.lastModified()) : "missing"));
+        }
+    }
+
+    private void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF8"));
+            digest.update((byte)0);
+        } catch (UnsupportedEncodingException e) {
+            throw new BuildException(e);
+        }
+    }
+}
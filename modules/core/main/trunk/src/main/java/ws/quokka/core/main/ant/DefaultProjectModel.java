@@ -48,6 +48,7 @@ import ws.quokka.core.model.ProjectModel;
 import ws.quokka.core.model.Target;
 import ws.quokka.core.plugin_spi.BuildResources;
 import ws.quokka.core.plugin_spi.ResourcesAware;
+import ws.quokka.core.repo_resolver.ResolvedArtifact;
 import ws.quokka.core.repo_resolver.ResolvedPath;
 import ws.quokka.core.repo_resolver.Resolver;
 import ws.quokka.core.repo_resolver.ResolverAware;
@@ -55,6 +56,7 @@ import ws.quokka.core.repo_spi.RepoArtifact;
 import ws.quokka.core.repo_spi.RepoArtifactId;
 import ws.quokka.core.repo_spi.RepoDependency;
 import ws.quokka.core.repo_spi.RepoOverride;
+import ws.quokka.core.repo_spi.RepoOverrideIndex;
 import ws.quokka.core.repo_spi.RepoPath;
 import ws.quokka.core.repo_spi.RepoPathSpec;
 import ws.quokka.core.repo_spi.RepoType;
@@ -68,6 +70,8 @@ import ws.quokka.core.util.PropertyProvider;
 import ws.quokka.core.util.Strings;
 import ws.quokka.core.version.Version;
 
+import java.io.File;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -93,14 +97,15 @@ public class DefaultProjectModel implements ProjectModel {
     private BootStrapper bootStrapper;
     private Logger log;
     private Resolver pathResolver;
-    private ResolvedPath corePath = new ResolvedPath();
-    private List coreOverrides = new ArrayList();
+    private ResolvedPath corePath;
+    private List coreOverrides;
 
     // Attributes
-    private Map resolvedPaths = new HashMap();
+    private Map resolvedPaths = Collections.synchronizedMap(new HashMap());
 
-    // Helpers
+    // Helpers (caches are used while targets are executing, which may be in parallel)
     private Map pluginCache = new HashMap();
+    private Map deferredPlugins = new HashMap(); // RepoArtifactId -> PluginDependency, guarded by pluginCache
     private org.apache.tools.ant.Project antProject;
     private Repository repository;
     private PluginParser pluginParser;
@@ -109,8 +114,12 @@ public class DefaultProjectModel implements ProjectModel {
     private Map resolvedTargets = new HashMap();
     private DefaultBuildResources buildResources = new DefaultBuildResources();
     private List resolvedImports = new ArrayList();
-    private Map pathCache = Collections.synchronizedMap(new HashMap());
+    private Map pathCache = new HashMap(); // Guarded by itself
+    private SingleFlight pathResolutions = new SingleFlight(pathCache);
     private List overrides = new ArrayList();
+    private Map pluginOverrides = new HashMap(); // group:name:path -> RepoOverrideIndex
+    private ResolvedPathLock lock;
+    private boolean lockInitialised;
     private int counter;
 
     //~ Methods --------------------------------------------------------------------------------------------------------
@@ -163,12 +172,38 @@ public class DefaultProjectModel implements ProjectModel {
         this.pluginParser = pluginParser;
     }
 
-    public ResolvedPath getCorePath() {
+    /**
+     * Returns the core path, resolving it on first use
+     */
+    public synchronized ResolvedPath getCorePath() {
+        if (corePath == null) {
+            corePath = resolveCorePath();
+        }
+
         return corePath;
     }
 
     private void resolveTargets(Map resolved, PluginDependency pluginDependency) {
         List dependencyTargets = new ArrayList(pluginDependency.getTargets());
+
+        if (!pluginDependency.isUseDefaults() && (dependencyTargets.size() == 0)) {
+            // The plugin contributes no targets directly, so defer loading it until another plugin implements
+            // one of its targets (if ever). Resolve it now so that a missing plugin is still reported.
+            getArtifact(pluginDependency.getId());
+
+            synchronized (pluginCache) {
+                Plugin plugin = (Plugin)pluginCache.get(pluginDependency.getId());
+
+                if (plugin != null) {
+                    plugin.setDependency(pluginDependency); // Already loaded by a plugin declared earlier
+                } else {
+                    deferredPlugins.put(pluginDependency.getId(), pluginDependency);
+                }
+            }
+
+            return;
+        }
+
         Plugin plugin = getPluginInstance(pluginDependency.getId());
         plugin.setDependency(pluginDependency);
 
@@ -414,22 +449,20 @@ public class DefaultProjectModel implements ProjectModel {
             + id);
 
         // Apply any project overrides
-        for (Iterator i = overrides.iterator(); i.hasNext();) {
-            ws.quokka.core.model.Override override = (ws.quokka.core.model.Override)i.next();
-
-            if ((override.getWithVersion() != null) && override.matches(match)) {
-                Set paths = override.matchingPluginPaths(target.getPlugin().getArtifact().getId());
+        RepoOverrideIndex index = getPluginOverrides(target.getPlugin().getArtifact().getId(), matchingPath);
 
-                if (paths.contains(matchingPath) || ((paths.size() == 1) && paths.contains("*"))) {
-                    log.verbose("Overriding " + match.toShortString() + " to " + override.getWithVersion());
+        for (Iterator i = index.getMatches(match).iterator(); i.hasNext();) {
+            RepoOverride override = (RepoOverride)i.next();
 
-                    if (log.isDebugEnabled()) {
-                        log.debug("Applied " + override
-                            + ((override.getLocator() == null) ? "" : (" from " + override.getLocator())));
-                    }
+            if (override.getWithVersion() != null) {
+                log.verbose("Overriding " + match.toShortString() + " to " + override.getWithVersion());
 
-                    return new RepoArtifactId(id.getGroup(), id.getName(), id.getType(), override.getWithVersion());
+                if (log.isDebugEnabled()) {
+                    log.debug("Applied " + override
+                        + ((override.getLocator() == null) ? "" : (" from " + override.getLocator())));
                 }
+
+                return new RepoArtifactId(id.getGroup(), id.getName(), id.getType(), override.getWithVersion());
             }
         }
 
@@ -446,14 +479,22 @@ public class DefaultProjectModel implements ProjectModel {
     }
 
     private Plugin getPluginInstance(RepoArtifactId id) {
-        Plugin plugin = (Plugin)pluginCache.get(id);
+        synchronized (pluginCache) {
+            Plugin plugin = (Plugin)pluginCache.get(id);
 
-        if (plugin == null) {
-            plugin = pluginParser.getPluginInstance(getArtifact(id));
-            pluginCache.put(id, plugin);
-        }
+            if (plugin == null) {
+                plugin = pluginParser.getPluginInstance(getArtifact(id));
+                pluginCache.put(id, plugin);
 
-        return plugin;
+                PluginDependency deferred = (PluginDependency)deferredPlugins.remove(id);
+
+                if (deferred != null) {
+                    plugin.setDependency(deferred);
+                }
+            }
+
+            return plugin;
+        }
     }
 
     public void setRepository(Repository repository) {
@@ -463,6 +504,12 @@ public class DefaultProjectModel implements ProjectModel {
     public void initialise() {
         pathResolver = new Resolver(repository, log);
 
+        String resolverThreads = antProject.getProperty("q.resolver.threads");
+
+        if (resolverThreads != null) {
+            pathResolver.setThreads(Integer.parseInt(resolverThreads));
+        }
+
         // Add ant-types path
         project.getDependencySet().addPath(new Path("ant-types",
                 "Dependencies added to this path are available to ant optional tasks."));
@@ -559,11 +606,6 @@ public class DefaultProjectModel implements ProjectModel {
         }
 
         resolvedTargets = targets;
-        corePath = resolveCorePath();
-
-        if ("true".equals(antProject.getProperty("q.project.overrideCore"))) {
-            coreOverrides = getCoreOverrides();
-        }
     }
 
     private List depthFirst(DependencySet dependencySet) {
@@ -624,6 +666,41 @@ public class DefaultProjectModel implements ProjectModel {
         return overrides;
     }
 
+    /**
+     * Returns the project overrides that apply to the given path of a plugin, indexed for matching.
+     * The overrides are copies with the matching plugin paths moved to be standard (wildcard) paths.
+     * The result is cached per plugin path as it is needed every time a plugin path is resolved.
+     */
+    private RepoOverrideIndex getPluginOverrides(RepoArtifactId pluginId, String pathId) {
+        String key = pluginId.getGroup() + ":" + pluginId.getName() + ":" + pathId;
+
+        synchronized (pluginOverrides) {
+            RepoOverrideIndex index = (RepoOverrideIndex)pluginOverrides.get(key);
+
+            if (index == null) {
+                List matching = new ArrayList();
+
+                for (Iterator i = overrides.iterator(); i.hasNext();) {
+                    ws.quokka.core.model.Override override = (ws.quokka.core.model.Override)i.next();
+                    Set paths = override.matchingPluginPaths(pluginId);
+
+                    if (paths.contains(pathId) || ((paths.size() == 1) && paths.contains("*"))) {
+                        RepoOverride copy = new RepoOverride(Collections.singleton("*"), override.getGroup(),
+                                override.getName(), override.getType(), override.getVersion(),
+                                override.getWithVersion(), override.getWithPathSpecs());
+                        copy.setLocator(override.getLocator());
+                        matching.add(copy);
+                    }
+                }
+
+                index = new RepoOverrideIndex(matching);
+                pluginOverrides.put(key, index);
+            }
+
+            return index;
+        }
+    }
+
     public Plugin getPlugin(RepoArtifactId id) {
         for (Iterator i = resolvedTargets.values().iterator(); i.hasNext();) {
             List pluginTargets = (List)i.next();
@@ -736,11 +813,17 @@ public class DefaultProjectModel implements ProjectModel {
 
         resolvedProperties.putAll(applyProfiles(project.getProperties(), project.getActiveProfiles().getElements()));
 
-        // Put the project paths as properties
-        for (Iterator i = resolvedPaths.entrySet().iterator(); i.hasNext();) {
-            Map.Entry entry = (Map.Entry)i.next();
-            resolvedProperties.put("q.project.path." + entry.getKey(),
-                toAntPath(getProjectPath((String)entry.getKey(), false, true)).toString());
+        // Put the project paths as properties. Resolving may lock the path cache, so iterate over a copy
+        List pathIds;
+
+        synchronized (resolvedPaths) {
+            pathIds = new ArrayList(resolvedPaths.keySet());
+        }
+
+        for (Iterator i = pathIds.iterator(); i.hasNext();) {
+            String pathId = (String)i.next();
+            resolvedProperties.put("q.project.path." + pathId,
+                toAntPath(getProjectPath(pathId, false, true)).toString());
         }
 
         return resolvedProperties;
@@ -770,21 +853,43 @@ public class DefaultProjectModel implements ProjectModel {
         }
     }
 
-    public List resolvePathGroup(Target target, String pathGroupId) {
+    public List resolvePathGroup(final Target target, final String pathGroupId) {
         // This code path now gets hit frequently when resolving plugin interdependencies, so cache
         String key = "pathGroup#" + target.getPlugin().toShortString() + "#" + target.getName() + "#" + pathGroupId;
-        List path = (List)pathCache.get(key);
 
-        if (path == null) {
-            path = _resolvePathGroup(target, pathGroupId);
-            pathCache.put(key, path);
-        } else {
-            if (log.isDebugEnabled()) {
-                log.debug("Cache hit for: " + key);
-            }
-        }
+        return (List)getCachedPath(key,
+            new PathResolution() {
+                public Object resolve() {
+                    return _resolvePathGroup(target, pathGroupId);
+                }
+            });
+    }
 
-        return path;
+    /**
+     * Returns the path cached under the key given, resolving it if necessary. Concurrent requests for the same
+     * key are coalesced so that the path is only resolved once, while different paths are resolved in parallel.
+     */
+    private Object getCachedPath(final String key, final PathResolution resolution) {
+        return pathResolutions.get(key, null,
+            new SingleFlight.Call() {
+                public Object getCached() {
+                    Object path = pathCache.get(key);
+
+                    if ((path != null) && log.isDebugEnabled()) {
+                        log.debug("Cache hit for: " + key);
+                    }
+
+                    return path;
+                }
+
+                public Object call() {
+                    return resolution.resolve();
+                }
+
+                public void cache(Object path) {
+                    pathCache.put(key, path);
+                }
+            });
     }
 
     public List _resolvePathGroup(Target target, String pathGroupId) {
@@ -893,22 +998,17 @@ public class DefaultProjectModel implements ProjectModel {
         return resolvePathGroup(target, id);
     }
 
-    public ResolvedPath getResolvedPluginPath(Plugin plugin, String pathId, boolean mergeWithCore,
-        boolean overrideCore, boolean flatten) {
+    public ResolvedPath getResolvedPluginPath(final Plugin plugin, final String pathId, final boolean mergeWithCore,
+        final boolean overrideCore, final boolean flatten) {
         String key = "pluginPath#" + plugin.toShortString() + "#" + pathId + "#" + mergeWithCore + "#" + overrideCore
             + "#" + flatten;
-        ResolvedPath path = (ResolvedPath)pathCache.get(key);
-
-        if (path == null) {
-            path = _getResolvedPluginPath(plugin, pathId, mergeWithCore, overrideCore, flatten);
-            pathCache.put(key, path);
-        } else {
-            if (log.isDebugEnabled()) {
-                log.debug("Cache hit for: " + key);
-            }
-        }
 
-        return path;
+        return (ResolvedPath)getCachedPath(key,
+            new PathResolution() {
+                public Object resolve() {
+                    return _getResolvedPluginPath(plugin, pathId, mergeWithCore, overrideCore, flatten);
+                }
+            });
     }
 
     public ResolvedPath _getResolvedPluginPath(Plugin plugin, String pathId, boolean mergeWithCore,
@@ -949,76 +1049,88 @@ public class DefaultProjectModel implements ProjectModel {
 
         // Add core overrides if applicable
         if (overrideCore) {
-            for (Iterator j = coreOverrides.iterator(); j.hasNext();) {
+            for (Iterator j = getCoreOverrides().iterator(); j.hasNext();) {
                 RepoOverride override = (RepoOverride)j.next();
                 artifact.addOverride(override);
             }
         }
 
         // Add overrides
-        for (Iterator i = overrides.iterator(); i.hasNext();) {
-            ws.quokka.core.model.Override override = (ws.quokka.core.model.Override)i.next();
-            Set paths = override.matchingPluginPaths(plugin.getArtifact().getId());
-
-            if (paths.contains(pathId) || ((paths.size() == 1) && paths.contains("*"))) {
-                // Create a copy of the override, moving matching plugin paths to be standard paths
-                RepoOverride copy = new RepoOverride(Collections.singleton("*"), override.getGroup(),
-                        override.getName(), override.getType(), override.getVersion(), override.getWithVersion(),
-                        override.getWithPathSpecs());
-                artifact.addOverride(copy);
-            }
+        for (Iterator i = getPluginOverrides(pluginId, pathId).getOverrides().iterator(); i.hasNext();) {
+            artifact.addOverride((RepoOverride)i.next());
         }
 
         // Remove the plugin itself from the path
         // TODO: Look into a better way of doing this, perhaps modifying Resolver so it has the option
         // of not adding the root in first place.
-        ResolvedPath path = pathResolver.resolvePath(id, artifact);
+        ResolvedPath path = resolveLockedPath("plugin#" + pluginId.toShortString() + "#" + pathId + "#" + overrideCore,
+                id, artifact);
         path.setId("Plugin path '" + pathId + "' from " + pluginId.toShortString());
 
-        List artifacts = new ArrayList();
+        ResolvedPath withoutPlugin = new ResolvedPath();
+        withoutPlugin.setId(path.getId());
 
-        for (Iterator i = path.getArtifacts().iterator(); i.hasNext();) {
-            artifact = (RepoArtifact)i.next();
+        for (Iterator i = path.getResolvedArtifacts().iterator(); i.hasNext();) {
+            ResolvedArtifact resolved = (ResolvedArtifact)i.next();
 
-            if (!artifact.getId().equals(pluginId)) {
-                artifacts.add(artifact);
+            if (!resolved.getId().equals(pluginId)) {
+                withoutPlugin.add(resolved);
             }
 
-            if (pluginId.equals(artifact.getId().getAnnotations().get("declaredBy"))) {
-                artifact.getId().getAnnotations().remove("declaredBy");
+            ResolvedArtifact declaredBy = (ResolvedArtifact)resolved.getAnnotations().get("declaredBy");
+
+            if ((declaredBy != null) && pluginId.equals(declaredBy.getId())) {
+                resolved.getAnnotations().remove("declaredBy");
             }
         }
 
-        path = new ResolvedPath(path.getId(), artifacts);
-        path = handleMergeAndFlatten(mergeWithCore, flatten, path);
+        path = handleMergeAndFlatten(mergeWithCore, flatten, withoutPlugin);
 
         return path;
     }
 
+    /**
+     * Returns the artifact from the lock if it is unchanged since it was last resolved, otherwise from the repository.
+     * The artifact is shared, so any contextual information is held by ResolvedArtifact views.
+     */
     private RepoArtifact getArtifact(RepoArtifactId artifactId) {
-        return (RepoArtifact)repository.resolve(artifactId).clone(); // Clone to allow additional annotations to be added within context
+        ResolvedPathLock lock = getLock();
+        RepoArtifact artifact = (lock == null) ? null : lock.getArtifact(artifactId);
+
+        if (artifact == null) {
+            artifact = repository.resolve(artifactId);
+
+            if (lock != null) {
+                lock.putArtifact(artifact);
+            }
+        } else if (log.isDebugEnabled()) {
+            log.debug("Using locked artifact: " + artifactId.toShortString());
+        }
+
+        return artifact;
     }
 
     public List getProjectPath(String id, boolean mergeWithCore, boolean flatten) {
         return getReslovedProjectPath(id, mergeWithCore, mergeWithCore, flatten).getArtifacts();
     }
 
-    public ResolvedPath getReslovedProjectPath(String id, boolean mergeWithCore, boolean overrideCore, boolean flatten) {
+    public ResolvedPath getReslovedProjectPath(final String id, final boolean mergeWithCore,
+        final boolean overrideCore, final boolean flatten) {
         String key = "projectPath#" + id + "#" + mergeWithCore + "#" + overrideCore + "#" + flatten;
-        ResolvedPath path = (ResolvedPath)pathCache.get(key);
 
-        if (path == null) {
-            path = getReslovedProjectPath(id, mergeWithCore, overrideCore, flatten, new ArrayList());
-            pathCache.put(key, path);
-        } else {
-            if (log.isDebugEnabled()) {
-                log.debug("Cache hit for: " + key);
-            }
-        }
-
-        return path;
+        return (ResolvedPath)getCachedPath(key,
+            new PathResolution() {
+                public Object resolve() {
+                    return getReslovedProjectPath(id, mergeWithCore, overrideCore, flatten, null);
+                }
+            });
     }
 
+    /**
+     * Resolves the project path given
+     * @param appliedOverrides any overrides applied during resolution will be added to this list. If null,
+     * the path may be taken from the lock instead of being resolved.
+     */
     public ResolvedPath getReslovedProjectPath(String id, boolean mergeWithCore, boolean overrideCore, boolean flatten,
         List appliedOverrides) {
         if (log.isDebugEnabled()) {
@@ -1042,7 +1154,7 @@ public class DefaultProjectModel implements ProjectModel {
 
             // Add core overrides first if applicable
             if (overrideCore) {
-                for (Iterator j = coreOverrides.iterator(); j.hasNext();) {
+                for (Iterator j = getCoreOverrides().iterator(); j.hasNext();) {
                     RepoOverride override = (RepoOverride)j.next();
                     artifact.addOverride(override);
                 }
@@ -1056,12 +1168,21 @@ public class DefaultProjectModel implements ProjectModel {
         }
 
         // Copy the project paths to the artifact
-        for (Iterator i = resolvedPaths.values().iterator(); i.hasNext();) {
-            RepoPath path = (RepoPath)i.next();
-            artifact.addPath(path);
+        synchronized (resolvedPaths) {
+            for (Iterator i = resolvedPaths.values().iterator(); i.hasNext();) {
+                RepoPath path = (RepoPath)i.next();
+                artifact.addPath(path);
+            }
+        }
+
+        ResolvedPath path;
+
+        if (appliedOverrides == null) {
+            path = resolveLockedPath("project#" + id + "#" + overrideCore, id, artifact);
+        } else {
+            path = pathResolver.resolvePath(id, artifact, appliedOverrides, false, true);
         }
 
-        ResolvedPath path = pathResolver.resolvePath(id, artifact, appliedOverrides, false, true);
         path.setId("Project path '" + id + "'");
 
         path = handleMergeAndFlatten(mergeWithCore, flatten, path);
@@ -1070,13 +1191,100 @@ public class DefaultProjectModel implements ProjectModel {
     }
 
     /**
-     * Overrides anything that conflicts with the core to the core version
+     * Resolves the path for the mock artifact given, reusing the path from the lock if the inputs to
+     * the resolver are unchanged since it was locked
+     */
+    private ResolvedPath resolveLockedPath(String key, String pathId, RepoArtifact artifact) {
+        ResolvedPathLock lock = getLock();
+
+        if (lock == null) {
+            return pathResolver.resolvePath(pathId, artifact);
+        }
+
+        String fingerprint = lock.fingerprint(pathId, artifact);
+        ResolvedPath path = lock.get(key, fingerprint);
+
+        if (path != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Using locked path for: " + key);
+            }
+
+            return path;
+        }
+
+        path = pathResolver.resolvePath(pathId, artifact);
+        lock.put(key, fingerprint, path);
+
+        return path;
+    }
+
+    /**
+     * Returns the lock for resolved paths and artifacts, or null if locking is disabled
+     */
+    private synchronized ResolvedPathLock getLock() {
+        if (!lockInitialised) {
+            lockInitialised = true;
+
+            if (!"false".equals(antProject.getProperty("q.resolver.lock"))) {
+                String file = antProject.getProperty("q.resolver.lockFile");
+                lock = new ResolvedPathLock((file != null) ? new File(file)
+                                                           : new File(getTargetDir(), "resolved-paths.lock"));
+
+                // Paths resolved from different repositories must not be reused
+                RepositoryFactory factory = (RepositoryFactory)antProject.getReference(
+                        ProjectHelper.REPOSITORY_FACTORY);
+
+                if (factory != null) {
+                    lock.setConfiguration(ProjectHelper.getRepositoryKey(factory.getProperties()));
+                }
+
+                // Save once the whole build has finished, rather than after each path is locked
+                org.apache.tools.ant.Project root = antProject;
+
+                while (root.getReference("q.parentProject") != null) {
+                    root = (org.apache.tools.ant.Project)root.getReference("q.parentProject");
+                }
+
+                root.addBuildListener(lock);
+            }
+        }
+
+        return lock;
+    }
+
+    /**
+     * Returns the target directory. The lock is used while initialising and loading properties, before the
+     * project properties are defined in ant, so the value is determined from the project properties if necessary.
+     */
+    private String getTargetDir() {
+        String targetDir = antProject.getProperty("q.project.targetDir");
+
+        if ((targetDir == null) && (project.getProperties() != null) && (project.getActiveProfiles() != null)) {
+            targetDir = applyProfiles(project.getProperties(), project.getActiveProfiles().getElements()).getProperty(
+                    "q.project.targetDir");
+        }
+
+        return (targetDir == null) ? new File(antProject.getBaseDir(), "target").getPath()
+                                   : antProject.replaceProperties(targetDir);
+    }
+
+    /**
+     * Overrides anything that conflicts with the core to the core version if q.project.overrideCore is true.
      * This will allow old plugins to potentially work without overriding them
      */
-    private List getCoreOverrides() {
+    private synchronized List getCoreOverrides() {
+        if (coreOverrides == null) {
+            coreOverrides = "true".equals(antProject.getProperty("q.project.overrideCore")) ? createCoreOverrides()
+                                                                                            : new ArrayList();
+        }
+
+        return coreOverrides;
+    }
+
+    private List createCoreOverrides() {
         List overrides = new ArrayList();
 
-        for (Iterator i = corePath.getArtifacts().iterator(); i.hasNext();) {
+        for (Iterator i = getCorePath().getArtifacts().iterator(); i.hasNext();) {
             RepoArtifact artifact = (RepoArtifact)i.next();
             RepoArtifactId id = artifact.getId();
             overrides.add(new RepoOverride(Collections.singleton("*"), id.getGroup(), id.getName(), id.getType(), null,
@@ -1098,20 +1306,22 @@ public class DefaultProjectModel implements ProjectModel {
 
     private ResolvedPath mergeWithCore(ResolvedPath path) {
         // Will throw a detailed exception on conflict
-        pathResolver.merge(Arrays.asList(new ResolvedPath[] { corePath, path }));
+        ResolvedPath core = getCorePath();
+        pathResolver.merge(Arrays.asList(new ResolvedPath[] { core, path }));
 
         // Now strip any artifacts that are found in the core
-        List artifacts = new ArrayList();
+        ResolvedPath stripped = new ResolvedPath();
+        stripped.setId(path.getId());
 
-        for (Iterator i = path.getArtifacts().iterator(); i.hasNext();) {
-            RepoArtifact artifact = (RepoArtifact)i.next();
+        for (Iterator i = path.getResolvedArtifacts().iterator(); i.hasNext();) {
+            ResolvedArtifact artifact = (ResolvedArtifact)i.next();
 
-            if (!corePath.contains(artifact.getId())) {
-                artifacts.add(artifact);
+            if (!core.contains(artifact.getId())) {
+                stripped.add(artifact);
             }
         }
 
-        return new ResolvedPath(path.getId(), artifacts);
+        return stripped;
     }
 
     public Map getResolvedPaths() {
@@ -1150,7 +1360,9 @@ public class DefaultProjectModel implements ProjectModel {
     public TargetInstance createTargetInstance(Target target, Logger logger) {
         //        System.out.println("DefaultProjectModel.createTargetInstance");
         AntClassLoader loader = null;
-        DefaultResources resources;
+        ClassLoaderPool pool = null;
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        DefaultResources resources = null;
 
         try {
             org.apache.tools.ant.types.Path classPath = toAntPath(resolvePathGroup(target, "classpath"));
@@ -1173,16 +1385,15 @@ public class DefaultProjectModel implements ProjectModel {
                 classPath.append(existing); // Make sure additions override existing
             }
 
-            if ("true".equals(antProject.getProperty("q.project.debugClassLoaders"))) {
-                loader = new QuokkaLoader(target, antProject.getClass().getClassLoader(), antProject, classPath);
+            if (isPooled(target)) {
+                pool = ClassLoaderPool.getPool(antProject);
+                loader = pool.acquire(target, classPath);
             } else {
-                loader = antProject.createClassLoader(classPath);
+                loader = ClassLoaderPool.createLoader(antProject, target, classPath);
             }
 
-            loader.setParent(antProject.getCoreLoader());
-            loader.setParentFirst(true);
-            loader.setIsolated(false);
-            loader.setThreadContextLoader();
+            // Set the context loader directly as pooled loaders may be shared by targets running in parallel
+            Thread.currentThread().setContextClassLoader(loader);
 
             // Initialise this plugin
             Plugin plugin = target.getPlugin();
@@ -1222,12 +1433,36 @@ public class DefaultProjectModel implements ProjectModel {
             Runnable targ = actualPlugin.getTarget((target.getTemplateName() != null) ? target.getTemplateName()
                                                                                       : target.getName());
 
-            return new TargetInstance(actualPlugin, targ, loader);
+            TargetInstance instance = new TargetInstance(actualPlugin, targ, loader, pool, contextLoader);
+            instance.setResources(resources);
+
+            return instance;
         } catch (Exception e) {
+            Thread.currentThread().setContextClassLoader(contextLoader);
+
+            if (pool != null) {
+                pool.release(loader);
+            }
+
             throw new BuildException(e);
         }
     }
 
+    /**
+     * Returns true if the target's plugin class loader can be reused by other targets. Plugins that rely on
+     * static state can be given a class loader per target by listing their group in q.project.isolatedPlugins.
+     */
+    private boolean isPooled(Target target) {
+        if ("false".equals(antProject.getProperty("q.project.poolClassLoaders"))) {
+            return false;
+        }
+
+        String isolated = antProject.getProperty("q.project.isolatedPlugins");
+
+        return (isolated == null)
+        || !Strings.commaSepList(isolated).contains(target.getPlugin().getArtifact().getId().getGroup());
+    }
+
     protected ResolvedPath resolveCorePath() {
         List ids = new ArrayList();
 
@@ -1312,8 +1547,8 @@ public class DefaultProjectModel implements ProjectModel {
         Assert.isTrue(dependency != null,
             "The template '" + template + "' has not been declared for plugin '" + pluginId.toShortString() + "'");
 
-        // TODO ... reparsing is wasteful, but at present it's the easiest way to ensure it doesn't interfere
-        // with any other targets
+        // Get a fresh copy of the plugin so that the template instance doesn't interfere with any other targets.
+        // The parser caches parsed plugins, so this is cheap.
         Plugin plugin = pluginParser.getPluginInstance(getArtifact(dependency.getId()));
         template = (template.indexOf(":") != -1) ? template : (plugin.getNameSpace() + ":" + template);
 
@@ -1321,10 +1556,16 @@ public class DefaultProjectModel implements ProjectModel {
         Assert.isTrue((target != null) && target.isTemplate(),
             "There is no template named '" + template + "' within plugin '" + dependency.getId().toShortString());
 
-        String prefix = "q.project.script" + ++counter;
+        int number;
+
+        synchronized (this) {
+            number = ++counter;
+        }
+
+        String prefix = "q.project.script" + number;
         target.setPrefix(prefix);
         target.setTemplateName(target.getName());
-        target.setName(target.getName() + counter);
+        target.setName(target.getName() + number);
 
         for (Iterator i = properties.entrySet().iterator(); i.hasNext();) {
             Map.Entry entry = (Map.Entry)i.next();
@@ -1360,6 +1601,13 @@ public class DefaultProjectModel implements ProjectModel {
 
     //~ Inner Classes --------------------------------------------------------------------------------------------------
 
+    /**
+     * PathResolution resolves a path on behalf of {@link DefaultProjectModel#getCachedPath(String, PathResolution)}
+     */
+    private interface PathResolution {
+        Object resolve();
+    }
+
     public static class Timer {
         private static List timers = new ArrayList();
 
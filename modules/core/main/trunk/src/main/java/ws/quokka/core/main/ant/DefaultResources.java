@@ -23,9 +23,12 @@ import org.apache.tools.ant.types.Path;
 import ws.quokka.core.bootstrap_util.Logger;
 import ws.quokka.core.model.Target;
 import ws.quokka.core.plugin_spi.BuildResources;
+import ws.quokka.core.plugin_spi.Fingerprint;
 import ws.quokka.core.plugin_spi.PluginState;
 import ws.quokka.core.plugin_spi.Resources;
 
+import java.io.File;
+
 
 /**
  *
@@ -37,6 +40,7 @@ public class DefaultResources implements Resources {
     private Project antProject;
     private DefaultProjectModel projectModel;
     private Logger logger;
+    private DefaultFingerprint fingerprint;
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
 
@@ -106,4 +110,25 @@ public class DefaultResources implements Resources {
     public Logger getLogger() {
         return logger;
     }
+
+    public synchronized Fingerprint getFingerprint() {
+        if (fingerprint == null) {
+            String targetDir = antProject.getProperty("q.project.targetDir");
+            File dir = new File((targetDir == null) ? new File(antProject.getBaseDir(), "target") : new File(targetDir),
+                    "fingerprints");
+            String name = target.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+            fingerprint = new DefaultFingerprint(new File(dir, name + ".properties"), antProject);
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Saves the fingerprint if the target requested one. Called once the target has completed successfully.
+     */
+    public synchronized void saveFingerprint() {
+        if (fingerprint != null) {
+            fingerprint.saveIfRequired();
+        }
+    }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.BuildLogger;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.SubBuildListener;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * LogSerialiser takes the place of a project's loggers while work is executed in parallel, allowing the
+ * output of each unit of work to be kept together. Threads that call {@link #startBuffering(Object)} have their
+ * events buffered until {@link #flush()} is called. Events from other threads are passed on immediately.
+ * <p/>
+ * Buffers may be nested: if a buffering thread starts further threads, their events are flushed to the
+ * parent's buffer rather than the loggers. Sub-projects created while the loggers are replaced inherit the
+ * serialiser as a listener, so their output is buffered in the same way.
+ */
+public class LogSerialiser implements BuildListener {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final int TARGET_STARTED = 0;
+    private static final int TARGET_FINISHED = 1;
+    private static final int TASK_STARTED = 2;
+    private static final int TASK_FINISHED = 3;
+    private static final int MESSAGE_LOGGED = 4;
+    private static final ThreadLocal buffers = new ThreadLocal();
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Project project;
+    private List loggers = new ArrayList();
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Replaces the loggers of the project given with this serialiser until {@link #restore()} is called
+     */
+    public LogSerialiser(Project project) {
+        this.project = project;
+
+        for (Iterator i = project.getBuildListeners().iterator(); i.hasNext();) {
+            BuildListener listener = (BuildListener)i.next();
+
+            // Sub-build listeners are left alone as events are forwarded to build listener methods only
+            if (listener instanceof BuildLogger && !(listener instanceof SubBuildListener)) {
+                loggers.add(listener);
+                project.removeBuildListener(listener);
+            }
+        }
+
+        if (loggers.size() != 0) {
+            project.addBuildListener(this);
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void restore() {
+        if (loggers.size() != 0) {
+            project.removeBuildListener(this);
+
+            for (Iterator i = loggers.iterator(); i.hasNext();) {
+                project.addBuildListener((BuildListener)i.next());
+            }
+        }
+    }
+
+    /**
+     * Returns the buffer of the current thread, or null if it is not buffering. The result should be passed to
+     * {@link #startBuffering(Object)} by any threads started by the current thread.
+     */
+    public static Object getBuffer() {
+        return buffers.get();
+    }
+
+    /**
+     * Buffers events fired by the current thread until {@link #flush()} is called
+     * @param parent the buffer to flush to, or null to flush directly to the loggers
+     */
+    public static void startBuffering(Object parent) {
+        buffers.set(new Buffer((Buffer)parent));
+    }
+
+    /**
+     * Passes any events buffered by the current thread on to its parent buffer, or to the loggers they were
+     * fired for if there is no parent. The current thread then stops buffering.
+     */
+    public static void flush() {
+        Buffer buffer = (Buffer)buffers.get();
+        buffers.set(null);
+
+        if (buffer.parent != null) {
+            synchronized (buffer.parent) {
+                buffer.parent.events.addAll(buffer.events);
+            }
+        } else {
+            for (Iterator i = buffer.events.iterator(); i.hasNext();) {
+                Object[] event = (Object[])i.next();
+                ((LogSerialiser)event[0]).fire(((Integer)event[1]).intValue(), (BuildEvent)event[2]);
+            }
+        }
+    }
+
+    private void dispatch(int type, BuildEvent event) {
+        Buffer buffer = (Buffer)buffers.get();
+
+        if (buffer == null) {
+            fire(type, event);
+        } else {
+            synchronized (buffer) {
+                buffer.events.add(new Object[] { this, new Integer(type), event });
+            }
+        }
+    }
+
+    private synchronized void fire(int type, BuildEvent event) {
+        for (Iterator i = loggers.iterator(); i.hasNext();) {
+            BuildListener logger = (BuildListener)i.next();
+
+            switch (type) {
+            case TARGET_STARTED:
+                logger.targetStarted(event);
+
+                break;
+
+            case TARGET_FINISHED:
+                logger.targetFinished(event);
+
+                break;
+
+            case TASK_STARTED:
+                logger.taskStarted(event);
+
+                break;
+
+            case TASK_FINISHED:
+                logger.taskFinished(event);
+
+                break;
+
+            default:
+                logger.messageLogged(event);
+            }
+        }
+    }
+
+    public void buildStarted(BuildEvent event) {
+        for (Iterator i = loggers.iterator(); i.hasNext();) {
+            ((BuildListener)i.next()).buildStarted(event);
+        }
+    }
+
+    public void buildFinished(BuildEvent event) {
+        for (Iterator i = loggers.iterator(); i.hasNext();) {
+            ((BuildListener)i.next()).buildFinished(event);
+        }
+    }
+
+    public void targetStarted(BuildEvent event) {
+        dispatch(TARGET_STARTED, event);
+    }
+
+    public void targetFinished(BuildEvent event) {
+        dispatch(TARGET_FINISHED, event);
+    }
+
+    public void taskStarted(BuildEvent event) {
+        dispatch(TASK_STARTED, event);
+    }
+
+    public void taskFinished(BuildEvent event) {
+        dispatch(TASK_FINISHED, event);
+    }
+
+    public void messageLogged(BuildEvent event) {
+        dispatch(MESSAGE_LOGGED, event);
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    private static class Buffer {
+        private Buffer parent;
+        private List events = new ArrayList();
+
+        public Buffer(Buffer parent) {
+            this.parent = parent;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Executor;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Target;
+import org.apache.tools.ant.helper.SingleCheckExecutor;
+
+import ws.quokka.core.bootstrap_util.Assert;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * ParallelExecutor executes targets concurrently on a bounded number of threads. A target is started
+ * once all of its dependencies have completed successfully, so independent targets run in parallel while
+ * the ordering implied by dependencies is retained. Targets given on the command line are still executed
+ * one after another.
+ * <p/>
+ * Output from loggers is serialised per target using {@link LogSerialiser}: events fired while a target is
+ * executing are buffered and passed to the loggers in one block when the target completes. Other listeners
+ * receive events immediately and must therefore be thread-safe.
+ * <p/>
+ * If a target fails no further targets are started, although those already running are allowed to
+ * complete. In keep going mode, only targets that depend on the failed target are skipped.
+ */
+public class ParallelExecutor implements Executor {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private int threads;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * @param threads the maximum number of targets to execute concurrently
+     */
+    public ParallelExecutor(int threads) {
+        this.threads = threads;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void executeTargets(Project project, String[] targetNames)
+            throws BuildException {
+        LogSerialiser serialiser = new LogSerialiser(project);
+        RuntimeException failure = null;
+
+        try {
+            for (int i = 0; i < targetNames.length; i++) {
+                try {
+                    new Schedule(project, project.topoSort(targetNames[i], project.getTargets(), false)).execute();
+                } catch (RuntimeException e) {
+                    if (!project.isKeepGoingMode()) {
+                        throw e;
+                    }
+
+                    failure = (failure == null) ? e : failure;
+                }
+            }
+        } finally {
+            serialiser.restore();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public Executor getSubProjectExecutor() {
+        return new SingleCheckExecutor();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Schedule executes a topologically sorted list of targets, starting each target on its own thread
+     * when its dependencies are complete
+     */
+    private class Schedule {
+        private Project project;
+        private List pending;
+        private Set completed = new HashSet();
+        private Set failed = new HashSet();
+        private int running;
+        private Throwable failure;
+
+        public Schedule(Project project, List sorted) {
+            this.project = project;
+            this.pending = new ArrayList(sorted);
+        }
+
+        public synchronized void execute() {
+            while (true) {
+                start();
+
+                if (running == 0) {
+                    break;
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new BuildException("Interrupted while waiting for targets to complete", e);
+                }
+            }
+
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException)failure;
+            } else if (failure instanceof Error) {
+                throw (Error)failure;
+            }
+
+            Assert.isTrue(pending.isEmpty(), "Unable to schedule targets: " + pending);
+        }
+
+        /**
+         * Starts any targets that are ready, skipping those with failed dependencies. As pending targets are
+         * sorted, a single pass is sufficient to skip all targets that transitively depend on a failure.
+         */
+        private void start() {
+            for (Iterator i = pending.iterator(); i.hasNext() && (running < threads);) {
+                if ((failure != null) && !project.isKeepGoingMode()) {
+                    return;
+                }
+
+                final Target target = (Target)i.next();
+                String failedDependency = null;
+                boolean ready = true;
+
+                for (Enumeration e = target.getDependencies(); e.hasMoreElements();) {
+                    String dependency = (String)e.nextElement();
+
+                    if (failed.contains(dependency)) {
+                        failedDependency = dependency;
+
+                        break;
+                    }
+
+                    ready = ready && completed.contains(dependency);
+                }
+
+                if (failedDependency != null) {
+                    i.remove();
+                    failed.add(target.getName());
+                    project.log("Cannot execute '" + target.getName() + "' - '" + failedDependency
+                        + "' failed or was not executed.", Project.MSG_ERR);
+                } else if (ready) {
+                    i.remove();
+                    running++;
+
+                    final Object parentBuffer = LogSerialiser.getBuffer();
+                    Thread thread = new Thread(new Runnable() {
+                                public void run() {
+                                    execute(target, parentBuffer);
+                                }
+                            }, "quokka-target-" + target.getName());
+                    thread.start();
+                }
+            }
+        }
+
+        private void execute(Target target, Object parentBuffer) {
+            Throwable error = null;
+            LogSerialiser.startBuffering(parentBuffer);
+
+            try {
+                target.performTasks();
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                LogSerialiser.flush();
+            }
+
+            synchronized (this) {
+                running--;
+
+                if (error == null) {
+                    completed.add(target.getName());
+                } else {
+                    failed.add(target.getName());
+
+                    if (project.isKeepGoingMode()) {
+                        project.log("Target '" + target.getName() + "' failed with message '" + error.getMessage()
+                            + "'.", Project.MSG_ERR);
+                    }
+
+                    failure = (failure == null) ? error : failure;
+                }
+
+                notifyAll();
+            }
+        }
+    }
+}
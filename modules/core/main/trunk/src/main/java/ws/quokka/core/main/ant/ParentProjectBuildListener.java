@@ -25,26 +25,36 @@ import java.util.Stack;
 
 
 /**
- *
+ * ParentProjectBuildListener makes the parent project available to sub-projects via the "q.parentProject"
+ * reference. Sub-projects may be built in parallel, so the stack of parents is kept per thread. Threads
+ * started by a thread building a sub-project inherit a copy of its stack, so sub-projects built by them are
+ * given the correct parent.
  */
 public class ParentProjectBuildListener implements SubBuildListener {
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
-    private Stack parents = null;
+    private ThreadLocal parents = new InheritableThreadLocal() {
+            protected Object childValue(Object parentValue) {
+                return (parentValue == null) ? null : ((Stack)parentValue).clone();
+            }
+        };
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
     public void subBuildStarted(BuildEvent event) {
         event.getProject().log("<----- Building " + event.getProject().getName() + " ----->");
 
-        Project parent = (Project)parents.peek();
+        Stack stack = (Stack)parents.get();
+        Project parent = (Project)stack.peek();
         event.getProject().addReference("q.parentProject", parent);
-        parents.push(event.getProject());
+        stack.push(event.getProject());
     }
 
     public void subBuildFinished(BuildEvent event) {
-        if (parents != null) {
-            parents.pop();
+        Stack stack = (Stack)parents.get();
+
+        if (stack != null) {
+            stack.pop();
         }
     }
 
@@ -53,14 +63,15 @@ public class ParentProjectBuildListener implements SubBuildListener {
     }
 
     public void buildFinished(BuildEvent event) {
-        parents = null;
+        parents.set(null);
     }
 
     public void targetStarted(BuildEvent event) {
         // Initialise parents here as buildStarted will fire before this listener is added
-        if (parents == null) {
-            parents = new Stack();
-            parents.push(event.getProject());
+        if (parents.get() == null) {
+            Stack stack = new Stack();
+            stack.push(event.getProject());
+            parents.set(stack);
         }
     }
 
@@ -77,7 +88,7 @@ public class ParentProjectBuildListener implements SubBuildListener {
     }
 
     public int getStackSize() {
-        return parents.size();
+        return ((Stack)parents.get()).size();
     }
 
     private void message(String message, BuildEvent event) {
@@ -22,6 +22,7 @@ import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildListener;
 import org.apache.tools.ant.ComponentHelper;
 import org.apache.tools.ant.Location;
+import org.apache.tools.ant.MagicNames;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.PropertyHelper;
 import org.apache.tools.ant.Target;
@@ -67,7 +68,6 @@ import ws.quokka.core.plugin_spi.support.Setter;
 import ws.quokka.core.plugin_spi.support.TypedProperties;
 import ws.quokka.core.repo_spi.RepoType;
 import ws.quokka.core.repo_spi.Repository;
-import ws.quokka.core.repo_spi.RepositoryFactory;
 import ws.quokka.core.repo_spi.UnresolvedArtifactException;
 import ws.quokka.core.repo_standard.RepositoryFactoryImpl;
 import ws.quokka.core.util.AnnotatedProperties;
@@ -103,6 +103,7 @@ public class ProjectHelper extends ProjectHelper2 {
     private static final String BUILD_RESOURCES_LISTENER = "q.project.buildResourcesListener";
     public static final String REPOSITORY_FACTORY = "q.project.repositoryFactory";
     public static final String REPOSITORY = "q.project.repository";
+    private static final String SHARED_REPOSITORIES = "q.sharedRepositories";
     public static final String Q_PREFERENCES_DIR = "q.preferencesDir";
     public static final String Q_CACHE_DIR = "q.cacheDir";
     private static volatile boolean proxySet = false;
@@ -186,7 +187,8 @@ public class ProjectHelper extends ProjectHelper2 {
     }
 
     private void handleSpecialTarget(Project antProject, String specialTarget) {
-        antProject.setBasedir(System.getProperty("user.dir"));
+        String workingDir = antProject.getProperty("q.project.workingDir");
+        antProject.setBasedir((workingDir == null) ? System.getProperty("user.dir") : workingDir);
         setDefaultProperties(antProject);
 
         AnnotatedProperties projectProperties = ProjectParser.getProjectProperties(null,
@@ -318,6 +320,14 @@ public class ProjectHelper extends ProjectHelper2 {
 
         loadProperties(projectModel, antProject); // Must load after basedir set
 
+        // Execute independent targets in parallel if requested
+        String targetThreads = antProject.getProperty("q.target.threads");
+
+        if ((targetThreads != null) && (Integer.parseInt(targetThreads) > 1)) {
+            antProject.addReference(MagicNames.ANT_EXECUTOR_REFERENCE,
+                new ParallelExecutor(Integer.parseInt(targetThreads)));
+        }
+
         processImports(antProject, projectModel, antTargets);
 
         // Add any type def paths
@@ -775,11 +785,40 @@ public class ProjectHelper extends ProjectHelper2 {
         target.addTask(task);
     }
 
-    private Repository getRepository(AnnotatedProperties properties, Project antProject) {
+    Repository getRepository(AnnotatedProperties properties, Project antProject) {
         // Make sure any proxy configuration is configured prior to Repository access
         configureProxy(properties, antProject);
 
-        RepositoryFactory factory = createFactory(properties, antProject);
+        // Share the factory and cache of the root project with any sub-projects that have the same configuration.
+        // Within a daemon they are also shared with later builds.
+        Project root = getRootProject(antProject);
+        Map shared = getSharedRepositories(root);
+        String key = getRepositoryKey(properties);
+        SharedRepository sharedRepository;
+
+        synchronized (shared) {
+            sharedRepository = (SharedRepository)shared.get(key);
+
+            if (sharedRepository == null) {
+                sharedRepository = createRepository(properties, antProject);
+                sharedRepository.root = root;
+                shared.put(key, sharedRepository);
+            } else if (sharedRepository.root != root) {
+                antProject.log("Reusing the repository of an earlier build", Project.MSG_DEBUG);
+                sharedRepository.attach(root);
+            } else {
+                antProject.log("Reusing the repository of the root project", Project.MSG_DEBUG);
+            }
+        }
+
+        antProject.addReference(REPOSITORY_FACTORY, sharedRepository.factory);
+        antProject.addReference(REPOSITORY, sharedRepository.repository);
+
+        return sharedRepository.repository;
+    }
+
+    private SharedRepository createRepository(AnnotatedProperties properties, Project antProject) {
+        RepositoryFactoryImpl factory = createFactory(properties, antProject);
         Repository repository;
 
         // Check for an override (usually for integration testing of quokka itself)
@@ -798,10 +837,58 @@ public class ProjectHelper extends ProjectHelper2 {
             Assert.isTrue(repository != null, "Either a 'project' or 'shared' repository must be defined");
         }
 
-        repository = new CachingRepository(antProject, repository);
-        antProject.addReference(REPOSITORY, repository);
+        return new SharedRepository(factory, new CachingRepository(antProject, repository));
+    }
 
-        return repository;
+    private Project getRootProject(Project antProject) {
+        Project root = antProject;
+
+        while (root.getReference("q.parentProject") != null) {
+            root = (Project)root.getReference("q.parentProject");
+        }
+
+        return root;
+    }
+
+    /**
+     * Returns the repositories shared by the root project and all of its sub-projects, keyed by configuration.
+     * Within a daemon, the repositories held by the {@link DaemonRegistry} are returned instead.
+     */
+    private Map getSharedRepositories(Project root) {
+        DaemonRegistry registry = DaemonRegistry.getInstance();
+
+        if (registry != null) {
+            return registry.getRepositories();
+        }
+
+        synchronized (ProjectHelper.class) {
+            Map shared = (Map)root.getReference(SHARED_REPOSITORIES);
+
+            if (shared == null) {
+                shared = new HashMap();
+                root.addReference(SHARED_REPOSITORIES, shared);
+            }
+
+            return shared;
+        }
+    }
+
+    /**
+     * Returns a key made up of the properties that affect the repository. This includes the repository
+     * definitions (q.repo*) and the cache directory. Projects with the same key can share the same repository.
+     */
+    static String getRepositoryKey(AnnotatedProperties properties) {
+        Map key = new TreeMap();
+
+        for (Iterator i = properties.keySet().iterator(); i.hasNext();) {
+            String name = (String)i.next();
+
+            if (name.startsWith("q.repo") || name.equals(Q_CACHE_DIR)) {
+                key.put(name, properties.getProperty(name));
+            }
+        }
+
+        return key.toString();
     }
 
     /**
@@ -830,7 +917,7 @@ public class ProjectHelper extends ProjectHelper2 {
         }
     }
 
-    private RepositoryFactory createFactory(AnnotatedProperties properties, Project antProject) {
+    private RepositoryFactoryImpl createFactory(AnnotatedProperties properties, Project antProject) {
         // Create the factory
         RepositoryFactoryImpl factory = new RepositoryFactoryImpl();
         factory.setRepositoryVersion("0.2");
@@ -843,7 +930,6 @@ public class ProjectHelper extends ProjectHelper2 {
         factory.registerType(new RepoType("archetype", "Quokka archetype", "jar"));
         factory.registerType(new RepoType("depset", "Quokka dependency set", "jar"));
         factory.registerType(new RepoType("source", "Source code bundle", "jar"));
-        antProject.addReference(REPOSITORY_FACTORY, factory);
 
         return factory;
     }
@@ -871,4 +957,27 @@ public class ProjectHelper extends ProjectHelper2 {
         def.checkClass(antProject);
         ComponentHelper.getComponentHelper(antProject).addDataTypeDefinition(def);
     }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    private static class SharedRepository {
+        private RepositoryFactoryImpl factory;
+        private CachingRepository repository;
+        private Project root; // The root project of the build that last used the repository
+
+        public SharedRepository(RepositoryFactoryImpl factory, CachingRepository repository) {
+            this.factory = factory;
+            this.repository = repository;
+        }
+
+        /**
+         * Binds the repository to the root project of a later build, discarding anything that has changed since
+         */
+        public void attach(Project root) {
+            this.root = root;
+            factory.setProject(root);
+            repository.setProject(root);
+            repository.revalidate();
+        }
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.main.ant;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+import java.util.Properties;
+
+
+/**
+ * QuokkaClient runs a build within a {@link QuokkaDaemon}, relaying the output of the build and exiting
+ * with its exit code. It only depends on the JDK, so that it starts as quickly as possible.
+ * <p/>
+ * The daemon is located via a properties file containing the port it is listening on and a token that
+ * must be presented by clients. By default it is <code>~/.quokka/daemon.properties</code>, but may be
+ * changed using the <code>q.daemon.file</code> system property.
+ * <p/>
+ * Usage: <code>QuokkaClient [-stop | ant arguments]</code>
+ */
+public class QuokkaClient {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    static final String BUILD = "build";
+    static final String STOP = "stop";
+    static final byte EXIT = 0;
+    static final byte OUT = 1;
+    static final byte ERR = 2;
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private File daemonFile;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public QuokkaClient(File daemonFile) {
+        this.daemonFile = daemonFile;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public static void main(String[] args) {
+        System.exit(new QuokkaClient(getDaemonFile()).run(args, System.out, System.err));
+    }
+
+    /**
+     * Returns the file used to publish the location of the daemon
+     */
+    public static File getDaemonFile() {
+        String file = System.getProperty("q.daemon.file");
+
+        return (file != null) ? new File(file) : new File(System.getProperty("user.home"), ".quokka/daemon.properties");
+    }
+
+    /**
+     * Runs the build within the daemon, returning the exit code of the build
+     */
+    public int run(String[] args, PrintStream out, PrintStream err) {
+        Properties daemon = new Properties();
+
+        try {
+            InputStream in = new FileInputStream(daemonFile);
+
+            try {
+                daemon.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            err.println("A quokka daemon does not appear to be running as '" + daemonFile.getPath()
+                + "' cannot be read. Start one with 'quokka -daemon'");
+
+            return 1;
+        }
+
+        try {
+            Socket socket = new Socket(InetAddress.getByName("127.0.0.1"),
+                    Integer.parseInt(daemon.getProperty("port")));
+
+            try {
+                return run(socket, daemon.getProperty("token"), args, out, err);
+            } finally {
+                socket.close();
+            }
+        } catch (IOException e) {
+            err.println("Unable to connect to the quokka daemon on port " + daemon.getProperty("port") + ": "
+                + e.getMessage());
+
+            return 1;
+        }
+    }
+
+    private int run(Socket socket, String token, String[] args, PrintStream out, PrintStream err)
+            throws IOException {
+        boolean stop = (args.length == 1) && args[0].equals("-stop");
+        DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        request.writeUTF(token);
+        request.writeUTF(stop ? STOP : BUILD);
+        request.writeUTF(new File(System.getProperty("user.dir")).getAbsolutePath());
+        request.writeInt(stop ? 0 : args.length);
+
+        for (int i = 0; !stop && (i < args.length); i++) {
+            request.writeUTF(args[i]);
+        }
+
+        request.flush();
+
+        DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        byte[] buffer = new byte[8192];
+
+        while (true) {
+            byte type = response.readByte();
+
+            if (type == EXIT) {
+                return response.readInt();
+            }
+
+            PrintStream stream = (type == ERR) ? err : out;
+
+            for (int length = response.readInt(); length > 0;) {
+                int read = response.read(buffer, 0, Math.min(length, buffer.length));
+
+                if (read == -1) {
+                    throw new IOException("Connection to the daemon closed unexpectedly");
+                }
+
+                stream.write(buffer, 0, read);
+                length -= read;
+            }
+
+            stream.flush();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Main;
+import org.apache.tools.ant.launch.AntMain;
+
+import ws.quokka.core.bootstrap_util.Reflect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.lang.reflect.Method;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.security.SecureRandom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * QuokkaDaemon is a long-lived process that runs builds on behalf of {@link QuokkaClient}. Builds avoid
+ * JVM startup and class loading, and reuse the repositories, parsed plugins and plugin class loaders of
+ * earlier builds. See {@link DaemonRegistry} for how this state is invalidated when its inputs change.
+ * <p/>
+ * It is launched in place of {@link QuokkaMain} (via the launcher's <code>-main</code> option). Any
+ * arguments given to the daemon are prepended to the arguments of each build. The daemon listens on
+ * the loopback interface only, publishing its port and a random token that clients must present
+ * in the file given by {@link QuokkaClient#getDaemonFile()}.
+ * <p/>
+ * Builds are run one at a time as the standard streams, system properties and ant's static logging
+ * state are global to the JVM. Each build is isolated by restoring them afterwards. Bootstrapping is
+ * disabled within the daemon as it would require forking a different JVM, and input is not available.
+ */
+public class QuokkaDaemon implements AntMain {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final int HANDSHAKE_TIMEOUT = 10000;
+    private static final List FILE_OPTIONS = Arrays.asList(new String[] {
+                "-f", "-file", "-buildfile", "-l", "-logfile", "-propertyfile"
+            });
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private List defaultArgs = new ArrayList();
+    private Properties additionalUserProperties = new Properties();
+    private ClassLoader coreLoader;
+    private String token;
+    private boolean stopped;
+    private int handshakeTimeout = HANDSHAKE_TIMEOUT;
+    private Reflect reflect = new Reflect();
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void startAnt(String[] args, Properties additionalUserProperties, ClassLoader coreLoader) {
+        defaultArgs = Arrays.asList(args);
+        this.coreLoader = coreLoader;
+
+        if (additionalUserProperties != null) {
+            this.additionalUserProperties = additionalUserProperties;
+        }
+
+        run(QuokkaClient.getDaemonFile());
+    }
+
+    /**
+     * Sets the time in milliseconds that a client has to send its request once connected. Builds are served one at
+     * a time, so without a limit an idle connection would block all other clients.
+     */
+    public void setHandshakeTimeout(int handshakeTimeout) {
+        this.handshakeTimeout = handshakeTimeout;
+    }
+
+    /**
+     * Serves builds until a client requests the daemon to stop
+     */
+    public void run(File daemonFile) {
+        DaemonRegistry.enable();
+
+        try {
+            ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+            try {
+                token = Long.toHexString(new SecureRandom().nextLong());
+                publish(daemonFile, server.getLocalPort());
+                System.out.println("Quokka daemon listening on port " + server.getLocalPort());
+
+                while (!stopped) {
+                    Socket socket = server.accept();
+
+                    try {
+                        serve(socket);
+                    } catch (IOException e) {
+                        System.err.println("Error serving client: " + e.getMessage()); // Client has probably gone
+                    } finally {
+                        socket.close();
+                    }
+                }
+            } finally {
+                daemonFile.delete();
+                server.close();
+            }
+        } catch (IOException e) {
+            throw new BuildException(e);
+        } finally {
+            DaemonRegistry.disable();
+        }
+    }
+
+    private void publish(File daemonFile, int port) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("port", Integer.toString(port));
+        properties.setProperty("token", token);
+
+        // Write to a temporary file and rename so that clients never see a partial file
+        File dir = daemonFile.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+
+        File temp = File.createTempFile(daemonFile.getName(), ".tmp", dir);
+
+        // Restrict the file to its owner before the token is written, so other users cannot connect
+        if (!restrictToOwner(temp)) {
+            System.err.println("Warning: unable to restrict access to " + daemonFile.getPath()
+                + ", other users may be able to read the daemon's token");
+        }
+
+        OutputStream out = new FileOutputStream(temp);
+
+        try {
+            properties.store(out, "Quokka daemon");
+        } finally {
+            out.close();
+        }
+
+        daemonFile.delete();
+
+        if (!temp.renameTo(daemonFile)) {
+            temp.delete();
+            throw new IOException("Unable to create " + daemonFile.getPath());
+        }
+    }
+
+    /**
+     * Makes the file given readable and writable by its owner only. The methods required are only available
+     * from Java 6, so they are invoked reflectively. Returns false if access could not be restricted.
+     */
+    private boolean restrictToOwner(File file) {
+        Method setReadable;
+        Method setWritable;
+
+        try {
+            setReadable = File.class.getMethod("setReadable", new Class[] { Boolean.TYPE, Boolean.TYPE });
+            setWritable = File.class.getMethod("setWritable", new Class[] { Boolean.TYPE, Boolean.TYPE });
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+
+        // Remove access for everybody, then grant it to the owner
+        return setPermission(setReadable, file, false, false) && setPermission(setReadable, file, true, true)
+        && setPermission(setWritable, file, false, false) && setPermission(setWritable, file, true, true);
+    }
+
+    private boolean setPermission(Method method, File file, boolean allow, boolean ownerOnly) {
+        Object[] parameters = new Object[] { Boolean.valueOf(allow), Boolean.valueOf(ownerOnly) };
+
+        return ((Boolean)reflect.invoke(method, file, parameters)).booleanValue();
+    }
+
+    private void serve(Socket socket) throws IOException {
+        DataInputStream request = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream response = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        socket.setSoTimeout(handshakeTimeout);
+
+        if (!isToken(request.readUTF())) {
+            return; // Not from a client of this daemon
+        }
+
+        String command = request.readUTF();
+        File dir = new File(request.readUTF());
+        String[] args = new String[request.readInt()];
+
+        for (int i = 0; i < args.length; i++) {
+            args[i] = request.readUTF();
+        }
+
+        socket.setSoTimeout(0); // The request is complete and the build itself may take any length of time
+
+        int exitCode = 0;
+
+        if (command.equals(QuokkaClient.STOP)) {
+            stopped = true;
+        } else {
+            PrintStream out = new PrintStream(new FrameOutputStream(response, QuokkaClient.OUT), true);
+            PrintStream err = new PrintStream(new FrameOutputStream(response, QuokkaClient.ERR), true);
+            exitCode = isolate(dir, resolveArgs(dir, args), out, err);
+            out.flush();
+            err.flush();
+        }
+
+        response.writeByte(QuokkaClient.EXIT);
+        response.writeInt(exitCode);
+        response.flush();
+    }
+
+    /**
+     * Returns true if the value given is the token. The comparison takes the same time wherever the value differs,
+     * so that the token cannot be guessed a character at a time by timing responses.
+     */
+    private boolean isToken(String value) {
+        if (value.length() != token.length()) {
+            return false;
+        }
+
+        int difference = 0;
+
+        for (int i = 0; i < value.length(); i++) {
+            difference |= (value.charAt(i) ^ token.charAt(i));
+        }
+
+        return difference == 0;
+    }
+
+    /**
+     * Resolves any relative file arguments against the client's working directory, as the daemon's working
+     * directory differs and cannot be changed
+     */
+    private String[] resolveArgs(File dir, String[] args) {
+        String[] resolved = (String[])args.clone();
+
+        for (int i = 0; i < (resolved.length - 1); i++) {
+            if (FILE_OPTIONS.contains(resolved[i])) {
+                File file = new File(resolved[i + 1]);
+                resolved[i + 1] = (file.isAbsolute() ? file : new File(dir, resolved[i + 1])).getAbsolutePath();
+            }
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Runs the build with the standard streams redirected to those given, restoring any global state afterwards
+     */
+    private int isolate(File dir, String[] args, PrintStream out, PrintStream err) {
+        PrintStream systemOut = System.out;
+        PrintStream systemErr = System.err;
+        InputStream systemIn = System.in;
+        Properties systemProperties = (Properties)System.getProperties().clone();
+
+        try {
+            System.setOut(out);
+            System.setErr(err);
+            System.setIn(new ByteArrayInputStream(new byte[0]));
+
+            return build(dir, args);
+        } catch (Throwable e) {
+            e.printStackTrace(err);
+
+            return 1;
+        } finally {
+            System.setOut(systemOut);
+            System.setErr(systemErr);
+            System.setIn(systemIn);
+            System.setProperties(systemProperties);
+        }
+    }
+
+    /**
+     * Runs a build from the directory given, returning the exit code. Any relative file arguments have already
+     * been resolved against the directory.
+     */
+    protected int build(File dir, String[] args) {
+        List buildArgs = new ArrayList(defaultArgs);
+        buildArgs.addAll(Arrays.asList(args));
+
+        // The daemon's working directory is not that of the client, so make the default build file absolute
+        boolean buildFileSpecified = buildArgs.contains("-f") || buildArgs.contains("-file")
+            || buildArgs.contains("-buildfile");
+
+        if (!buildFileSpecified && !buildArgs.contains("archetype")) {
+            buildArgs.add("-f");
+            buildArgs.add(new File(dir, "build-quokka.xml").getAbsolutePath());
+        }
+
+        buildArgs.add("-Dq.bootstrap.enabled=false"); // Bootstrapping would fork a different JVM
+
+        // Ant 1.7's logging streams are static and captured when the class is loaded, so point them at this build
+        DaemonMain main = new DaemonMain(dir);
+        reflect.set(reflect.getField(Main.class, "out"), main, System.out);
+        reflect.set(reflect.getField(Main.class, "err"), main, System.err);
+        reflect.set(reflect.getField(Main.class, "isLogFileUsed"), main, Boolean.FALSE);
+
+        main.startAnt((String[])buildArgs.toArray(new String[buildArgs.size()]),
+            (Properties)additionalUserProperties.clone(), coreLoader);
+
+        return main.exitCode;
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * DaemonMain runs the build from the client's working directory and records the exit code of the build
+     * instead of exiting the JVM
+     */
+    private static class DaemonMain extends QuokkaMain {
+        private File workingDir;
+        private int exitCode;
+
+        public DaemonMain(File workingDir) {
+            this.workingDir = workingDir;
+        }
+
+        protected File getWorkingDir() {
+            return workingDir;
+        }
+
+        protected void exit(int exitCode) {
+            this.exitCode = exitCode;
+        }
+    }
+
+    /**
+     * FrameOutputStream writes data to the client as frames tagged with the stream they belong to
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private DataOutputStream out;
+        private byte type;
+
+        public FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        public void write(byte[] bytes, int offset, int length)
+                throws IOException {
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(length);
+                out.write(bytes, offset, length);
+            }
+        }
+
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
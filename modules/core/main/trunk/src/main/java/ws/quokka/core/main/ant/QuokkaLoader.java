@@ -30,6 +30,8 @@ import java.util.TreeMap;
  * QuokkaLoader is a class loader that keeps track of the number of class loaders
  * allocated versus finalized to check for class laoder leaks. At present, the jalopy
  * plugin is known the leak loaders, although the underlying cause has not been identified.
+ * Loaders shared via {@link ClassLoaderPool} are only finalized after the pool has been closed and
+ * the pool reports any loaders that were not released.
  * <p/>
  * Useful options:
  * Debugging:   QUOKKA_OPTS=-verbose:gc -XX:+PrintClassHistogram -XX:+PrintGCDetails
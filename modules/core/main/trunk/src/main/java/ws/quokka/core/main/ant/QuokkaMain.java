@@ -79,6 +79,7 @@ public class QuokkaMain extends Main {
 
         if (specialTarget != null) {
             additionalUserProperties.put("q.project.specialTarget", specialTarget);
+            additionalUserProperties.put("q.project.workingDir", getWorkingDir().getAbsolutePath());
         }
 
         // Store the arguments in case bootstrapping is needed
@@ -103,6 +104,13 @@ public class QuokkaMain extends Main {
         super.startAnt((String[])args.toArray(new String[args.size()]), additionalUserProperties, coreLoader);
     }
 
+    /**
+     * Returns the directory the build was started from, which is the base directory of special targets
+     */
+    protected File getWorkingDir() {
+        return new File(System.getProperty("user.dir"));
+    }
+
     private String getSpecial(ArrayList args) {
         args = (ArrayList)args.clone();
 
@@ -112,7 +120,7 @@ public class QuokkaMain extends Main {
             if (SPECIAL_TARGETS.contains(arg)) { // Optimisation to only proceed if an special argument might exist
 
                 try {
-                    tempFile = File.createTempFile("temp-", ".xml", new File(System.getProperty("user.dir")));
+                    tempFile = File.createTempFile("temp-", ".xml", getWorkingDir());
                 } catch (IOException e) {
                     throw new BuildException(e);
                 }
@@ -0,0 +1,508 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.repo_resolver.ResolvedArtifact;
+import ws.quokka.core.repo_resolver.ResolvedPath;
+import ws.quokka.core.repo_resolver.Resolver;
+import ws.quokka.core.repo_spi.RepoArtifact;
+import ws.quokka.core.repo_spi.RepoArtifactId;
+import ws.quokka.core.repo_spi.RepoBinaryConverter;
+import ws.quokka.core.repo_spi.RepoDependency;
+import ws.quokka.core.repo_spi.RepoOverride;
+import ws.quokka.core.repo_spi.RepoPath;
+import ws.quokka.core.repo_spi.RepoPathSpec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+
+/**
+ * ResolvedPathLock persists resolved paths between builds, allowing paths to be reused without
+ * consulting the resolver or the repository. Each path is stored under a key identifying the path
+ * and a fingerprint of the inputs to the resolver (see {@link #fingerprint(String, RepoArtifact)}).
+ * A locked path is only used if the fingerprint matches and the local copies and repository files of its
+ * artifacts are unchanged in size and modification time. The fingerprint includes the repository
+ * configuration (see {@link #setConfiguration(String)}), so changing repositories invalidates the lock.
+ * <p/>
+ * The complete metadata of each artifact is stored along with its local copy and hash, and the
+ * declaredBy and conflict annotations of each path entry, so locked paths are indistinguishable
+ * from freshly resolved ones. Artifacts shared between paths are stored once. Paths containing
+ * artifacts without local copies are never locked as there is no way of detecting changes to them.
+ * <p/>
+ * Individual artifacts may also be locked, allowing repeated lookups of the same artifacts
+ * (such as plugins during initialisation) to bypass the repository.
+ * <p/>
+ * The lock is purely an optimisation: any problem reading or writing it is treated as a miss.
+ * Changes are held in memory and written once when the build finishes (the lock is registered as a
+ * listener of the root project), or when {@link #save()} is called. It is written to a temporary file
+ * and renamed so that concurrent builds never see a partial lock.
+ */
+class ResolvedPathLock implements BuildListener {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final int FORMAT_VERSION = 2;
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private File file;
+    private IOUtils utils = new IOUtils();
+    private Map paths; // key -> LockedPath, loaded lazily
+    private Map artifacts = new HashMap(); // RepoArtifactId -> LockedArtifact
+    private boolean dirty;
+    private String configuration = "";
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public ResolvedPathLock(File file) {
+        this.file = file;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the configuration of the repositories that paths and artifacts are resolved from. Entries locked
+     * under a different configuration are not used.
+     */
+    public synchronized void setConfiguration(String configuration) {
+        this.configuration = utils.md5String(configuration.getBytes());
+    }
+
+    /**
+     * Returns the locked path for the key given, or null if there is no entry, the fingerprint differs
+     * or any artifact has changed since the path was locked
+     */
+    public synchronized ResolvedPath get(String key, String fingerprint) {
+        LockedPath locked = (LockedPath)getPaths().get(key);
+
+        if ((locked == null) || !locked.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+
+        ResolvedPath path = new ResolvedPath();
+        path.setId(locked.id);
+
+        List views = new ArrayList();
+
+        for (int i = 0; i < locked.ids.length; i++) {
+            LockedArtifact artifact = (LockedArtifact)artifacts.get(locked.ids[i]);
+
+            if ((artifact == null) || !artifact.isValid()) {
+                return null;
+            }
+
+            ResolvedArtifact view = new ResolvedArtifact(artifact.artifact);
+            views.add(view);
+
+            if (locked.declaredBy[i] != -1) {
+                view.getAnnotations().put(Resolver.DECLARED_BY, views.get(locked.declaredBy[i]));
+            }
+
+            if (locked.conflicts[i] != null) {
+                view.getAnnotations().put(Resolver.CONFLICT, locked.conflicts[i]);
+            }
+
+            path.add(view);
+        }
+
+        return path;
+    }
+
+    /**
+     * Locks the path given under the key and fingerprint, replacing any existing entry
+     */
+    public synchronized void put(String key, String fingerprint, ResolvedPath path) {
+        List resolved = path.getResolvedArtifacts();
+
+        for (Iterator i = resolved.iterator(); i.hasNext();) {
+            if (((ResolvedArtifact)i.next()).getArtifact().getLocalCopy() == null) {
+                return;
+            }
+        }
+
+        LockedPath locked = new LockedPath(fingerprint, path.getId(), resolved.size());
+        Map indexes = new IdentityHashMap(); // ResolvedArtifact -> Integer
+
+        for (int i = 0; i < resolved.size(); i++) {
+            ResolvedArtifact view = (ResolvedArtifact)resolved.get(i);
+            indexes.put(view, new Integer(i));
+        }
+
+        for (int i = 0; i < resolved.size(); i++) {
+            ResolvedArtifact view = (ResolvedArtifact)resolved.get(i);
+            RepoArtifact artifact = view.getArtifact();
+            locked.ids[i] = artifact.getId();
+            artifacts.put(artifact.getId(), new LockedArtifact(artifact));
+
+            Integer declaredBy = (Integer)indexes.get(view.getAnnotations().get(Resolver.DECLARED_BY));
+            locked.declaredBy[i] = (declaredBy == null) ? (-1) : declaredBy.intValue();
+
+            Object conflict = view.getAnnotations().get(Resolver.CONFLICT);
+            locked.conflicts[i] = (conflict instanceof String) ? (String)conflict : null;
+        }
+
+        getPaths().put(key, locked);
+        dirty = true;
+    }
+
+    /**
+     * Returns the locked artifact for the id given, or null if it is not locked or has changed
+     */
+    public RepoArtifact getArtifact(RepoArtifactId id) {
+        ResolvedPath path = get(getArtifactKey(id), configuration);
+
+        return (path == null) ? null : ((ResolvedArtifact)path.getResolvedArtifacts().get(0)).getArtifact();
+    }
+
+    /**
+     * Locks the artifact given, which must have a local copy to be locked
+     */
+    public void putArtifact(RepoArtifact artifact) {
+        ResolvedPath path = new ResolvedPath();
+        path.setId(artifact.getId().toShortString());
+        path.add(artifact);
+        put(getArtifactKey(artifact.getId()), configuration, path);
+    }
+
+    private String getArtifactKey(RepoArtifactId id) {
+        return "artifact#" + id.toShortString();
+    }
+
+    /**
+     * Returns a fingerprint of the inputs that determine the path resolved for the artifact given.
+     * Locations are excluded so that unrelated edits to the project file do not invalidate the lock.
+     */
+    public String fingerprint(String pathId, RepoArtifact artifact) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(FORMAT_VERSION).append('|').append(configuration).append('|').append(pathId).append('|');
+
+        Set paths = new TreeSet();
+
+        for (Iterator i = artifact.getPaths().iterator(); i.hasNext();) {
+            RepoPath path = (RepoPath)i.next();
+            paths.add(path.getId() + "," + path.isDescendDefault() + "," + path.isMandatoryDefault());
+        }
+
+        sb.append(paths).append('|');
+
+        for (Iterator i = artifact.getDependencies().iterator(); i.hasNext();) {
+            RepoDependency dependency = (RepoDependency)i.next();
+            sb.append(dependency.getId().toShortString()).append(pathSpecs(dependency.getPathSpecs())).append(';');
+        }
+
+        sb.append('|');
+
+        for (Iterator i = artifact.getOverrides().iterator(); i.hasNext();) {
+            RepoOverride override = (RepoOverride)i.next();
+            sb.append(new TreeSet(override.getPaths())).append(override.getGroup()).append(':')
+              .append(override.getName()).append(':').append(override.getType()).append(':')
+              .append(override.getVersion()).append('=').append(override.getWithVersion())
+              .append(pathSpecs(override.getWithPathSpecs())).append(';');
+        }
+
+        return utils.md5String(sb.toString().getBytes());
+    }
+
+    private Set pathSpecs(Collection pathSpecs) {
+        Set result = new TreeSet(); // Path specs are unordered
+
+        for (Iterator i = pathSpecs.iterator(); i.hasNext();) {
+            RepoPathSpec pathSpec = (RepoPathSpec)i.next();
+            result.add(pathSpec.getFrom() + "," + pathSpec.getTo() + "," + pathSpec.getOptions() + ","
+                + pathSpec.isDescend() + "," + pathSpec.isMandatory());
+        }
+
+        return result;
+    }
+
+    private Map getPaths() {
+        if (paths == null) {
+            paths = new TreeMap();
+
+            if (file.exists()) {
+                try {
+                    load();
+                } catch (IOException e) {
+                    paths.clear(); // Treat as empty
+                } catch (RuntimeException e) {
+                    paths.clear(); // Corrupt lock
+                }
+            }
+        }
+
+        return paths;
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            if ((in.readInt() != FORMAT_VERSION) || (in.readInt() != RepoBinaryConverter.FORMAT_VERSION)) {
+                return;
+            }
+
+            RepoArtifactId[] ids = new RepoArtifactId[in.readInt()];
+
+            for (int i = 0; i < ids.length; i++) {
+                RepoArtifact artifact = RepoBinaryConverter.read(in);
+                String localCopy = readString(in);
+                artifact.setLocalCopy((localCopy == null) ? null : new File(localCopy));
+                artifact.setHash(readString(in));
+
+                String repositoryFile = readString(in);
+                artifact.setRepositoryFile((repositoryFile == null) ? null : new File(repositoryFile));
+                ids[i] = artifact.getId();
+                artifacts.put(ids[i],
+                    new LockedArtifact(artifact, in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                String key = in.readUTF();
+                LockedPath locked = new LockedPath(in.readUTF(), in.readUTF(), in.readInt());
+
+                for (int j = 0; j < locked.ids.length; j++) {
+                    locked.ids[j] = ids[in.readInt()];
+                    locked.declaredBy[j] = in.readInt();
+                    locked.conflicts[j] = readString(in);
+                }
+
+                paths.put(key, locked);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the lock if it has changed since it was loaded or last saved
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+
+        dirty = false;
+
+        File dir = file.getParentFile();
+        File temp = null;
+
+        try {
+            if ((dir != null) && !dir.exists() && !dir.mkdirs()) {
+                return;
+            }
+
+            // Only store artifacts that are referenced by a path
+            Map indexes = new LinkedHashMap(); // RepoArtifactId -> Integer
+
+            for (Iterator i = paths.values().iterator(); i.hasNext();) {
+                LockedPath locked = (LockedPath)i.next();
+
+                for (int j = 0; j < locked.ids.length; j++) {
+                    if (!indexes.containsKey(locked.ids[j])) {
+                        indexes.put(locked.ids[j], new Integer(indexes.size()));
+                    }
+                }
+            }
+
+            temp = File.createTempFile(file.getName(), ".tmp", dir);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(RepoBinaryConverter.FORMAT_VERSION);
+                out.writeInt(indexes.size());
+
+                for (Iterator i = indexes.keySet().iterator(); i.hasNext();) {
+                    LockedArtifact locked = (LockedArtifact)artifacts.get(i.next());
+                    RepoBinaryConverter.write(locked.artifact, out);
+                    File localCopy = locked.artifact.getLocalCopy();
+                    writeString((localCopy == null) ? null : localCopy.getAbsolutePath(), out);
+                    writeString(locked.artifact.getHash(), out);
+
+                    File repositoryFile = locked.artifact.getRepositoryFile();
+                    writeString((repositoryFile == null) ? null : repositoryFile.getAbsolutePath(), out);
+                    out.writeLong(locked.length);
+                    out.writeLong(locked.lastModified);
+                    out.writeLong(locked.repositoryLength);
+                    out.writeLong(locked.repositoryLastModified);
+                }
+
+                out.writeInt(paths.size());
+
+                for (Iterator i = paths.entrySet().iterator(); i.hasNext();) {
+                    Map.Entry entry = (Map.Entry)i.next();
+                    LockedPath locked = (LockedPath)entry.getValue();
+                    out.writeUTF((String)entry.getKey());
+                    out.writeUTF(locked.fingerprint);
+                    out.writeUTF(locked.id);
+                    out.writeInt(locked.ids.length);
+
+                    for (int j = 0; j < locked.ids.length; j++) {
+                        out.writeInt(((Integer)indexes.get(locked.ids[j])).intValue());
+                        out.writeInt(locked.declaredBy[j]);
+                        writeString(locked.conflicts[j], out);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+
+            file.delete();
+
+            if (temp.renameTo(file)) {
+                temp = null;
+            }
+        } catch (IOException e) {
+            // Ignore, the paths just won't be locked
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    public void buildFinished(BuildEvent event) {
+        save();
+    }
+
+    public void buildStarted(BuildEvent event) {
+    }
+
+    public void targetStarted(BuildEvent event) {
+    }
+
+    public void targetFinished(BuildEvent event) {
+    }
+
+    public void taskStarted(BuildEvent event) {
+    }
+
+    public void taskFinished(BuildEvent event) {
+    }
+
+    public void messageLogged(BuildEvent event) {
+    }
+
+    private static void writeString(String string, DataOutputStream out)
+            throws IOException {
+        out.writeBoolean(string != null);
+
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readString(DataInputStream in)
+            throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * LockedPath holds the entries of a path as parallel arrays. declaredBy holds the index of the
+     * entry that declared each entry, or -1 for entries declared by the root.
+     */
+    private static class LockedPath {
+        private String fingerprint;
+        private String id;
+        private RepoArtifactId[] ids;
+        private int[] declaredBy;
+        private String[] conflicts;
+
+        public LockedPath(String fingerprint, String id, int size) {
+            this.fingerprint = fingerprint;
+            this.id = id;
+            ids = new RepoArtifactId[size];
+            declaredBy = new int[size];
+            conflicts = new String[size];
+        }
+    }
+
+    /**
+     * LockedArtifact holds an artifact along with the size and modification time of its local copy and
+     * repository file when it was locked. Either file may be absent, in which case it is not checked.
+     */
+    private static class LockedArtifact {
+        private RepoArtifact artifact;
+        private long length;
+        private long lastModified;
+        private long repositoryLength;
+        private long repositoryLastModified;
+        private Boolean valid;
+
+        public LockedArtifact(RepoArtifact artifact) {
+            this(artifact, length(artifact.getLocalCopy()), lastModified(artifact.getLocalCopy()),
+                length(artifact.getRepositoryFile()), lastModified(artifact.getRepositoryFile()));
+            valid = Boolean.TRUE;
+        }
+
+        public LockedArtifact(RepoArtifact artifact, long length, long lastModified, long repositoryLength,
+            long repositoryLastModified) {
+            this.artifact = artifact;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.repositoryLength = repositoryLength;
+            this.repositoryLastModified = repositoryLastModified;
+        }
+
+        public boolean isValid() {
+            if (valid == null) {
+                valid = Boolean.valueOf(isUnchanged(artifact.getLocalCopy(), length, lastModified)
+                        && isUnchanged(artifact.getRepositoryFile(), repositoryLength, repositoryLastModified));
+            }
+
+            return valid.booleanValue();
+        }
+
+        private static boolean isUnchanged(File file, long length, long lastModified) {
+            return (file == null)
+            || (file.exists() && (file.length() == length) && (file.lastModified() == lastModified));
+        }
+
+        private static long length(File file) {
+            return (file == null) ? 0 : file.length();
+        }
+
+        private static long lastModified(File file) {
+            return (file == null) ? 0 : file.lastModified();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.main.ant;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * SingleFlight coalesces concurrent calls with the same key, so that only one call is made while any
+ * others wait for and share its outcome. Calls with different keys proceed in parallel.
+ * <p/>
+ * The lock given guards the caller's cache. Cache lookups and updates are made while it is held, so that
+ * a call is never started for a result that is already cached.
+ */
+class SingleFlight {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private final Object lock;
+    private final Map pending = new HashMap(); // key -> Flight for calls in progress
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public SingleFlight(Object lock) {
+        this.lock = lock;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the cached result of the call, otherwise makes the call or joins one in progress with the same key
+     * @param alternative the key of another call that will also satisfy this one, or null if there is none
+     */
+    public Object get(Object key, Object alternative, Call call) {
+        Flight flight;
+
+        synchronized (lock) {
+            Object result = call.getCached();
+
+            if (result != null) {
+                return result;
+            }
+
+            flight = (alternative == null) ? null : (Flight)pending.get(alternative);
+
+            if (flight == null) {
+                flight = (Flight)pending.get(key);
+            }
+
+            if (flight != null) {
+                return flight.await();
+            }
+
+            flight = new Flight();
+            pending.put(key, flight);
+        }
+
+        // Call outside of the lock so that calls with other keys can proceed concurrently
+        Object result = null;
+        Throwable error = null;
+
+        try {
+            result = call.call();
+        } catch (RuntimeException e) {
+            error = e;
+        } catch (Error e) {
+            error = e;
+        }
+
+        synchronized (lock) {
+            pending.remove(key);
+
+            if (result != null) {
+                call.cache(result);
+            }
+
+            flight.complete(result, error);
+            lock.notifyAll();
+        }
+
+        return flight.get();
+    }
+
+    //~ Inner Interfaces -----------------------------------------------------------------------------------------------
+
+    /**
+     * Call is a call whose result is cached by the caller
+     */
+    public interface Call {
+        /**
+         * Returns the cached result, or null if there is none. The lock is held.
+         */
+        Object getCached();
+
+        /**
+         * Makes the call. The lock is not held.
+         */
+        Object call();
+
+        /**
+         * Caches the result of a call that succeeded. The lock is held.
+         */
+        void cache(Object result);
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Flight holds the outcome of a call so that it can be shared with any threads that made the same call
+     * while it was in progress. Access is guarded by the lock.
+     */
+    private class Flight {
+        private boolean done;
+        private Object result;
+        private Throwable error;
+
+        public void complete(Object result, Throwable error) {
+            this.result = result;
+            this.error = error;
+            done = true;
+        }
+
+        public Object await() {
+            boolean interrupted = false;
+
+            while (!done) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            return get();
+        }
+
+        public Object get() {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException)error;
+            }
+
+            if (error instanceof Error) {
+                throw (Error)error;
+            }
+
+            return result;
+        }
+    }
+}
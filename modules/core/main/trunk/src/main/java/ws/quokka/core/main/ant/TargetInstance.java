@@ -31,13 +31,23 @@ public class TargetInstance {
     Plugin plugin;
     Runnable target;
     AntClassLoader loader;
+    ClassLoaderPool pool;
+    ClassLoader contextLoader;
+    DefaultResources resources;
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
 
-    public TargetInstance(Plugin plugin, Runnable target, AntClassLoader loader) {
+    /**
+     * @param pool the pool the loader was acquired from, or null if the loader belongs to this instance only
+     * @param contextLoader the thread's context loader prior to creating this instance, restored on clean up
+     */
+    public TargetInstance(Plugin plugin, Runnable target, AntClassLoader loader, ClassLoaderPool pool,
+        ClassLoader contextLoader) {
         this.plugin = plugin;
         this.target = target;
         this.loader = loader;
+        this.pool = pool;
+        this.contextLoader = contextLoader;
     }
 
     //~ Methods --------------------------------------------------------------------------------------------------------
@@ -50,8 +60,26 @@ public class TargetInstance {
         return target;
     }
 
+    public void setResources(DefaultResources resources) {
+        this.resources = resources;
+    }
+
+    /**
+     * Called when the target has completed successfully
+     */
+    public void completed() {
+        if (resources != null) {
+            resources.saveFingerprint();
+        }
+    }
+
     public void cleanUp() {
-        loader.resetThreadContextLoader();
-        loader.cleanup();
+        Thread.currentThread().setContextClassLoader(contextLoader);
+
+        if (pool == null) {
+            loader.cleanup();
+        } else {
+            pool.release(loader);
+        }
     }
 }
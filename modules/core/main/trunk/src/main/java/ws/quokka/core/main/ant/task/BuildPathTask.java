@@ -17,10 +17,13 @@
 
 package ws.quokka.core.main.ant.task;
 
+import org.apache.tools.ant.BuildEvent;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Target;
 import org.apache.tools.ant.Task;
+import org.apache.tools.ant.taskdefs.Ant;
 import org.apache.tools.ant.taskdefs.UpToDate;
 import org.apache.tools.ant.types.Path;
 import org.apache.tools.ant.types.Resource;
@@ -32,6 +35,8 @@ import ws.quokka.core.bootstrap_util.ExceptionHandler;
 import ws.quokka.core.bootstrap_util.TaskLogger;
 import ws.quokka.core.bootstrap_util.VoidExceptionHandler;
 import ws.quokka.core.main.ant.DefaultModelFactory;
+import ws.quokka.core.main.ant.LogSerialiser;
+import ws.quokka.core.main.ant.ParallelExecutor;
 import ws.quokka.core.model.Artifact;
 import ws.quokka.core.model.Dependency;
 import ws.quokka.core.model.DependencySet;
@@ -39,6 +44,7 @@ import ws.quokka.core.model.ProjectModel;
 import ws.quokka.core.plugin_spi.support.AntUtils;
 import ws.quokka.core.repo_spi.RepoArtifactId;
 import ws.quokka.core.repo_spi.Repository;
+import ws.quokka.core.util.Strings;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -60,9 +66,17 @@ import java.util.Set;
 
 
 /**
- *
+ * BuildPathTask calculates a build sequence for a collection of projects based on their inter-dependencies,
+ * setting it as a path reference. If a target is specified, the projects are also built in sequence. If threads
+ * is greater than 1, independent projects are built in parallel, each with its own Ant project and with output
+ * buffered per project.
  */
 public class BuildPathTask extends Task {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final String CACHE_HEADER = "# build-sequence 2";
+    private static final String ALL_PROJECTS = "all-projects";
+
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private List projectCollections = new ArrayList();
@@ -70,6 +84,8 @@ public class BuildPathTask extends Task {
     private String id;
     private boolean sequence = true;
     private File cache;
+    private String target;
+    private int threads = 1;
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
@@ -93,6 +109,14 @@ public class BuildPathTask extends Task {
         this.cache = cache;
     }
 
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public void execute() throws BuildException {
         if (id == null) {
             throw new BuildException("id attribute is mandatory for buildpath", getLocation());
@@ -116,6 +140,7 @@ public class BuildPathTask extends Task {
         }
 
         List seq = null;
+        Map dependencies = new HashMap(); // project file -> project files it depends on
 
         if (sequence) {
             // See if the build sequence is already generated and is up to date
@@ -131,9 +156,9 @@ public class BuildPathTask extends Task {
             // Load or generate the sequence
             if (upToDate.eval()) {
                 log("Loading existing build configuration as it is up to date", Project.MSG_VERBOSE);
-                seq = loadSequence(cache);
+                seq = loadSequence(cache, dependencies);
 
-                if (!matches(projects, seq)) {
+                if ((seq != null) && !matches(projects, seq)) {
                     log("Invalidating loaded sequence as project list no longer matches", Project.MSG_VERBOSE);
                     seq = null;
                 }
@@ -141,11 +166,13 @@ public class BuildPathTask extends Task {
 
             if (seq == null) {
                 log("Generating build sequence", Project.MSG_VERBOSE);
-                seq = generateSequence(projects);
-                saveSequence(seq, cache);
+                dependencies.clear();
+                seq = generateSequence(projects, dependencies);
+                saveSequence(seq, dependencies, cache);
             }
         } else {
             seq = projects;
+            dependencies = null; // Unknown, so projects can only be built in the order given
         }
 
         // Convert the sequence into a path and set it as a reference
@@ -158,6 +185,86 @@ public class BuildPathTask extends Task {
         }
 
         getProject().addReference(id, path);
+
+        if (target != null) {
+            build(seq, dependencies);
+        }
+    }
+
+    /**
+     * Builds the projects in sequence. If there are multiple threads, projects are executed as targets of a
+     * temporary project that mirrors the dependencies, allowing independent projects to build in parallel.
+     */
+    private void build(List seq, Map dependencies) {
+        if ((threads <= 1) || (dependencies == null)) {
+            for (Iterator i = seq.iterator(); i.hasNext();) {
+                buildProject((File)i.next());
+            }
+
+            return;
+        }
+
+        Project graph = new Project();
+        graph.setKeepGoingMode(getProject().isKeepGoingMode());
+        graph.addBuildListener(new MessageRelay());
+
+        Target all = new Target();
+        all.setName(ALL_PROJECTS);
+        graph.addTarget(all);
+
+        for (Iterator i = seq.iterator(); i.hasNext();) {
+            final File projectFile = (File)i.next();
+            Target projectTarget = new Target() {
+                    public void execute() throws BuildException {
+                        buildProject(projectFile);
+                    }
+                };
+
+            projectTarget.setName(projectFile.getAbsolutePath());
+            graph.addTarget(projectTarget);
+            all.addDependency(projectTarget.getName());
+
+            List projectDependencies = (List)dependencies.get(projectFile);
+
+            if (projectDependencies != null) {
+                for (Iterator j = projectDependencies.iterator(); j.hasNext();) {
+                    projectTarget.addDependency(((File)j.next()).getAbsolutePath());
+                }
+            }
+        }
+
+        log("Building " + seq.size() + " projects with " + threads + " threads", Project.MSG_VERBOSE);
+
+        LogSerialiser serialiser = new LogSerialiser(getProject());
+
+        try {
+            new ParallelExecutor(threads).executeTargets(graph, new String[] { ALL_PROJECTS });
+        } finally {
+            serialiser.restore();
+        }
+    }
+
+    /**
+     * Builds a single project in isolation, in the same way as the subant task
+     */
+    private void buildProject(File projectFile) {
+        Ant ant = new Ant();
+        ant.setProject(getProject());
+        ant.setOwningTarget(getOwningTarget());
+        ant.setTaskName(getTaskName());
+        ant.setLocation(getLocation());
+        ant.init();
+        ant.setInheritAll(false);
+        ant.setDir(projectFile.getParentFile());
+        ant.setAntfile(projectFile.getAbsolutePath());
+
+        for (Iterator i = Strings.commaSepList(target).iterator(); i.hasNext();) {
+            Ant.TargetElement targetElement = new Ant.TargetElement();
+            targetElement.setName((String)i.next());
+            ant.addConfiguredTarget(targetElement);
+        }
+
+        ant.execute();
     }
 
     /**
@@ -179,7 +286,7 @@ public class BuildPathTask extends Task {
         return names;
     }
 
-    private List generateSequence(List projects) {
+    private List generateSequence(List projects, Map dependenciesByProject) {
         DefaultModelFactory factory = new DefaultModelFactory();
         Repository repository = (Repository)getProject().getReference("q.project.repository");
         factory.setRepository(repository);
@@ -227,6 +334,8 @@ public class BuildPathTask extends Task {
 
                 if (dependencyTarget != null) {
                     projectTarget.addDependency(dependencyTarget.getName());
+                    addDependency(dependenciesByProject, new File(projectTarget.getName()),
+                        new File(dependencyTarget.getName()));
                 }
             }
         }
@@ -246,6 +355,19 @@ public class BuildPathTask extends Task {
         return sequence;
     }
 
+    private void addDependency(Map dependencies, File projectFile, File dependencyFile) {
+        List projectDependencies = (List)dependencies.get(projectFile);
+
+        if (projectDependencies == null) {
+            projectDependencies = new ArrayList();
+            dependencies.put(projectFile, projectDependencies);
+        }
+
+        if (!projectDependencies.contains(dependencyFile)) {
+            projectDependencies.add(dependencyFile);
+        }
+    }
+
     private Set getDependencies(ProjectModel model) {
         Set dependencies = new HashSet();
         getDependencies(dependencies, model.getProject().getDependencySet());
@@ -270,7 +392,11 @@ public class BuildPathTask extends Task {
         }
     }
 
-    private void saveSequence(final List seq, final File file) {
+    /**
+     * Saves the sequence, one project per line. Each project is followed by the projects it depends on,
+     * indented by a tab.
+     */
+    private void saveSequence(final List seq, final Map dependencies, final File file) {
         new VoidExceptionHandler() {
                 public void run() throws IOException {
                     utils.mkdir(file.getParentFile());
@@ -278,9 +404,19 @@ public class BuildPathTask extends Task {
                     Writer writer = new BufferedWriter(new FileWriter(file));
 
                     try {
+                        writer.write(CACHE_HEADER + "\n");
+
                         for (Iterator i = seq.iterator(); i.hasNext();) {
                             File file2 = (File)i.next();
                             writer.write(file2.getAbsolutePath() + "\n");
+
+                            List projectDependencies = (List)dependencies.get(file2);
+
+                            if (projectDependencies != null) {
+                                for (Iterator j = projectDependencies.iterator(); j.hasNext();) {
+                                    writer.write("\t" + ((File)j.next()).getAbsolutePath() + "\n");
+                                }
+                            }
                         }
                     } finally {
                         writer.close();
@@ -289,13 +425,21 @@ public class BuildPathTask extends Task {
             };
     }
 
-    private List loadSequence(final File file) {
+    /**
+     * Loads a sequence saved by {@link #saveSequence(java.util.List, java.util.Map, java.io.File)}, returning null
+     * if it was saved in an earlier format without dependencies
+     */
+    private List loadSequence(final File file, final Map dependencies) {
         return (List)new ExceptionHandler() {
                 public Object run() throws IOException {
                     List sequence = new ArrayList();
                     BufferedReader reader = new BufferedReader(new FileReader(file));
 
                     try {
+                        if (!CACHE_HEADER.equals(reader.readLine())) {
+                            return null;
+                        }
+
                         while (true) {
                             String line = reader.readLine();
 
@@ -303,7 +447,12 @@ public class BuildPathTask extends Task {
                                 break;
                             }
 
-                            sequence.add(new File(line));
+                            if (line.startsWith("\t")) {
+                                addDependency(dependencies, (File)sequence.get(sequence.size() - 1),
+                                    new File(line.substring(1)));
+                            } else {
+                                sequence.add(new File(line));
+                            }
                         }
                     } finally {
                         reader.close();
@@ -313,4 +462,33 @@ public class BuildPathTask extends Task {
                 }
             }.soften();
     }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Relays messages logged by the scheduler of parallel builds to this task
+     */
+    private class MessageRelay implements BuildListener {
+        public void buildStarted(BuildEvent event) {
+        }
+
+        public void buildFinished(BuildEvent event) {
+        }
+
+        public void targetStarted(BuildEvent event) {
+        }
+
+        public void targetFinished(BuildEvent event) {
+        }
+
+        public void taskStarted(BuildEvent event) {
+        }
+
+        public void taskFinished(BuildEvent event) {
+        }
+
+        public void messageLogged(BuildEvent event) {
+            log(event.getMessage(), event.getPriority());
+        }
+    }
 }
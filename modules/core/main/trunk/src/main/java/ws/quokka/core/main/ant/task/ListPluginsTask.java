@@ -301,7 +301,7 @@ public class ListPluginsTask extends Task {
         for (Iterator i = corePath.getArtifacts().iterator(); i.hasNext();) {
             RepoArtifactId coreId = ((RepoArtifact)i.next()).getId();
 
-            if (coreId.matches(new RepoArtifactId(id.getGroup(), id.getName(), id.getType(), (Version)null))) {
+            if (coreId.matches(id.toUnversionedId())) {
                 return coreId.getVersion();
             }
         }
@@ -343,7 +343,7 @@ public class ListPluginsTask extends Task {
         for (Iterator i = ids.iterator(); i.hasNext();) {
             RepoArtifactId id = (RepoArtifactId)i.next();
 
-            RepoArtifactId unversioned = new RepoArtifactId(id.getGroup(), id.getName(), id.getType(), (Version)null);
+            RepoArtifactId unversioned = id.toUnversionedId();
             PluginGroup group = (PluginGroup)groups.get(unversioned);
 
             if (group == null) {
@@ -57,6 +57,7 @@ public class PluginTargetTask extends Task {
 
             try {
                 targetInstance.getTarget().run();
+                targetInstance.completed();
             } finally {
                 targetInstance.cleanUp();
             }
@@ -42,18 +42,33 @@ import ws.quokka.core.util.xml.LocatorDomParser;
 import ws.quokka.core.util.xml.ReflectionConverter;
 import ws.quokka.core.util.xml.XmlConverter;
 
+import java.io.File;
+
 import java.net.URL;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
- *
+ * StandardPluginParser parses the plugin.xml contained within a plugin's jar. Parsed plugins are cached for the
+ * life of the process, keyed by the artifact id and hash, and a copy is returned for each request. This allows
+ * targets to be modified by callers without re-parsing the plugin each time it is used.
  */
 public class StandardPluginParser implements PluginParser {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final int MAX_CACHED = 500;
+    private static final Map templates = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_CACHED;
+            }
+        };
+
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private XmlConverter xmlConverter = new XmlConverter();
@@ -71,14 +86,50 @@ public class StandardPluginParser implements PluginParser {
     //~ Methods --------------------------------------------------------------------------------------------------------
 
     public Plugin getPluginInstance(RepoArtifact artifact) {
-        Plugin plugin = parsePluginXml(artifact);
+        String key = getCacheKey(artifact);
+        Plugin template;
+
+        synchronized (templates) {
+            template = (Plugin)templates.get(key);
+        }
+
+        if (template == null) {
+            template = parsePluginXml(artifact);
+            template.setArtifact(artifact);
+            addBuildResources(template);
+            addLocalResources(template);
+
+            synchronized (templates) {
+                templates.put(key, template);
+            }
+        }
+
+        Plugin plugin = template.copy();
         plugin.setArtifact(artifact);
-        addBuildResources(plugin);
-        addLocalResources(plugin);
 
         return plugin;
     }
 
+    /**
+     * Returns a key that identifies the contents of the artifact's jar. The hash is used if known, otherwise
+     * the size and modification time of the local copy are used.
+     */
+    private String getCacheKey(RepoArtifact artifact) {
+        File jar = artifact.getLocalCopy();
+
+        return artifact.getId().toPathString() + ":" + jar.getAbsolutePath() + ":"
+        + ((artifact.getHash() != null) ? artifact.getHash() : (jar.length() + ":" + jar.lastModified()));
+    }
+
+    /**
+     * Clears the cache of parsed plugins
+     */
+    public static void clearCache() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
     private void addBuildResources(Plugin plugin) {
         //        String resourcesPath = "META-INF/quokka/resources/";
         String resourcesPath = getResourcesPrefix(plugin.getArtifact().getId()) + "resources/build/";
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.Project;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.repo_spi.BatchingRepository;
+import ws.quokka.core.repo_spi.MockRepository;
+import ws.quokka.core.repo_spi.RepoArtifact;
+import ws.quokka.core.repo_spi.RepoArtifactId;
+import ws.quokka.core.repo_spi.UnresolvedArtifactException;
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ *
+ */
+public class CachingRepositoryTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private CountingRepository delegate;
+    private CachingRepository repository;
+    private RepoArtifactId id1 = new RepoArtifactId("group1", "name1", "jar", "1.0");
+    private RepoArtifactId id2 = new RepoArtifactId("group2", "name2", "jar", "1.0");
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        delegate = new CountingRepository();
+        delegate.install(new RepoArtifact(id1));
+        delegate.install(new RepoArtifact(id2));
+        repository = new CachingRepository(new Project(), delegate);
+    }
+
+    public void testCachesResolved() {
+        RepoArtifact artifact = repository.resolve(id1);
+        assertSame(artifact, repository.resolve(id1));
+        assertSame(artifact, repository.resolve(id1, false));
+        assertEquals(1, delegate.getCount());
+    }
+
+    public void testMetadataUpgradedByRetrieval() {
+        RepoArtifact metadata = repository.resolve(id1, false);
+        assertSame(metadata, repository.resolve(id1, false));
+        assertEquals(1, delegate.getCount());
+
+        repository.resolve(id1, true);
+        assertEquals(2, delegate.getCount());
+
+        repository.resolve(id1, true);
+        repository.resolve(id1, false);
+        assertEquals(2, delegate.getCount());
+    }
+
+    public void testMetadataWithLocalCopyIsComplete() {
+        delegate.localCopy = new File("somefile");
+        repository.resolve(id1, false);
+        repository.resolve(id1, true);
+        assertEquals(1, delegate.getCount());
+    }
+
+    public void testFailuresAreNotCached() {
+        RepoArtifactId missing = new RepoArtifactId("missing", "missing", "jar", "1.0");
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                repository.resolve(missing);
+                fail("Expected exception");
+            } catch (UnresolvedArtifactException e) {
+                // Expected
+            }
+        }
+
+        assertEquals(2, delegate.getCount());
+    }
+
+    public void testConcurrentRequestsCoalesced() throws InterruptedException {
+        delegate.delay = 200;
+
+        List threads = new ArrayList();
+
+        for (int i = 0; i < 10; i++) {
+            threads.add(new Resolver(((i % 2) == 0) ? id1 : id2));
+        }
+
+        for (Iterator i = threads.iterator(); i.hasNext();) {
+            ((Thread)i.next()).start();
+        }
+
+        for (Iterator i = threads.iterator(); i.hasNext();) {
+            Resolver resolver = (Resolver)i.next();
+            resolver.join();
+            assertNull(resolver.error);
+            assertSame(repository.resolve(resolver.id), resolver.artifact);
+        }
+
+        assertEquals(2, delegate.getCount());
+        assertEquals(2, delegate.maxConcurrent);
+    }
+
+    public void testRevalidateEvictsChangedArtifacts() {
+        getOutputDir().mkdirs();
+        delegate.artifactFile = new File(getOutputDir(), "artifact.jar");
+        new IOUtils().stringToFile("content", delegate.artifactFile);
+        delegate.artifactFile.setLastModified(1000000000000L);
+
+        repository.resolve(id1);
+        repository.resolve(id2, false);
+        repository.revalidate();
+
+        // Unchanged artifacts are retained, metadata is discarded
+        repository.resolve(id1);
+        assertEquals(2, delegate.getCount());
+        repository.resolve(id2, false);
+        assertEquals(3, delegate.getCount());
+
+        delegate.artifactFile.setLastModified(1000000001000L);
+        repository.revalidate();
+        repository.resolve(id1);
+        assertEquals(4, delegate.getCount());
+    }
+
+    public void testBatchesAreForwarded() {
+        repository.startBatch();
+        assertEquals(1, delegate.batchDepth);
+        repository.install(new RepoArtifact(id1));
+        repository.commitBatch();
+        assertEquals(0, delegate.batchDepth);
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    private class Resolver extends Thread {
+        private RepoArtifactId id;
+        private RepoArtifact artifact;
+        private Throwable error;
+
+        public Resolver(RepoArtifactId id) {
+            this.id = id;
+        }
+
+        public void run() {
+            try {
+                artifact = repository.resolve(id);
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+    }
+
+    private static class CountingRepository extends MockRepository implements BatchingRepository {
+        private int count;
+        private int concurrent;
+        private int maxConcurrent;
+        private long delay;
+        private File localCopy;
+        private File artifactFile = new File("artifact");
+        private int batchDepth;
+
+        public RepoArtifact resolve(RepoArtifactId id, boolean retrieveArtifact) {
+            synchronized (this) {
+                count++;
+                concurrent++;
+                maxConcurrent = Math.max(concurrent, maxConcurrent);
+            }
+
+            try {
+                if (delay != 0) {
+                    Thread.sleep(delay);
+                }
+
+                RepoArtifact artifact = (RepoArtifact)super.resolve(id, retrieveArtifact).clone();
+                artifact.setLocalCopy(retrieveArtifact ? artifactFile : localCopy);
+
+                return artifact;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e.getMessage());
+            } finally {
+                synchronized (this) {
+                    concurrent--;
+                }
+            }
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        public void startBatch() {
+            batchDepth++;
+        }
+
+        public void commitBatch() {
+            batchDepth--;
+        }
+    }
+}
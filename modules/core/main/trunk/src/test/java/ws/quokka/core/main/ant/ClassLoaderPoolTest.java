@@ -0,0 +1,131 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.AntClassLoader;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.Path;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.model.Target;
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.File;
+
+
+/**
+ *
+ */
+public class ClassLoaderPoolTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Project project;
+    private ClassLoaderPool pool;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        project = new Project();
+        pool = ClassLoaderPool.getPool(project);
+    }
+
+    public void testReusesLoaderForSamePath() {
+        AntClassLoader loader1 = pool.acquire(target("t1"), path("a.jar"));
+        AntClassLoader loader2 = pool.acquire(target("t2"), path("a.jar"));
+        assertSame(loader1, loader2);
+        assertEquals(1, pool.getCreated());
+        assertEquals(1, pool.getReused());
+    }
+
+    public void testDifferentPathsUseDifferentLoaders() {
+        assertNotSame(pool.acquire(target("t1"), path("a.jar")), pool.acquire(target("t2"), path("b.jar")));
+        assertEquals(2, pool.getCreated());
+    }
+
+    public void testSharedWithSubProjects() {
+        Project child = new Project();
+        child.addReference("q.parentProject", project);
+
+        Project grandChild = new Project();
+        grandChild.addReference("q.parentProject", child);
+        assertSame(pool, ClassLoaderPool.getPool(grandChild));
+    }
+
+    public void testRelease() {
+        AntClassLoader loader = pool.acquire(target("t1"), path("a.jar"));
+        pool.acquire(target("t2"), path("a.jar"));
+        assertEquals(1, pool.getBorrowed());
+
+        pool.release(loader);
+        assertEquals(1, pool.getBorrowed());
+
+        pool.release(loader);
+        assertEquals(0, pool.getBorrowed());
+    }
+
+    public void testClosedWhenBuildFinishes() {
+        pool.acquire(target("t1"), path("a.jar"));
+        project.fireBuildFinished(null);
+
+        // Loaders are discarded when the pool is closed
+        pool.acquire(target("t1"), path("a.jar"));
+        assertEquals(2, pool.getCreated());
+    }
+
+    public void testPersistentPoolIsReusedByLaterBuilds() {
+        DaemonRegistry.enable();
+
+        try {
+            getOutputDir().mkdirs();
+            File jar = new File(getOutputDir(), "a.jar");
+            new IOUtils().stringToFile("", jar);
+            jar.setLastModified(1000000000000L);
+
+            Project build1 = new Project();
+            ClassLoaderPool persistent = ClassLoaderPool.getPool(build1);
+            AntClassLoader loader = persistent.acquire(target("t1"), path("a.jar"));
+            persistent.release(loader);
+            build1.fireBuildFinished(null);
+
+            // A later build reuses the loader
+            Project build2 = new Project();
+            assertSame(persistent, ClassLoaderPool.getPool(build2));
+            assertSame(loader, persistent.acquire(target("t1"), path("a.jar")));
+            persistent.release(loader);
+
+            // Unless the class path has changed
+            jar.setLastModified(1000000001000L);
+            assertNotSame(loader, persistent.acquire(target("t1"), path("a.jar")));
+        } finally {
+            DaemonRegistry.disable();
+        }
+    }
+
+    private Path path(String name) {
+        return new Path(project, getOutputDir().getPath() + "/" + name);
+    }
+
+    private Target target(String name) {
+        Target target = new Target();
+        target.setName(name);
+
+        return target;
+    }
+}
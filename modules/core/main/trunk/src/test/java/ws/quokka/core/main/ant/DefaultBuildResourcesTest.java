@@ -17,6 +17,7 @@
 
 package ws.quokka.core.main.ant;
 
+import ws.quokka.core.bootstrap_util.IOUtils;
 import ws.quokka.core.test.AbstractTest;
 import ws.quokka.core.util.URLs;
 
@@ -27,6 +28,7 @@ import java.net.URL;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.jar.JarFile;
 
 
 /**
@@ -71,6 +73,42 @@ public class DefaultBuildResourcesTest extends AbstractTest {
         assertContentEquals(URLs.toURL(file), resources.getURL(key));
     }
 
+    public void testJarFileNotCopiedIfUpToDate() throws IOException {
+        String key = "dir5/file5.1.txt";
+        File file = resources.getFile(key);
+        long lastModified = file.lastModified();
+
+        // Replace the contents, keeping the size and timestamp the same
+        StringBuffer marker = new StringBuffer();
+
+        for (int i = 0; i < file.length(); i++) {
+            marker.append("x");
+        }
+
+        new IOUtils().stringToFile(marker.toString(), file);
+        file.setLastModified(lastModified);
+        assertEquals(marker.toString(), new IOUtils().fileToString(resources.getFile(key)));
+
+        // Once the file differs it is copied again
+        new IOUtils().stringToFile(marker.toString() + "x", file);
+        assertContentEquals(URLs.toURL(resources.getFile(key)), resources.getURL(key));
+    }
+
+    public void testJarFileStampedWithEntryTime() throws IOException {
+        String key = "dir5/file5.1.txt";
+        JarFile jar = new JarFile(getTestCaseResource("resources\\root3.jar"));
+        long entryTime;
+
+        try {
+            entryTime = jar.getJarEntry(key).getTime();
+        } finally {
+            jar.close();
+        }
+
+        File file = resources.getFile(key);
+        assertTrue(Math.abs(file.lastModified() - entryTime) <= 2000);
+    }
+
     public void testDirDifferentRoots() throws IOException {
         String key = "share1";
         Map urls = resources.getURLs(key);
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.File;
+
+
+/**
+ *
+ */
+public class DefaultFingerprintTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Project project = new Project();
+    private File store;
+    private File source;
+    private File output;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteOutputDir();
+        store = new File(getOutputDir(), "fingerprints/target.properties");
+        source = new File(getOutputDir(), "src");
+        output = new File(getOutputDir(), "out");
+        source.mkdirs();
+        write(new File(source, "a.txt"), "a");
+    }
+
+    public void testNotUpToDateUntilSaved() {
+        assertFalse(fingerprint("value").isUpToDate());
+        execute("value");
+        assertTrue(fingerprint("value").isUpToDate());
+    }
+
+    public void testPropertyChanged() {
+        execute("value");
+        assertFalse(fingerprint("changed").isUpToDate());
+    }
+
+    public void testInputModified() {
+        execute("value");
+        write(new File(source, "a.txt"), "changed");
+        assertFalse(fingerprint("value").isUpToDate());
+    }
+
+    public void testInputAdded() {
+        execute("value");
+        write(new File(source, "b.txt"), "b");
+        assertFalse(fingerprint("value").isUpToDate());
+    }
+
+    public void testOutputDeleted() {
+        execute("value");
+        assertTrue(new File(output, "result.txt").delete());
+        assertFalse(fingerprint("value").isUpToDate());
+    }
+
+    public void testInputModifiedDuringExecution() {
+        DefaultFingerprint fingerprint = fingerprint("value");
+        assertFalse(fingerprint.isUpToDate());
+        write(new File(source, "a.txt"), "changed during execution");
+        write(new File(output, "result.txt"), "result");
+        fingerprint.saveIfRequired();
+
+        // The inputs were digested before they were modified, so must be processed again
+        assertFalse(fingerprint("value").isUpToDate());
+    }
+
+    private void execute(String property) {
+        DefaultFingerprint fingerprint = fingerprint(property);
+
+        if (!fingerprint.isUpToDate()) {
+            write(new File(output, "result.txt"), "result");
+            fingerprint.saveIfRequired();
+        }
+    }
+
+    private DefaultFingerprint fingerprint(String property) {
+        DefaultFingerprint fingerprint = new DefaultFingerprint(store, project);
+        FileSet fileSet = new FileSet();
+        fileSet.setProject(project);
+        fileSet.setDir(source);
+        fileSet.setIncludes("*.txt");
+        fingerprint.addInput(fileSet);
+        fingerprint.addProperty("property", property);
+        fingerprint.addOutput(output);
+
+        return fingerprint;
+    }
+
+    private void write(File file, String contents) {
+        file.getParentFile().mkdirs();
+        new IOUtils().stringToFile(contents, file);
+    }
+}
@@ -31,6 +31,9 @@ import ws.quokka.core.util.Strings;
 import ws.quokka.core.version.Version;
 import ws.quokka.core.version.VersionRangeUnion;
 
+import java.io.File;
+import java.io.IOException;
+
 import java.util.*;
 
 
@@ -70,6 +73,58 @@ public class DefaultProjectModelTest extends AbstractMainTest {
     public void testResolveTargets() {
     }
 
+    public void testPluginsWithoutTargetsAreNotLoaded() {
+        createArtifacts1();
+        artifact("plugin1");
+        artifact("plugin2");
+        target(plugin("plugin1", "p1"), "target1", "", "");
+        target(plugin("plugin2", "p2"), "target2", "", "");
+        pldep("plugin1", "", "").setUseDefaults(false);
+        pldep("plugin2", "", "target2").setUseDefaults(false);
+        model.initialise();
+
+        // plugin1 contributes no targets so is never parsed
+        assertNull(((Plugin)plugins.get(id("plugin1"))).getArtifact());
+        assertEquals(Collections.singleton("p2:target2"), model.getTargets().keySet());
+    }
+
+    public void testMissingPluginWithoutTargetsIsReported() {
+        createArtifacts1();
+        pldep("missing", "", "").setUseDefaults(false);
+
+        try {
+            model.initialise();
+            fail("Expected exception");
+        } catch (UnresolvedArtifactException e) {
+            assertEquals(id("missing"), e.getArtifactId());
+        }
+    }
+
+    public void testDeferredPluginDeclaredAfterImplementingPlugin() {
+        createArtifacts1();
+
+        // plugin1 declares an abstract target that is implemented by plugin2
+        Plugin plugin1 = plugin("plugin1:plugin1:plugin", "p1");
+        target(plugin1, "target1", "", "group1=plugin.ppath1").setAbstract(true);
+        artifact("plugin1:plugin1:plugin", path("ppath1", true, true));
+        dep(get("plugin1:plugin1:plugin"), get("dep1"), "ppath1");
+        dep(get("plugin1:plugin1:plugin"), get("dep2"), "ppath1?");
+
+        Plugin plugin2 = plugin("plugin2:plugin2:plugin", "p2");
+        target(plugin2, "target2", "", "classpath=plugin.api").setImplementsPlugin("plugin1:plugin1:target1");
+        artifact("plugin2:plugin2:plugin", path("api", true, true));
+        dep(get("plugin2:plugin2:plugin"), get("plugin1:plugin1:plugin"), "api");
+
+        // plugin1 is loaded while resolving plugin2, before its own declaration is reached
+        pldep("plugin2:plugin2:plugin", "", "target2").setUseDefaults(false);
+        pldep("plugin1:plugin1:plugin", "ppath1(dep2)", "").setUseDefaults(false);
+        model.initialise();
+
+        // The path specs of the declaration are still applied
+        ResolvedPath path = model.getResolvedPluginPath(plugin1, "ppath1", false, false, false);
+        assertPath(path, "dep1, dep11, dep111, dep12, dep121, dep2, dep21");
+    }
+
     public void testResolveProjectPath() {
         createArtifacts1();
         set.addPath(new Path("path1", null, true, true));
@@ -93,6 +148,78 @@ public class DefaultProjectModelTest extends AbstractMainTest {
         assertPath(path, "dep1, dep11, dep111");
     }
 
+    public void testDifferentPathsResolveConcurrently() throws InterruptedException {
+        final DelayingRepository delaying = new DelayingRepository();
+        repo = delaying;
+        model.setRepository(repo);
+        resolver = new Resolver(repo, new MockLogger(true, true, true, true, true));
+        model.setPathResolver(resolver);
+        createArtifacts1();
+        set.addPath(new Path("path1", null, true, true));
+        set.addPath(new Path("path2", null, true, true));
+        set.addDependency(pdep("dep1", "path1"));
+        set.addDependency(pdep("dep2", "path2"));
+        model.initialise();
+        delaying.delay = 50;
+
+        final ResolvedPath[] paths = new ResolvedPath[6];
+        Thread[] threads = new Thread[paths.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                        public void run() {
+                            paths[index] = model.getReslovedProjectPath("path" + ((index % 2) + 1), false, false, false);
+                        }
+                    };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        // Each path is only resolved once, but the two paths are resolved in parallel
+        for (int i = 2; i < paths.length; i++) {
+            assertSame(paths[i % 2], paths[i]);
+        }
+
+        assertPath(paths[0], "dep1, dep11, dep111, dep12, dep121");
+        assertPath(paths[1], "dep2, dep21");
+        assertEquals(2, delaying.maxConcurrent);
+    }
+
+    public void testResolveProjectPathFromLock() throws IOException {
+        File lockFile = new File(getOutputDir(), "resolved-paths.lock");
+        lockFile.delete();
+        model.getAntProject().setProperty("q.resolver.lockFile", lockFile.getPath());
+        createArtifacts1();
+
+        // Only paths where all artifacts have local copies are locked
+        File localCopy = new File(getOutputDir(), "artifact.jar");
+        localCopy.getParentFile().mkdirs();
+        localCopy.createNewFile();
+
+        for (Iterator i = Strings.commaSepList("dep1, dep11, dep111, dep12, dep121").iterator(); i.hasNext();) {
+            get((String)i.next()).setLocalCopy(localCopy);
+        }
+
+        set.addPath(new Path("path1", null, true, true));
+        set.addDependency(pdep("dep1", "path1"));
+        model.initialise();
+
+        assertPath(model.getReslovedProjectPath("path1", false, false, false), "dep1, dep11, dep111, dep12, dep121");
+
+        // The lock is saved when the build finishes
+        assertFalse(lockFile.exists());
+        model.getAntProject().fireBuildFinished(null);
+        assertTrue(lockFile.exists());
+
+        // The locked path is used without consulting the repository
+        model.setPathResolver(new Resolver(new MockRepository(), new MockLogger(true, true, true, true, true)));
+        assertPath(model.getReslovedProjectPath("path1", false, false, true), "dep1, dep11, dep111, dep12, dep121");
+    }
+
     public void testResolveProjectPathWithConflict() {
         createArtifacts1();
         set.addPath(new Path("path1", null, true, true));
@@ -566,6 +693,31 @@ public class DefaultProjectModelTest extends AbstractMainTest {
 
     //~ Inner Classes --------------------------------------------------------------------------------------------------
 
+    private static class DelayingRepository extends MockRepository {
+        private long delay;
+        private int concurrent;
+        private int maxConcurrent;
+
+        public RepoArtifact resolve(RepoArtifactId id, boolean retrieveArtifact) {
+            synchronized (this) {
+                concurrent++;
+                maxConcurrent = Math.max(concurrent, maxConcurrent);
+            }
+
+            try {
+                Thread.sleep(delay);
+
+                return super.resolve(id, retrieveArtifact);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e.getMessage());
+            } finally {
+                synchronized (this) {
+                    concurrent--;
+                }
+            }
+        }
+    }
+
     public class MockPluginParser implements PluginParser {
         public Plugin getPluginInstance(RepoArtifact artifact) {
             Plugin plugin = (Plugin)plugins.get(artifact.getId());
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildLogger;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Target;
+import org.apache.tools.ant.Task;
+
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ *
+ */
+public class ParallelExecutorTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Project project;
+    private List executed = Collections.synchronizedList(new ArrayList());
+    private int started;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        project = new Project();
+    }
+
+    public void testDependencies() {
+        addTarget("a", "b,c", false, false);
+        addTarget("b", "d", false, false);
+        addTarget("c", "d", false, false);
+        addTarget("d", null, false, false);
+        execute(2, "a");
+
+        assertEquals(4, executed.size());
+        assertEquals("d", executed.get(0));
+        assertEquals("a", executed.get(3));
+    }
+
+    public void testIndependentTargetsRunInParallel() {
+        addTarget("a", "b,c", false, false);
+        addTarget("b", null, true, false);
+        addTarget("c", null, true, false);
+        execute(2, "a");
+
+        assertEquals(3, executed.size());
+        assertEquals("a", executed.get(2));
+    }
+
+    public void testCommandLineTargetsRunInOrder() {
+        addTarget("a", null, false, false);
+        addTarget("b", null, false, false);
+        execute(2, "b,a");
+
+        assertEquals("b", executed.get(0));
+        assertEquals("a", executed.get(1));
+    }
+
+    public void testFailFast() {
+        addTarget("a", "b,c", false, false);
+        addTarget("b", null, false, true);
+        addTarget("c", null, false, false);
+
+        try {
+            execute(1, "a");
+            fail("Expected exception");
+        } catch (BuildException e) {
+            assertEquals("b failed", e.getMessage());
+        }
+
+        assertEquals(Collections.EMPTY_LIST, executed);
+    }
+
+    public void testKeepGoing() {
+        project.setKeepGoingMode(true);
+        addTarget("a", "b,c", false, false);
+        addTarget("b", "d", false, false);
+        addTarget("c", null, false, false);
+        addTarget("d", null, false, true);
+
+        try {
+            execute(1, "a,c");
+            fail("Expected exception");
+        } catch (BuildException e) {
+            assertEquals("d failed", e.getMessage());
+        }
+
+        assertEquals(2, executed.size());
+        assertEquals("c", executed.get(0));
+        assertEquals("c", executed.get(1));
+    }
+
+    public void testSerialisedLogging() {
+        RecordingLogger logger = new RecordingLogger();
+        project.addBuildListener(logger);
+        addTarget("a", "b,c", false, false);
+        addTarget("b", null, true, false);
+        addTarget("c", null, true, false);
+        execute(2, "a");
+
+        // Events for each target must be contiguous, despite b & c running concurrently
+        List events = logger.events;
+        assertEquals(3 * 5, events.size());
+
+        for (int i = 0; i < events.size(); i += 5) {
+            String target = ((String)events.get(i)).substring("targetStarted:".length());
+
+            for (int j = 1; j < 5; j++) {
+                assertTrue(events.get(i + j).toString().endsWith(target));
+            }
+        }
+
+        // The logger is restored after execution
+        assertTrue(project.getBuildListeners().contains(logger));
+    }
+
+    private void execute(int threads, String targets) {
+        new ParallelExecutor(threads).executeTargets(project, targets.split(","));
+    }
+
+    private void addTarget(String name, String depends, boolean waitForOther, boolean fail) {
+        Target target = new Target();
+        target.setName(name);
+        target.setProject(project);
+
+        if (depends != null) {
+            target.setDepends(depends);
+        }
+
+        RecordingTask task = new RecordingTask(waitForOther, fail);
+        task.setProject(project);
+        task.setOwningTarget(target);
+        task.setTaskName("record");
+        target.addTask(task);
+        project.addTarget(target);
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    public class RecordingTask extends Task {
+        private boolean waitForOther;
+        private boolean fail;
+
+        public RecordingTask(boolean waitForOther, boolean fail) {
+            this.waitForOther = waitForOther;
+            this.fail = fail;
+        }
+
+        public void execute() throws BuildException {
+            String name = getOwningTarget().getName();
+            log("start " + name);
+
+            if (fail) {
+                throw new BuildException(name + " failed");
+            }
+
+            if (waitForOther) {
+                // Waits for another target to start, which can only happen if they are executed in parallel
+                synchronized (ParallelExecutorTest.this) {
+                    started++;
+                    ParallelExecutorTest.this.notifyAll();
+
+                    long end = System.currentTimeMillis() + 5000;
+
+                    while ((started < 2) && (System.currentTimeMillis() < end)) {
+                        try {
+                            ParallelExecutorTest.this.wait(100);
+                        } catch (InterruptedException e) {
+                            throw new BuildException(e);
+                        }
+                    }
+
+                    assertEquals(2, started);
+                }
+            }
+
+            log("end " + name);
+            executed.add(name);
+        }
+    }
+
+    private static class RecordingLogger implements BuildLogger {
+        private List events = new ArrayList();
+
+        public void setMessageOutputLevel(int level) {
+        }
+
+        public void setOutputPrintStream(PrintStream output) {
+        }
+
+        public void setEmacsMode(boolean emacsMode) {
+        }
+
+        public void setErrorPrintStream(PrintStream err) {
+        }
+
+        public void buildStarted(BuildEvent event) {
+        }
+
+        public void buildFinished(BuildEvent event) {
+        }
+
+        public void targetStarted(BuildEvent event) {
+            events.add("targetStarted:" + event.getTarget().getName());
+        }
+
+        public void targetFinished(BuildEvent event) {
+            events.add("targetFinished:" + event.getTarget().getName());
+        }
+
+        public void taskStarted(BuildEvent event) {
+            events.add("taskStarted:" + event.getTarget().getName());
+        }
+
+        public void taskFinished(BuildEvent event) {
+            events.add("taskFinished:" + event.getTarget().getName());
+        }
+
+        public void messageLogged(BuildEvent event) {
+            if (event.getMessage().startsWith("start ")) {
+                events.add("message:" + event.getMessage().substring("start ".length()));
+            }
+        }
+    }
+}
@@ -17,7 +17,17 @@
 
 package ws.quokka.core.main.ant;
 
+import org.apache.tools.ant.Project;
+
+import ws.quokka.core.repo_spi.RepoArtifact;
+import ws.quokka.core.repo_spi.RepoArtifactId;
+import ws.quokka.core.repo_spi.Repository;
+import ws.quokka.core.repo_spi.RepositoryFactory;
+import ws.quokka.core.repo_spi.UnresolvedArtifactException;
 import ws.quokka.core.test.AbstractTest;
+import ws.quokka.core.util.AnnotatedProperties;
+
+import java.io.File;
 
 
 /**
@@ -28,4 +38,86 @@ public class ProjectHelperTest extends AbstractTest {
 
     public void test1() {
     }
+
+    public void testSubProjectsShareRepository() {
+        Project root = new Project();
+        Repository repository = getRepository(root, "repo");
+        assertSame(repository, root.getReference(ProjectHelper.REPOSITORY));
+
+        // Same configuration reuses the root's repository & factory
+        Project child = createChild(root);
+        assertSame(repository, getRepository(child, "repo"));
+        assertSame(root.getReference(ProjectHelper.REPOSITORY_FACTORY),
+            child.getReference(ProjectHelper.REPOSITORY_FACTORY));
+
+        // Grand children are shared via the root
+        assertSame(repository, getRepository(createChild(child), "repo"));
+
+        // Different configuration creates a new repository
+        Project other = createChild(root);
+        assertNotSame(repository, getRepository(other, "other-repo"));
+        assertNotSame(root.getReference(ProjectHelper.REPOSITORY_FACTORY),
+            other.getReference(ProjectHelper.REPOSITORY_FACTORY));
+    }
+
+    public void testDaemonSharesRepositoryWithLaterBuilds() {
+        DaemonRegistry.enable();
+
+        try {
+            Project build1 = new Project();
+            Repository repository = getRepository(build1, "repo");
+            RepositoryFactory factory = (RepositoryFactory)build1.getReference(ProjectHelper.REPOSITORY_FACTORY);
+
+            // The repository is reused by the next build and bound to its project
+            Project build2 = new Project();
+            assertSame(repository, getRepository(build2, "repo"));
+            assertSame(factory, build2.getReference(ProjectHelper.REPOSITORY_FACTORY));
+            assertSame(build2, factory.getProject());
+        } finally {
+            DaemonRegistry.disable();
+        }
+
+        assertNotSame(getRepository(new Project(), "repo"), getRepository(new Project(), "repo"));
+    }
+
+    public void testInstallAndRemoveEvictCachedArtifacts() {
+        Project root = new Project();
+        Repository repository = getRepository(root, "repo");
+        RepoArtifactId id = new RepoArtifactId("group1", "name1", "paths", "1.0");
+        repository.install(new RepoArtifact(id));
+
+        // Cache the artifact and its metadata, then replace it
+        repository.resolve(id);
+        repository.resolve(id, false);
+
+        RepoArtifact replacement = new RepoArtifact(id);
+        replacement.setDescription("replacement");
+        repository.install(replacement);
+        assertEquals("replacement", repository.resolve(id).getDescription());
+        assertEquals("replacement", repository.resolve(id, false).getDescription());
+
+        repository.remove(id);
+
+        try {
+            repository.resolve(id);
+            fail("Expected exception");
+        } catch (UnresolvedArtifactException e) {
+            // Expected
+        }
+    }
+
+    private Project createChild(Project parent) {
+        Project child = new Project();
+        child.addReference("q.parentProject", parent);
+
+        return child;
+    }
+
+    private Repository getRepository(Project project, String root) {
+        AnnotatedProperties properties = new AnnotatedProperties();
+        properties.setProperty("q.cacheDir", getOutputDir().getPath());
+        properties.setProperty("q.repo.project.url", "file:" + new File(getOutputDir(), root).getPath());
+
+        return new ProjectHelper().getRepository(properties, project);
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.main.ant;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.net.Socket;
+
+import java.util.Properties;
+
+
+/**
+ *
+ */
+public class QuokkaDaemonTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private File daemonFile;
+    private Thread thread;
+    private PrintStream systemOut;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        systemOut = System.out;
+        daemonFile = new File(getOutputDir(), "daemon.properties");
+        daemonFile.delete();
+
+        thread = new Thread() {
+                    public void run() {
+                        QuokkaDaemon daemon = new EchoDaemon();
+                        daemon.setHandshakeTimeout(500);
+                        daemon.run(daemonFile);
+                    }
+                };
+        thread.start();
+
+        for (int i = 0; (i < 100) && !daemonFile.exists(); i++) {
+            Thread.sleep(50);
+        }
+
+        assertTrue(daemonFile.exists());
+    }
+
+    protected void tearDown() throws Exception {
+        if (thread.isAlive()) {
+            run(new String[] { "-stop" }, new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        }
+
+        thread.join(5000);
+        super.tearDown();
+    }
+
+    public void testBuild() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(2, run(new String[] { "target1", "target2" }, out, err));
+        assertEquals("target1" + ls() + "target2" + ls(), out.toString());
+        assertEquals("2 targets" + ls(), err.toString());
+
+        // The standard streams are restored after the build
+        assertSame(systemOut, System.out);
+    }
+
+    public void testSequentialBuilds() {
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(1, run(new String[] { "target" + i }, out, new ByteArrayOutputStream()));
+            assertEquals("target" + i + ls(), out.toString());
+        }
+    }
+
+    public void testFileArgumentsResolvedAgainstClientDir() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        File absolute = new File(getOutputDir(), "absolute.properties").getAbsoluteFile();
+        String[] args = new String[] { "-f", "sub/build-quokka.xml", "-propertyfile", absolute.getPath(), "sub" };
+        assertEquals(5, run(args, out, new ByteArrayOutputStream()));
+
+        File clientDir = new File(System.getProperty("user.dir"));
+        assertEquals("-f" + ls() + new File(clientDir, "sub/build-quokka.xml").getAbsolutePath() + ls()
+            + "-propertyfile" + ls() + absolute.getPath() + ls() + "sub" + ls(), out.toString());
+    }
+
+    public void testStop() throws InterruptedException {
+        assertEquals(0, run(new String[] { "-stop" }, new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertFalse(daemonFile.exists());
+    }
+
+    public void testIdleClientDoesNotBlockOthers() throws IOException {
+        Properties properties = new IOUtils().loadProperties(daemonFile);
+        Socket idle = new Socket("127.0.0.1", Integer.parseInt(properties.getProperty("port")));
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(1, run(new String[] { "target" }, out, new ByteArrayOutputStream()));
+            assertEquals("target" + ls(), out.toString());
+        } finally {
+            idle.close();
+        }
+    }
+
+    public void testNoDaemon() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        QuokkaClient client = new QuokkaClient(new File(getOutputDir(), "missing.properties"));
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        assertEquals(1, client.run(new String[] {  }, out, new PrintStream(err)));
+        assertTrue(err.toString().indexOf("daemon does not appear to be running") != -1);
+    }
+
+    private int run(String[] args, ByteArrayOutputStream out, ByteArrayOutputStream err) {
+        return new QuokkaClient(daemonFile).run(args, new PrintStream(out), new PrintStream(err));
+    }
+
+    private String ls() {
+        return System.getProperty("line.separator");
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * EchoDaemon echoes the arguments of each build instead of running ant
+     */
+    private static class EchoDaemon extends QuokkaDaemon {
+        protected int build(File dir, String[] args) {
+            for (int i = 0; i < args.length; i++) {
+                System.out.println(args[i]);
+            }
+
+            System.err.println(args.length + " targets");
+
+            return args.length;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.main.ant;
+
+import org.apache.tools.ant.Project;
+
+import ws.quokka.core.repo_resolver.ResolvedArtifact;
+import ws.quokka.core.repo_resolver.ResolvedPath;
+import ws.quokka.core.repo_resolver.Resolver;
+import ws.quokka.core.repo_spi.RepoArtifact;
+import ws.quokka.core.repo_spi.RepoArtifactId;
+import ws.quokka.core.repo_spi.RepoConflict;
+import ws.quokka.core.repo_spi.RepoDependency;
+import ws.quokka.core.repo_spi.RepoPath;
+import ws.quokka.core.repo_spi.RepoPathSpec;
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+
+/**
+ *
+ */
+public class ResolvedPathLockTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private File lockFile;
+    private File jar1;
+    private File jar2;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteOutputDir();
+        getOutputDir().mkdirs();
+        lockFile = new File(getOutputDir(), "resolved-paths.lock");
+        jar1 = write("jar1.jar", "jar1");
+        jar2 = write("jar2.jar", "jar2");
+    }
+
+    public void testRoundTrip() {
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        lock.put("key", "fingerprint", createPath());
+        lock.save();
+
+        // A new instance reads the saved lock
+        ResolvedPath path = new ResolvedPathLock(lockFile).get("key", "fingerprint");
+        assertNotNull(path);
+        assertEquals("Path: runtime", path.getId());
+        assertEquals(2, path.getArtifacts().size());
+
+        ResolvedArtifact parent = (ResolvedArtifact)path.getResolvedArtifacts().get(0);
+        ResolvedArtifact child = (ResolvedArtifact)path.getResolvedArtifacts().get(1);
+        assertEquals(new RepoArtifactId("group1", "name1", "jar", "1.0"), parent.getId());
+        assertEquals(jar1.getAbsoluteFile(), parent.getArtifact().getLocalCopy());
+        assertEquals("hash1", parent.getArtifact().getHash());
+        assertEquals(1, parent.getArtifact().getDependencies().size());
+        assertEquals(1, child.getArtifact().getConflicts().size());
+        assertNull(parent.getAnnotations().get(Resolver.DECLARED_BY));
+        assertSame(parent, child.getAnnotations().get(Resolver.DECLARED_BY));
+        assertEquals("1", child.getAnnotations().get(Resolver.CONFLICT));
+    }
+
+    public void testMisses() {
+        putAndSave(createPath());
+
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        assertNull(lock.get("otherkey", "fingerprint"));
+        assertNull(lock.get("key", "otherfingerprint"));
+        assertNotNull(lock.get("key", "fingerprint"));
+    }
+
+    public void testChangedArtifactInvalidatesPath()
+            throws IOException {
+        putAndSave(createPath());
+        write("jar2.jar", "jar2 has changed");
+        assertNull(new ResolvedPathLock(lockFile).get("key", "fingerprint"));
+
+        jar2.delete();
+        assertNull(new ResolvedPathLock(lockFile).get("key", "fingerprint"));
+    }
+
+    public void testChangedRepositoryFileInvalidatesPath()
+            throws IOException {
+        ResolvedPath path = createPath();
+        File repositoryFile = write("jar2_repository.xml", "<artifact/>");
+        ((ResolvedArtifact)path.getResolvedArtifacts().get(1)).getArtifact().setRepositoryFile(repositoryFile);
+        putAndSave(path);
+        assertNotNull(new ResolvedPathLock(lockFile).get("key", "fingerprint"));
+
+        // The metadata of a dependency changes without its jar changing
+        write("jar2_repository.xml", "<artifact><dependencies/></artifact>");
+        assertNull(new ResolvedPathLock(lockFile).get("key", "fingerprint"));
+    }
+
+    public void testChangedConfigurationInvalidatesLock() {
+        RepoArtifact artifact = new RepoArtifact(new RepoArtifactId("group1", "name1", "plugin", "1.0"));
+        artifact.setLocalCopy(jar1);
+
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        lock.setConfiguration("{q.repo.project.url=file:repo1}");
+        lock.putArtifact(artifact);
+
+        String fingerprint = lock.fingerprint("runtime", createRoot("runtime"));
+        lock.setConfiguration("{q.repo.project.url=file:repo2}");
+        assertNull(lock.getArtifact(artifact.getId()));
+        assertFalse(fingerprint.equals(lock.fingerprint("runtime", createRoot("runtime"))));
+    }
+
+    public void testCorruptLockIsIgnored() throws IOException {
+        write("resolved-paths.lock", "corrupt");
+
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        assertNull(lock.get("key", "fingerprint"));
+        lock.put("key", "fingerprint", createPath());
+        lock.save();
+        assertNotNull(new ResolvedPathLock(lockFile).get("key", "fingerprint"));
+    }
+
+    public void testSavedWhenBuildFinishes() {
+        Project project = new Project();
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        project.addBuildListener(lock);
+
+        // Changes are not written until the build finishes
+        lock.put("key", "fingerprint", createPath());
+        assertFalse(lockFile.exists());
+
+        project.fireBuildFinished(null);
+        assertNotNull(new ResolvedPathLock(lockFile).get("key", "fingerprint"));
+    }
+
+    public void testPathWithoutLocalCopyIsNotLocked() {
+        ResolvedPath path = createPath();
+        ((ResolvedArtifact)path.getResolvedArtifacts().get(1)).getArtifact().setLocalCopy(null);
+
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        lock.put("key", "fingerprint", path);
+        lock.save();
+        assertNull(lock.get("key", "fingerprint"));
+        assertFalse(lockFile.exists());
+    }
+
+    public void testArtifact() {
+        RepoArtifact artifact = new RepoArtifact(new RepoArtifactId("group1", "name1", "plugin", "1.0"));
+        artifact.setLocalCopy(jar1);
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        lock.putArtifact(artifact);
+        lock.save();
+
+        lock = new ResolvedPathLock(lockFile);
+        assertEquals(artifact, lock.getArtifact(artifact.getId()));
+        assertEquals(jar1.getAbsoluteFile(), lock.getArtifact(artifact.getId()).getLocalCopy());
+        assertNull(lock.getArtifact(new RepoArtifactId("group1", "name1", "plugin", "1.1")));
+    }
+
+    public void testFingerprint() {
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        RepoArtifact artifact = createRoot("runtime");
+        String fingerprint = lock.fingerprint("runtime", artifact);
+        assertEquals(fingerprint, lock.fingerprint("runtime", createRoot("runtime")));
+        assertFalse(fingerprint.equals(lock.fingerprint("compile", artifact)));
+        assertFalse(fingerprint.equals(lock.fingerprint("runtime", createRoot("runtime(opt1)"))));
+    }
+
+    private void putAndSave(ResolvedPath path) {
+        ResolvedPathLock lock = new ResolvedPathLock(lockFile);
+        lock.put("key", "fingerprint", path);
+        lock.save();
+    }
+
+    private RepoArtifact createRoot(String pathSpec) {
+        RepoArtifact artifact = new RepoArtifact();
+        artifact.addPath(new RepoPath("runtime", "Runtime", true, true));
+
+        RepoDependency dependency = new RepoDependency();
+        dependency.setId(new RepoArtifactId("group1", "name1", "jar", "1.0"));
+        dependency.addPathSpec(new RepoPathSpec(pathSpec));
+        artifact.addDependency(dependency);
+
+        return artifact;
+    }
+
+    private ResolvedPath createPath() {
+        RepoArtifact artifact1 = new RepoArtifact(new RepoArtifactId("group1", "name1", "jar", "1.0"));
+        artifact1.setLocalCopy(jar1);
+        artifact1.setHash("hash1");
+
+        RepoDependency dependency = new RepoDependency();
+        dependency.setId(new RepoArtifactId("group2", "name2", "jar", "1.0"));
+        dependency.addPathSpec(new RepoPathSpec("runtime", "runtime", null, Boolean.TRUE, Boolean.TRUE));
+        artifact1.addDependency(dependency);
+
+        RepoArtifact artifact2 = new RepoArtifact(new RepoArtifactId("group2", "name2", "jar", "1.0"));
+        artifact2.setLocalCopy(jar2);
+        artifact2.addConflict(new RepoConflict(new RepoArtifactId("group3", "name3", "jar", "1.0"),
+                RepoConflict.RENAMED));
+
+        ResolvedPath path = new ResolvedPath();
+        path.setId("Path: runtime");
+
+        ResolvedArtifact parent = new ResolvedArtifact(artifact1);
+        ResolvedArtifact child = new ResolvedArtifact(artifact2);
+        child.getAnnotations().put(Resolver.DECLARED_BY, parent);
+        child.getAnnotations().put(Resolver.CONFLICT, "1");
+        path.add(parent);
+        path.add(child);
+
+        return path;
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File file = new File(getOutputDir(), name);
+        FileOutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(contents.getBytes());
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.main.ant;
+
+import ws.quokka.core.test.AbstractTest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ *
+ */
+public class SingleFlightTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Map cache = new HashMap();
+    private SingleFlight flights = new SingleFlight(cache);
+    private int calls;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void testConcurrentCallsCoalesced() throws InterruptedException {
+        Caller[] callers = new Caller[4];
+
+        for (int i = 0; i < callers.length; i++) {
+            callers[i] = new Caller("key", 200);
+            callers[i].start();
+        }
+
+        for (int i = 0; i < callers.length; i++) {
+            callers[i].join();
+            assertEquals("key-result", callers[i].result);
+        }
+
+        assertEquals(1, calls);
+        assertEquals("key-result", cache.get("key"));
+        assertEquals("key-result", flights.get("key", null, new TestCall("key", 0)));
+        assertEquals(1, calls);
+    }
+
+    public void testFailuresAreNotCached() {
+        TestCall call = new TestCall("key", 0);
+        call.fail = true;
+
+        try {
+            flights.get("key", null, call);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        assertEquals("key-result", flights.get("key", null, new TestCall("key", 0)));
+        assertEquals(2, calls);
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    private class TestCall implements SingleFlight.Call {
+        private String key;
+        private long delay;
+        private boolean fail;
+
+        public TestCall(String key, long delay) {
+            this.key = key;
+            this.delay = delay;
+        }
+
+        public Object getCached() {
+            return cache.get(key);
+        }
+
+        public Object call() {
+            synchronized (SingleFlightTest.this) {
+                calls++;
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+
+            if (fail) {
+                throw new IllegalStateException("Failed");
+            }
+
+            return key + "-result";
+        }
+
+        public void cache(Object result) {
+            cache.put(key, result);
+        }
+    }
+
+    private class Caller extends Thread {
+        private TestCall call;
+        private Object result;
+
+        public Caller(String key, long delay) {
+            call = new TestCall(key, delay);
+        }
+
+        public void run() {
+            result = flights.get(call.key, null, call);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.main.ant.task;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildLogger;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.SubBuildListener;
+import org.apache.tools.ant.Target;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+
+import ws.quokka.core.main.ant.ParentProjectBuildListener;
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ *
+ */
+public class BuildPathTaskTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Project project;
+    private BuildPathTask task;
+    private RecordingLogger logger = new RecordingLogger();
+    private List parents = Collections.synchronizedList(new ArrayList());
+    private File cache;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteOutputDir();
+        getOutputDir().mkdirs();
+
+        project = new Project();
+        project.init();
+        project.addBuildListener(new ParentProjectBuildListener());
+        project.addBuildListener(new ParentRecorder());
+        project.addBuildListener(logger);
+
+        // b & c each wait for the other to start, so can only succeed if they are built in parallel
+        createProject("a", "");
+        createProject("b", waitFor("b", "c"));
+        createProject("c", waitFor("c", "b"));
+        createProject("d", "");
+
+        cache = new File(getOutputDir(), "sequence.txt");
+
+        FileSet projects = new FileSet();
+        projects.setProject(project);
+        projects.setDir(getOutputDir());
+        projects.setIncludes("*/build.xml");
+
+        task = new BuildPathTask();
+        task.setProject(project);
+        task.setTaskName("buildpath");
+        task.init();
+        task.setId("buildpath");
+        task.setCache(cache);
+        task.add(projects);
+    }
+
+    public void testParallelBuild() throws IOException {
+        writeSequence(new String[] { "a", "b", "\ta", "c", "\ta", "d", "\tb", "\tc" });
+        task.setTarget("build");
+        task.setThreads(2);
+        execute();
+
+        // d is built last and each project's output is kept together
+        List built = logger.messages;
+        assertEquals(8, built.size());
+
+        for (int i = 0; i < built.size(); i += 2) {
+            String name = ((String)built.get(i)).substring("start ".length());
+            assertEquals("end " + name, built.get(i + 1));
+        }
+
+        assertEquals("start a", built.get(0));
+        assertEquals("start d", built.get(6));
+
+        // Sub-projects have the correct parent
+        assertEquals(4, parents.size());
+
+        for (int i = 0; i < parents.size(); i++) {
+            assertSame(project, parents.get(i));
+        }
+    }
+
+    public void testUnsequencedBuild() {
+        // Projects are built in the order given on the current thread
+        task = new BuildPathTask();
+        task.setProject(project);
+        task.setTaskName("buildpath");
+        task.init();
+        task.setId("buildpath");
+        task.setCache(cache);
+        task.setSequence(false);
+        task.setThreads(2);
+        task.add(fileSet("a"));
+        task.add(fileSet("d"));
+        task.setTarget("build");
+        execute();
+
+        assertEquals(4, logger.messages.size());
+        assertEquals("start a", logger.messages.get(0));
+        assertEquals("end d", logger.messages.get(3));
+    }
+
+    public void testSequenceOnly() throws IOException {
+        writeSequence(new String[] { "a", "b", "\ta", "c", "\ta", "d", "\tb", "\tc" });
+        execute();
+
+        assertEquals(0, logger.messages.size());
+
+        Path path = (Path)project.getReference("buildpath");
+        String[] elements = path.list();
+        assertEquals(4, elements.length);
+        assertEquals(new File(getOutputDir(), "d").getAbsolutePath(), elements[3]);
+    }
+
+    public void testOldCacheFormatIsRegenerated() throws IOException {
+        // Old caches are ignored, which would require generating the sequence from the projects
+        writeSequence(new String[] { "a", "b", "c", "d" }, false);
+        task.setTarget("build");
+        task.setThreads(2);
+
+        try {
+            execute();
+            fail("Expected exception");
+        } catch (BuildException e) {
+            // Expected as the projects aren't quokka projects
+        }
+
+        assertEquals(0, logger.messages.size());
+    }
+
+    private FileSet fileSet(String name) {
+        FileSet fileSet = new FileSet();
+        fileSet.setProject(project);
+        fileSet.setDir(new File(getOutputDir(), name));
+        fileSet.setIncludes("build.xml");
+
+        return fileSet;
+    }
+
+    private void execute() {
+        Target target = new Target();
+        target.setName("build-all");
+        target.setProject(project);
+        task.setOwningTarget(target);
+        target.addTask(task);
+        project.addTarget(target);
+        target.performTasks();
+    }
+
+    private String waitFor(String name, String other) {
+        return "<touch file='../" + name + ".started'/>" + "<waitfor maxwait='10' maxwaitunit='second' "
+        + "timeoutproperty='timeout'><available file='../" + other + ".started'/></waitfor><fail if='timeout'/>";
+    }
+
+    private void createProject(String name, String body)
+            throws IOException {
+        File dir = new File(getOutputDir(), name);
+        dir.mkdirs();
+        write(new File(dir, "build.xml"),
+            "<project name='" + name + "'><target name='build'><echo>start " + name + "</echo>" + body + "<echo>end "
+            + name + "</echo></target></project>");
+    }
+
+    private void writeSequence(String[] lines) throws IOException {
+        writeSequence(lines, true);
+    }
+
+    private void writeSequence(String[] lines, boolean header)
+            throws IOException {
+        StringBuffer sb = new StringBuffer(header ? "# build-sequence 2\n" : "");
+
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String prefix = line.startsWith("\t") ? "\t" : "";
+            sb.append(prefix).append(new File(getOutputDir(), line.trim() + "/build.xml").getAbsolutePath()).append(
+                "\n");
+        }
+
+        write(cache, sb.toString());
+        cache.setLastModified(System.currentTimeMillis() + 60000); // Ensure it is up to date
+    }
+
+    private void write(File file, String content) throws IOException {
+        Writer writer = new FileWriter(file);
+
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    private class ParentRecorder implements SubBuildListener {
+        public void subBuildStarted(BuildEvent event) {
+            parents.add(event.getProject().getReference("q.parentProject"));
+        }
+
+        public void subBuildFinished(BuildEvent event) {
+        }
+
+        public void buildStarted(BuildEvent event) {
+        }
+
+        public void buildFinished(BuildEvent event) {
+        }
+
+        public void targetStarted(BuildEvent event) {
+        }
+
+        public void targetFinished(BuildEvent event) {
+        }
+
+        public void taskStarted(BuildEvent event) {
+        }
+
+        public void taskFinished(BuildEvent event) {
+        }
+
+        public void messageLogged(BuildEvent event) {
+        }
+    }
+
+    private static class RecordingLogger implements BuildLogger {
+        private List messages = new ArrayList();
+
+        public void setMessageOutputLevel(int level) {
+        }
+
+        public void setOutputPrintStream(PrintStream output) {
+        }
+
+        public void setEmacsMode(boolean emacsMode) {
+        }
+
+        public void setErrorPrintStream(PrintStream err) {
+        }
+
+        public void buildStarted(BuildEvent event) {
+        }
+
+        public void buildFinished(BuildEvent event) {
+        }
+
+        public void targetStarted(BuildEvent event) {
+        }
+
+        public void targetFinished(BuildEvent event) {
+        }
+
+        public void taskStarted(BuildEvent event) {
+        }
+
+        public void taskFinished(BuildEvent event) {
+        }
+
+        public void messageLogged(BuildEvent event) {
+            if ((event.getTask() != null) && "echo".equals(event.getTask().getTaskName())) {
+                messages.add(event.getMessage());
+            }
+        }
+    }
+}
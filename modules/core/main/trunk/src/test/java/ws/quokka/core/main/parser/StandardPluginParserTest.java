@@ -21,15 +21,26 @@ import ws.quokka.core.model.Path;
 import ws.quokka.core.model.PathGroup;
 import ws.quokka.core.model.Plugin;
 import ws.quokka.core.model.Target;
+import ws.quokka.core.repo_spi.RepoArtifact;
+import ws.quokka.core.repo_spi.RepoArtifactId;
 import ws.quokka.core.repo_spi.RepoType;
 import ws.quokka.core.test.AbstractTest;
 import ws.quokka.core.util.AnnotatedProperties;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 import java.net.MalformedURLException;
+import java.net.URL;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 
 /**
@@ -142,4 +153,73 @@ public class StandardPluginParserTest extends AbstractTest {
         assertEquals("value2", properties.get("prop2"));
         assertEquals("value3", properties.get("prop3"));
     }
+
+    public void testPluginInstancesAreCachedCopies() throws IOException {
+        StandardPluginParser.clearCache();
+
+        final int[] parsed = new int[1];
+        StandardPluginParser parser = new StandardPluginParser() {
+                protected Plugin parsePluginXml(URL url) {
+                    parsed[0]++;
+
+                    return super.parsePluginXml(url);
+                }
+            };
+
+        RepoArtifact artifact = createPluginArtifact();
+        Plugin plugin1 = parser.getPluginInstance(artifact);
+        Plugin plugin2 = parser.getPluginInstance(artifact);
+        assertEquals(1, parsed[0]);
+        assertNotSame(plugin1, plugin2);
+        assertSame(artifact, plugin2.getArtifact());
+
+        // Modifying an instance does not affect other instances
+        Target target1 = plugin1.getTarget("some.name.space:target1");
+        target1.setName("renamed");
+        target1.addDependency("some.name.space:target4");
+        target1.getDefaultProperties().put("t1prop1", "changed");
+
+        Target target2 = plugin2.getTarget("some.name.space:target1");
+        assertNotNull(target2);
+        assertSame(plugin2, target2.getPlugin());
+        assertEquals(2, target2.getDependencies().size());
+        assertEquals("t1value1", target2.getDefaultProperties().get("t1prop1"));
+
+        // A different hash is treated as a different plugin
+        artifact.setHash("changed");
+        parser.getPluginInstance(artifact);
+        assertEquals(2, parsed[0]);
+    }
+
+    private RepoArtifact createPluginArtifact() throws IOException {
+        RepoArtifact artifact = new RepoArtifact(new RepoArtifactId("group", "name", "plugin", "1.0"));
+        File jar = new File(getOutputDir(), "plugin.jar");
+        jar.getParentFile().mkdirs();
+
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+
+        try {
+            out.putNextEntry(new ZipEntry("META-INF/quokka/" + artifact.getId().toPathString() + "/plugin.xml"));
+
+            InputStream in = new FileInputStream(getTestCaseResource("plugin.xml"));
+
+            try {
+                byte[] buffer = new byte[1024];
+
+                for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+
+        artifact.setLocalCopy(jar);
+
+        return artifact;
+    }
 }
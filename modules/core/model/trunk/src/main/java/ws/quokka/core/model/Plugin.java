@@ -136,4 +136,27 @@ public class Plugin extends AnnotatedObject {
     public String toShortString() {
         return (artifact == null) ? super.toShortString() : artifact.toShortString();
     }
+
+    /**
+     * Returns a copy of this plugin that can be modified without affecting the original. Targets are cloned and
+     * belong to the copy, while the artifact and resources are shared.
+     */
+    public Plugin copy() {
+        Plugin copy = new Plugin();
+        copy.setAnnotations(getAnnotations());
+        copy.artifact = artifact;
+        copy.className = className;
+        copy.nameSpace = nameSpace;
+        copy.types.addAll(types);
+        copy.declaringPlugin = declaringPlugin;
+        copy.dependency = dependency;
+        copy.buildResources.putAll(buildResources);
+        copy.localResources = localResources;
+
+        for (Iterator i = targets.iterator(); i.hasNext();) {
+            copy.addTarget((Target)((Target)i.next()).clone());
+        }
+
+        return copy;
+    }
 }
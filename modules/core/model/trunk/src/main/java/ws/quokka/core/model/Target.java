@@ -171,6 +171,9 @@ public class Target extends AnnotatedObject implements Cloneable {
             Target clone = (Target)super.clone();
             clone.defaultProperties = (AnnotatedProperties)defaultProperties.clone();
             clone.dependencies = (List)((ArrayList)dependencies).clone();
+            clone.originalDependencies = (List)((ArrayList)originalDependencies).clone();
+            clone.pathGroups = (List)((ArrayList)pathGroups).clone();
+            clone.projectPaths = (List)((ArrayList)projectPaths).clone();
 
             return clone;
         } catch (CloneNotSupportedException e) {
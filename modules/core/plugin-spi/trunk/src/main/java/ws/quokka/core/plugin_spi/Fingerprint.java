@@ -0,0 +1,89 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package ws.quokka.core.plugin_spi;
+
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+
+import java.io.File;
+
+
+/**
+ * Fingerprint allows a target to skip its work if its inputs and outputs are unchanged since it last executed
+ * successfully. A target declares its inputs (files, properties and paths) and outputs, and then checks
+ * {@link #isUpToDate()}. The fingerprint is saved automatically once the target completes successfully.
+ * <p/>
+ * Files are compared by their path, size and modification time, while directories include all files within them.
+ * For example:
+ * <pre>
+ * Fingerprint fingerprint = getResources().getFingerprint();
+ * fingerprint.addInput(sourceFiles);
+ * fingerprint.addProperty("debug", debug);
+ * fingerprint.addOutput(destDir);
+ * if (fingerprint.isUpToDate()) {
+ *     log().info("Skipping as nothing has changed");
+ *     return;
+ * }
+ * </pre>
+ */
+public interface Fingerprint {
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Adds a file or directory as an input
+     */
+    void addInput(File file);
+
+    /**
+     * Adds the files included by the file set as inputs
+     */
+    void addInput(FileSet fileSet);
+
+    /**
+     * Adds each element of the path as an input, such as a resolved class path
+     */
+    void addInput(Path path);
+
+    /**
+     * Adds a property value as an input
+     */
+    void addProperty(String key, String value);
+
+    /**
+     * Adds a file or directory as an output. Outputs are compared with their state when the fingerprint was last
+     * saved, so deleting or modifying an output causes the target to execute again.
+     */
+    void addOutput(File file);
+
+    /**
+     * Adds the files included by the file set as outputs
+     */
+    void addOutput(FileSet fileSet);
+
+    /**
+     * Returns true if the inputs and outputs are unchanged since the fingerprint was last saved
+     */
+    boolean isUpToDate();
+
+    /**
+     * Saves the fingerprint. This is called automatically by the core when a target completes successfully,
+     * although it may be called earlier if required.
+     */
+    void save();
+}
@@ -43,11 +43,10 @@ import java.util.Map;
  * java primitives, collections and Ant classes). The second uses serialise and deserialise and assumes you are using
  * a class that is defined within your plugin.
  * <br>
- * Currently, access to the plugin state is single-threaded. However, in the future targets
- * may be run in parallel. In particular, there are plans to run multiple sub-modules in parallel
- * for multi-project builds. In this case it will become important to serialise access to the
- * parent project's plugin state. Therefore, if you are performing multiple operations you should
- * do so within an synchronized block with a lock. e.g. within a plugin
+ * Targets may be run in parallel if the project sets <tt>q.target.threads</tt>, and there are plans to
+ * run multiple sub-modules in parallel for multi-project builds. Each method is thread-safe, but if you
+ * are performing multiple operations you should do so within an synchronized block with a lock.
+ * e.g. within a plugin
  * <pre>
  * PluginState state = getResources().getPluginState();
  * String key = "someKey";
@@ -111,4 +111,10 @@ public interface Resources {
      * Returns the logger that should be used for logging messages to the console
      */
     Logger getLogger();
+
+    /**
+     * Returns the fingerprint of the currently executing target, allowing the target to be skipped if its inputs
+     * and outputs are unchanged since it last executed successfully
+     */
+    Fingerprint getFingerprint();
 }
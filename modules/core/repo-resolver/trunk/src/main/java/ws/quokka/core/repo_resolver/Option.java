@@ -0,0 +1,153 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_resolver;
+
+import ws.quokka.core.bootstrap_util.Assert;
+import ws.quokka.core.repo_spi.RepoArtifactId;
+import ws.quokka.core.util.Strings;
+import ws.quokka.core.version.Version;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Option is a compiled dependency option of the form <code>[-][group:]name[@version][(options)]</code>.
+ * Options are immutable and form a tree, with any nested options compiled as children. Option strings
+ * are compiled once and cached, as the same strings are encountered on every resolution.
+ */
+class Option {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final Map CACHE = new HashMap(); // String -> List of Options
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private String text;
+    private boolean exclusion;
+    private String group;
+    private String name;
+    private Version version;
+    private List children;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    private Option(String text) {
+        this.text = text;
+
+        String message = "Invalid option format: valid format is [-][group][:]<name>[@version]: options=" + text;
+
+        // Strip the leading '-' if this is an exclusion
+        exclusion = text.startsWith("-");
+
+        String stripped = exclusion ? text.substring(1) : text;
+        String[] groupName = Strings.trim(Strings.split(Strings.split(stripped, "(")[0], RepoArtifactId.ID_SEPARATOR));
+        Assert.isTrue((groupName.length == 1) || (groupName.length == 2), message);
+
+        name = (groupName.length == 1) ? groupName[0] : groupName[1];
+        group = (groupName.length == 1) ? null : groupName[0];
+
+        String[] nameVersion = Strings.split(name, "@");
+        Assert.isTrue((nameVersion.length == 1) || (nameVersion.length == 2), message);
+
+        if (nameVersion.length == 2) {
+            name = nameVersion[0];
+            version = new Version(nameVersion[1]);
+        }
+
+        int index = text.indexOf('(');
+        children = (index == -1) ? Collections.EMPTY_LIST : parse(text.substring(index + 1, text.lastIndexOf(')')));
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the compiled top level options within the string given, e.g. "a(b,c),-d" returns options for a and -d
+     */
+    public static List parse(String options) {
+        synchronized (CACHE) {
+            List parsed = (List)CACHE.get(options);
+
+            if (parsed != null) {
+                return parsed;
+            }
+        }
+
+        List parsed = new ArrayList();
+        String[] split = Strings.splitTopLevel(options, '(', ')', ',');
+
+        for (int i = 0; i < split.length; i++) {
+            parsed.add(new Option(split[i].trim()));
+        }
+
+        parsed = Collections.unmodifiableList(parsed);
+
+        synchronized (CACHE) {
+            CACHE.put(options, parsed);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Returns true if the dependency matching this option should be excluded
+     */
+    public boolean isExclusion() {
+        return exclusion;
+    }
+
+    /**
+     * Returns the group of the dependency, or null if it should be matched by name alone
+     */
+    public String getGroup() {
+        return group;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the version the matching dependency should be overridden to, or null if it should not be overridden
+     */
+    public Version getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the options to apply to the dependencies of the matching dependency
+     */
+    public List getChildren() {
+        return children;
+    }
+
+    public boolean equals(Object o) {
+        return (this == o) || ((o instanceof Option) && text.equals(((Option)o).text));
+    }
+
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    public String toString() {
+        return text;
+    }
+}
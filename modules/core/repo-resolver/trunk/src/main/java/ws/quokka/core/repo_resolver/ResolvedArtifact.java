@@ -0,0 +1,54 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_resolver;
+
+import ws.quokka.core.repo_spi.RepoArtifact;
+import ws.quokka.core.repo_spi.RepoArtifactId;
+import ws.quokka.core.util.AnnotatedObject;
+
+
+/**
+ * ResolvedArtifact is a view of an artifact within a {@link ResolvedPath}. Artifacts are shared
+ * between paths (and are generally cached by the repository), so they are never modified during
+ * resolution. Instead, anything that depends upon the context the artifact was resolved in, such
+ * as the artifact that declared it, is stored in the annotations of the view.
+ */
+public class ResolvedArtifact extends AnnotatedObject {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private RepoArtifact artifact;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public ResolvedArtifact(RepoArtifact artifact) {
+        this.artifact = artifact;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the underlying artifact, which is shared and must not be modified
+     */
+    public RepoArtifact getArtifact() {
+        return artifact;
+    }
+
+    public RepoArtifactId getId() {
+        return artifact.getId();
+    }
+}
@@ -29,12 +29,16 @@ import java.util.List;
 /**
  * ResolvedPath contains a path resolved via {@link Resolver}. Its main purpose is to store the
  * id along with the resolved path so that meaning diagnostic errors can be displayed in the case of conflicts
+ * <p/>
+ * Each artifact in the path is also available as a {@link ResolvedArtifact}, a view that holds information
+ * specific to this path, such as the artifact that declared it.
  */
 public class ResolvedPath {
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private String id;
     private List artifacts = new ArrayList();
+    private List resolvedArtifacts = new ArrayList();
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
 
@@ -48,7 +52,10 @@ public class ResolvedPath {
      */
     public ResolvedPath(String id, List artifacts) {
         this.id = id;
-        this.artifacts = artifacts;
+
+        for (Iterator i = artifacts.iterator(); i.hasNext();) {
+            add((RepoArtifact)i.next());
+        }
     }
 
     //~ Methods --------------------------------------------------------------------------------------------------------
@@ -65,7 +72,15 @@ public class ResolvedPath {
      * Add an artifact to the path
      */
     public void add(RepoArtifact artifact) {
-        artifacts.add(artifact);
+        add(new ResolvedArtifact(artifact));
+    }
+
+    /**
+     * Add an artifact to the path, retaining the information specific to its resolution
+     */
+    public void add(ResolvedArtifact artifact) {
+        artifacts.add(artifact.getArtifact());
+        resolvedArtifacts.add(artifact);
     }
 
     /**
@@ -75,6 +90,13 @@ public class ResolvedPath {
         return Collections.unmodifiableList(artifacts);
     }
 
+    /**
+     * Returns a read-only list of the views of the artifacts in the path, in the same order as {@link #getArtifacts()}
+     */
+    public List getResolvedArtifacts() {
+        return Collections.unmodifiableList(resolvedArtifacts);
+    }
+
     /**
      * Returns true if the path contains an artifact with the id given
      */
@@ -23,7 +23,6 @@ import ws.quokka.core.bootstrap_util.Assert;
 import ws.quokka.core.bootstrap_util.Logger;
 import ws.quokka.core.repo_spi.*;
 import ws.quokka.core.util.Annotations;
-import ws.quokka.core.util.Strings;
 import ws.quokka.core.version.Version;
 
 import java.util.*;
@@ -36,15 +35,17 @@ import java.util.*;
 public class Resolver {
     //~ Static fields/initializers -------------------------------------------------------------------------------------
 
-    private static final String DECLARED_BY = "declaredBy";
+    public static final String DECLARED_BY = "declaredBy";
+    public static final String CONFLICT = "conflict";
     private static final String PARENT = "parent";
-    private static final String CONFLICT = "conflict";
     private static final String OVERRIDDEN = "overridden";
 
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private Repository repository;
     private Logger log;
+    private Map subtrees = Collections.synchronizedMap(new HashMap()); // SubtreeKey -> Subtree
+    private TaskPool pool;
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
 
@@ -60,6 +61,15 @@ public class Resolver {
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
+    /**
+     * Sets the number of threads used to resolve paths. If greater than 1, the subtrees of sibling
+     * dependencies are resolved in parallel, so that fetching artifacts from slow repositories overlaps.
+     * The resolved paths are identical to those resolved sequentially. The repository must be thread safe.
+     */
+    public void setThreads(int threads) {
+        pool = (threads > 1) ? new TaskPool("resolver", threads) : null;
+    }
+
     /**
      * Resolves a path for a given artifact, retrieving all transitive dependencies as per
      * the defined path specifications and overrides.
@@ -79,16 +89,26 @@ public class Resolver {
         ResolvedPath path = new ResolvedPath();
         path.setId("Path: " + pathId); // Note: this may be overridden by something more contextually relevant
 
-        for (Iterator i = artifact.getDependencies().iterator(); i.hasNext();) {
-            RepoDependency dependency = (RepoDependency)i.next();
-            List overrides = filterOverrides(pathId, artifact.getOverrides());
-            dependency = applyOverrides(dependency, overrides, appliedOverrides);
+        Overrides overrides = new Overrides(filterOverrides(pathId, artifact.getOverrides()));
+        Ancestors ancestors = new Ancestors(pool != null);
+        Forks forks = (pool == null) ? null : new Forks();
+
+        try {
+            for (Iterator i = artifact.getDependencies().iterator(); i.hasNext();) {
+                RepoDependency dependency = (RepoDependency)i.next();
+                dependency = applyOverrides(dependency, overrides, appliedOverrides);
 
-            Set pathSpecs = dependency.getPathSpecsTo(pathId);
+                Set pathSpecs = dependency.getPathSpecsTo(pathId);
 
-            for (Iterator j = pathSpecs.iterator(); j.hasNext();) {
-                RepoPathSpec pathSpec = (RepoPathSpec)j.next();
-                resolvePath(path, pathSpec, new HashSet(), false, null, overrides, appliedOverrides, retrieveArtifacts);
+                for (Iterator j = pathSpecs.iterator(); j.hasNext();) {
+                    RepoPathSpec pathSpec = (RepoPathSpec)j.next();
+                    descend(forks, path, pathSpec, new HashSet(), false, null, overrides, ancestors, appliedOverrides,
+                        retrieveArtifacts);
+                }
+            }
+        } finally {
+            if (forks != null) {
+                forks.join(path, appliedOverrides); // Any failure in an earlier subtree takes precedence
             }
         }
 
@@ -113,7 +133,7 @@ public class Resolver {
     }
 
     /**
-     * Convenience method - calls {@link #resolvePath(ResolvedPath, ws.quokka.core.repo_spi.RepoPathSpec, java.util.Set, boolean, ws.quokka.core.repo_spi.RepoArtifactId, java.util.List, java.util.List, boolean)}
+     * Convenience method - calls {@link #resolvePath(String, ws.quokka.core.repo_spi.RepoArtifact, java.util.List, boolean, boolean)}
      * with permitStubs = false and retrieveArtifacts = true.
      */
     public ResolvedPath resolvePath(String pathId, RepoArtifact artifact) {
@@ -140,71 +160,67 @@ public class Resolver {
         return filtered;
     }
 
-    private RepoDependency applyOverrides(RepoDependency dependency, List overrides, List appliedOverrides) {
-        for (Iterator i = overrides.iterator(); i.hasNext();) {
-            RepoOverride override = (RepoOverride)i.next();
-
-            if (override.matches(dependency.getId())) {
-                RepoDependency overridden = new RepoDependency();
-                overridden.setId(dependency.getId());
-
-                appliedOverrides.add(override);
-
-                // Override version if specified
-                if (override.getWithVersion() != null) {
-                    overridden.setId(override(dependency.getId(), override.getWithVersion()));
-
-                    if (log.isDebugEnabled()) {
-                        log.debug("Applied " + override
-                            + ((override.getLocator() == null) ? "" : (" from " + override.getLocator())));
-                    }
-                }
+    private RepoDependency applyOverrides(RepoDependency dependency, Overrides overrides, List appliedOverrides) {
+        RepoOverride override = overrides.getFirstMatch(dependency.getId()); // First matching override wins
 
-                // Copy and possibly override path specifications
-                for (Iterator j = dependency.getPathSpecs().iterator(); j.hasNext();) {
-                    RepoPathSpec pathSpec = (RepoPathSpec)j.next();
-                    RepoPathSpec overiddenPathSpec = override.getOverridden(pathSpec);
-
-                    if (overiddenPathSpec != null) {
-                        overiddenPathSpec.setTo(pathSpec.getTo());
-
-                        // Use the existing descend and mandatory values if none were explicitly defined
-                        if (overiddenPathSpec.isDescend() == null) {
-                            overiddenPathSpec.setDescend(pathSpec.isDescend());
-                        }
+        if (override == null) {
+            return dependency;
+        }
 
-                        if (overiddenPathSpec.isMandatory() == null) {
-                            overiddenPathSpec.setMandatory(pathSpec.isMandatory());
-                        }
+        RepoDependency overridden = new RepoDependency();
+        overridden.setId(dependency.getId());
 
-                        log.verbose("Overriding path spec for dependency=" + dependency.toShortString() + " from '"
-                            + pathSpec.toShortString() + "' to '" + overiddenPathSpec.toShortString() + "'");
+        appliedOverrides.add(override);
 
-                        if (log.isDebugEnabled()) {
-                            log.debug("Applied " + override
-                                + ((override.getLocator() == null) ? "" : (" from " + override.getLocator())));
-                        }
+        // Override version if specified
+        if (override.getWithVersion() != null) {
+            overridden.setId(override(dependency.getId(), override.getWithVersion()));
 
-                        pathSpec = overiddenPathSpec;
-                    }
+            if (log.isDebugEnabled()) {
+                log.debug("Applied " + override
+                    + ((override.getLocator() == null) ? "" : (" from " + override.getLocator())));
+            }
+        }
 
-                    RepoPathSpec copy = new RepoPathSpec(pathSpec.getFrom(), pathSpec.getTo(), pathSpec.getOptions(),
-                            pathSpec.isDescend(), pathSpec.isMandatory());
-                    overridden.addPathSpec(copy);
+        // Copy and possibly override path specifications
+        for (Iterator i = dependency.getPathSpecs().iterator(); i.hasNext();) {
+            RepoPathSpec pathSpec = (RepoPathSpec)i.next();
+            RepoPathSpec overiddenPathSpec = override.getOverridden(pathSpec);
+
+            if (overiddenPathSpec != null) {
+                // Use the existing descend and mandatory values if none were explicitly defined.
+                // Note: the override itself is left untouched as it is shared by all resolutions
+                overiddenPathSpec = new RepoPathSpec(overiddenPathSpec.getFrom(), pathSpec.getTo(),
+                        overiddenPathSpec.getOptions(),
+                        (overiddenPathSpec.isDescend() == null) ? pathSpec.isDescend()
+                                                                : overiddenPathSpec.isDescend(),
+                        (overiddenPathSpec.isMandatory() == null) ? pathSpec.isMandatory()
+                                                                  : overiddenPathSpec.isMandatory());
+
+                log.verbose("Overriding path spec for dependency=" + dependency.toShortString() + " from '"
+                    + pathSpec.toShortString() + "' to '" + overiddenPathSpec.toShortString() + "'");
+
+                if (log.isDebugEnabled()) {
+                    log.debug("Applied " + override
+                        + ((override.getLocator() == null) ? "" : (" from " + override.getLocator())));
                 }
 
-                return overridden; // First matching override wins
+                pathSpec = overiddenPathSpec;
             }
+
+            RepoPathSpec copy = new RepoPathSpec(pathSpec.getFrom(), pathSpec.getTo(), pathSpec.getOptions(),
+                    pathSpec.isDescend(), pathSpec.isMandatory());
+            overridden.addPathSpec(copy);
         }
 
-        return dependency;
+        return overridden;
     }
 
     private boolean areExclusions(Set options) {
         for (Iterator i = options.iterator(); i.hasNext();) {
-            String option = (String)i.next();
+            Option option = (Option)i.next();
 
-            if (!isExclusion(option)) {
+            if (!option.isExclusion()) {
                 return false;
             }
         }
@@ -212,183 +228,223 @@ public class Resolver {
         return true;
     }
 
-    private boolean isExclusion(String option) {
-        return option.trim().startsWith("-");
-    }
-
     private void resolvePath(ResolvedPath path, RepoPathSpec pathSpec, Set options, boolean force,
-        RepoArtifactId declaredBy, List overrides, List appliedOverrides, boolean retrieveArtifacts) {
-        // TODO: do proper cycle detection
-        if (path.getArtifacts().size() > 1000) {
-            StringBuffer sb = new StringBuffer("Possible cycle detected!\n");
-
-            for (Iterator i = path.getArtifacts().iterator(); i.hasNext();) {
-                RepoArtifact artifact = (RepoArtifact)i.next();
-                sb.append(artifact.getId().toShortString()).append("\n");
-            }
-
-            log.error(sb.toString());
-            throw new BuildException("Dependency cycle detected. Quokka does not support circular dependencies");
-        }
-
+        ResolvedArtifact declaredBy, Overrides overrides, Ancestors ancestors, List appliedOverrides,
+        boolean retrieveArtifacts) {
         if (pathSpec.getOptions() != null) {
-            options.add(pathSpec.getOptions());
+            options.addAll(Option.parse(pathSpec.getOptions()));
         }
 
         if (((options.size() == 0) || areExclusions(options)) && !pathSpec.isMandatory().booleanValue() && !force) {
             return; // The artifact is not mandatory and has not been added as an option
         }
 
+        // Reuse the subtree if it has already been resolved in the same context
+        SubtreeKey key = new SubtreeKey(pathSpec, options, force, overrides, retrieveArtifacts);
+        Subtree subtree = (Subtree)subtrees.get(key);
+
+        if (subtree != null) {
+            subtree.addTo(path, declaredBy, ancestors, appliedOverrides);
+
+            return;
+        }
+
+        int pathStart = path.getArtifacts().size();
+        int overridesStart = appliedOverrides.size();
+
         // Add the artifact to the path
         RepoArtifact artifact = getArtifact(pathSpec.getDependency().getId(), retrieveArtifacts);
-        artifact.getId().getAnnotations().put(DECLARED_BY, declaredBy);
-
-//        System.out.println("Adding: " + artifact.getId().toShortString() + " declared by " + (declaredBy == null ? "" : declaredBy.toShortString()));
-        path.add(artifact);
+        ResolvedArtifact resolved = new ResolvedArtifact(artifact);
+        setDeclaredBy(resolved, declaredBy);
+        path.add(resolved);
 
         if (((options.size() == 0) || areExclusions(options)) && !pathSpec.isDescend().booleanValue()) {
+            subtrees.put(key, new Subtree(path, pathStart, ancestors, appliedOverrides, overridesStart));
+
             return; // Not required to descend and no options to force it
         }
 
-        // Process dependencies
-        Set topLevelOptions = splitTopLevelOptions(options);
+        // Process dependencies, failing if the artifact is already being descended into
+        Ancestor ancestor = new Ancestor(artifact.getId(), pathSpec.getFrom());
+        ancestors.push(ancestor, resolved);
 
-        for (Iterator i = artifact.getDependencies().iterator(); i.hasNext();) {
-            RepoDependency dependency = (RepoDependency)i.next();
-            List combinedOverrides = new ArrayList(overrides);
-            combinedOverrides.addAll(filterOverrides(pathSpec.getFrom(), artifact.getOverrides()));
-            dependency = applyOverrides(dependency, combinedOverrides, appliedOverrides);
+        Map unmatched = indexByName(options);
+        NameIndex names = new NameIndex(artifact, pathSpec.getFrom());
+        Overrides combinedOverrides = overrides.combine(pathSpec.getFrom(), artifact);
+        Forks forks = (pool == null) ? null : new Forks();
 
-            for (Iterator j = dependency.getPathSpecsTo(pathSpec.getFrom()).iterator(); j.hasNext();) {
-                RepoPathSpec dependencyPathSpec = (RepoPathSpec)j.next();
+        try {
+            for (Iterator i = artifact.getDependencies().iterator(); i.hasNext();) {
+                RepoDependency dependency = (RepoDependency)i.next();
+                dependency = applyOverrides(dependency, combinedOverrides, appliedOverrides);
 
-                // This dependency is path of the path
-                Set matchingOptions = new HashSet();
-                Version override = findMatchingOptions(artifact, dependencyPathSpec, topLevelOptions, matchingOptions);
+                RepoArtifactId dependencyId = dependency.getId();
 
-                // Handle explicit overrides
-                if (override != null) {
-                    if (dependency.getId().getAnnotations().get(OVERRIDDEN) == null) {
-                        dependency.setId(override(dependency.getId(), override));
-                    } else {
-                        log.verbose("Ignoring override as global override has already been applied for "
-                            + dependency.getId().toShortString());
+                for (Iterator j = dependency.getPathSpecsTo(pathSpec.getFrom()).iterator(); j.hasNext();) {
+                    RepoPathSpec dependencyPathSpec = (RepoPathSpec)j.next();
+
+                    // This dependency is path of the path
+                    Set matchingOptions = new HashSet();
+                    Version override = findMatchingOptions(artifact, dependencyPathSpec, unmatched, names,
+                            matchingOptions);
+
+                    // Handle explicit overrides
+                    if (override != null) {
+                        if (dependencyId.getAnnotations().get(OVERRIDDEN) == null) {
+                            dependencyId = override(dependencyId, override);
+                        } else {
+                            log.verbose("Ignoring override as global override has already been applied for "
+                                + dependencyId.toShortString());
+                        }
                     }
-                }
 
-                // Descend if the path spec says to and the options are not all exclusions,
-                // Or if the path spec says not to, but there are options that are not all exclusions
-                if ((
-                            pathSpec.isDescend().booleanValue()
-                            && ((matchingOptions.size() == 0) || !areExclusions(matchingOptions))
-                        )
-                        || (
-                            !pathSpec.isDescend().booleanValue() && (matchingOptions.size() > 0)
-                            && !areExclusions(matchingOptions)
-                        )) {
-                    resolvePath(path, dependencyPathSpec, nextLevelOptions(matchingOptions),
-                        matchingOptions.size() > 0, artifact.getId(), combinedOverrides, appliedOverrides,
-                        retrieveArtifacts);
+                    if (dependencyId != dependency.getId()) {
+                        dependencyPathSpec = copy(dependencyPathSpec, dependencyId);
+                    }
+
+                    // Descend if the path spec says to and the options are not all exclusions,
+                    // Or if the path spec says not to, but there are options that are not all exclusions
+                    if ((
+                                pathSpec.isDescend().booleanValue()
+                                && ((matchingOptions.size() == 0) || !areExclusions(matchingOptions))
+                            )
+                            || (
+                                !pathSpec.isDescend().booleanValue() && (matchingOptions.size() > 0)
+                                && !areExclusions(matchingOptions)
+                            )) {
+                        descend(forks, path, dependencyPathSpec, nextLevelOptions(matchingOptions),
+                            matchingOptions.size() > 0, resolved, combinedOverrides, ancestors,
+                            appliedOverrides, retrieveArtifacts);
+                    }
                 }
             }
+        } finally {
+            if (forks != null) {
+                forks.join(path, appliedOverrides); // Any failure in an earlier subtree takes precedence
+            }
         }
 
-        Assert.isTrue(topLevelOptions.size() == 0, pathSpec.getLocator(),
-            "Options do not match dependencies of artifact: artifact=" + artifact.getId() + ", options="
-            + topLevelOptions + ", dependencies=" + artifact.getDependencies());
-    }
-
-    private RepoArtifact getArtifact(RepoArtifactId artifactId, boolean retrieveArtifact) {
-        return (RepoArtifact)repository.resolve(artifactId, retrieveArtifact).clone(); // Clone to allow additional annotations to be added within context
-    }
+        if (unmatched.size() != 0) {
+            Set unmatchedOptions = new HashSet();
 
-    private Set splitTopLevelOptions(Set options) {
-        Set topLevelOptions = new HashSet();
+            for (Iterator i = unmatched.values().iterator(); i.hasNext();) {
+                unmatchedOptions.addAll((List)i.next());
+            }
 
-        for (Iterator i = options.iterator(); i.hasNext();) {
-            String option = (String)i.next();
-            String[] split = Strings.splitTopLevel(option, '(', ')', ',');
-            topLevelOptions.addAll(Arrays.asList(split));
+            Assert.isTrue(false, pathSpec.getLocator(),
+                "Options do not match dependencies of artifact: artifact=" + artifact.getId() + ", options="
+                + unmatchedOptions + ", dependencies=" + artifact.getDependencies());
         }
 
-        return topLevelOptions;
+        ancestors.pop(ancestor);
+        subtrees.put(key, new Subtree(path, pathStart, ancestors, appliedOverrides, overridesStart));
     }
 
-    private Version findMatchingOptions(RepoArtifact artifact, RepoPathSpec pathSpec, Set options, Set matching) {
-        //        System.out.println("    matching options: options=" + options + ", artifact=" + artifact.getId() + ", pathSpec=" + pathSpec);
-        Version override = null;
+    /**
+     * Resolves the subtree for the path spec given, either immediately or by forking a task if resolving in parallel
+     */
+    private void descend(Forks forks, ResolvedPath path, RepoPathSpec pathSpec, Set options, boolean force,
+        ResolvedArtifact declaredBy, Overrides overrides, Ancestors ancestors, List appliedOverrides,
+        boolean retrieveArtifacts) {
+        if (forks == null) {
+            resolvePath(path, pathSpec, options, force, declaredBy, overrides, ancestors, appliedOverrides,
+                retrieveArtifacts);
+        } else {
+            forks.fork(new SubtreeTask(pathSpec, options, force, declaredBy, overrides, ancestors.fork(),
+                    retrieveArtifacts), appliedOverrides);
+        }
+    }
 
-        for (Iterator i = options.iterator(); i.hasNext();) {
-            String option = (String)i.next();
+    /**
+     * Returns a copy of the path specification belonging to a dependency with the id given. The
+     * dependency is copied rather than updated as it belongs to an artifact from the repository and
+     * is therefore shared between resolutions.
+     */
+    private RepoPathSpec copy(RepoPathSpec pathSpec, RepoArtifactId id) {
+        RepoDependency dependency = new RepoDependency();
+        dependency.setId(id);
+        dependency.setLocator(pathSpec.getDependency().getLocator());
 
-            // Find matching artifact dependency
-            String message = "Invalid option format: valid format is [-][group][:]<name>[@version]: options=" + option;
+        RepoPathSpec copy = new RepoPathSpec(pathSpec.getFrom(), pathSpec.getTo(), pathSpec.getOptions(),
+                pathSpec.isDescend(), pathSpec.isMandatory());
+        copy.setLocator(pathSpec.getLocator());
+        dependency.addPathSpec(copy);
 
-            // Strip the leading '-' if this is an exclusion
-            String stripped = isExclusion(option) ? option.trim().substring(1) : option;
+        return copy;
+    }
 
-            String[] groupName = Strings.trim(Strings.split(Strings.split(stripped, "(")[0], RepoArtifactId.ID_SEPARATOR));
-            Assert.isTrue((groupName.length == 1) || (groupName.length == 2), message);
+    /**
+     * Returns the artifact from the repository. It is not copied as contextual information is added to
+     * the {@link ResolvedArtifact} view of it instead.
+     */
+    private RepoArtifact getArtifact(RepoArtifactId artifactId, boolean retrieveArtifact) {
+        return repository.resolve(artifactId, retrieveArtifact);
+    }
 
-            String name = (groupName.length == 1) ? groupName[0] : groupName[1];
-            String group = (groupName.length == 1) ? null : groupName[0];
-            String[] nameVersion = Strings.split(name, "@");
-            Assert.isTrue((nameVersion.length == 1) || (nameVersion.length == 2), message);
+    /**
+     * Indexes the options given by name, so that each dependency need only be compared with options of the same name
+     */
+    private Map indexByName(Set options) {
+        Map index = new HashMap();
 
-            if (nameVersion.length == 2) {
-                name = nameVersion[0];
+        for (Iterator i = options.iterator(); i.hasNext();) {
+            Option option = (Option)i.next();
+            List named = (List)index.get(option.getName());
 
-                Version version = new Version(nameVersion[1]);
-                Assert.isTrue((override == null) || override.equals(version),
-                    "Multiple overrides are specified for " + artifact.getId().toShortString()
-                    + " that are inconsistent: " + version + " and " + override);
-                override = version;
+            if (named == null) {
+                named = new ArrayList();
+                index.put(option.getName(), named);
             }
 
-            if (matches(group, name, artifact, pathSpec)) {
-                i.remove(); // To see if any remain unmatched later
-
-                //                System.out.println("Matched " + dependency + " to " + option);
-                matching.add(option);
-            }
+            named.add(option);
         }
 
-        return override;
+        return index;
     }
 
-    private boolean matches(String group, String name, RepoArtifact artifact, RepoPathSpec pathSpec) {
+    /**
+     * Moves the unmatched options that match the dependency to the matching set, returning any version override
+     * specified by them
+     */
+    private Version findMatchingOptions(RepoArtifact artifact, RepoPathSpec pathSpec, Map unmatched, NameIndex names,
+        Set matching) {
         RepoArtifactId id = pathSpec.getDependency().getId();
+        List named = (List)unmatched.get(id.getName());
 
-        if (group != null) {
-            return id.getGroup().equals(group) && id.getName().equals(name); // Exact match
-        }
-
-        if (!id.getName().equals(name)) {
-            return false; // names don't match
+        if (named == null) {
+            return null;
         }
 
-        // Make sure matching by name is unambiguos for all dependencies in the path
-        int count = 0;
+        Version override = null;
 
-        for (Iterator i = artifact.getDependencies().iterator(); i.hasNext();) {
-            RepoDependency dependency = (RepoDependency)i.next();
+        for (Iterator i = named.iterator(); i.hasNext();) {
+            Option option = (Option)i.next();
 
-            for (Iterator j = dependency.getPathSpecs().iterator(); j.hasNext();) {
-                RepoPathSpec dependencyPathSpec = (RepoPathSpec)j.next();
+            if (option.getGroup() == null) {
+                // Make sure matching by name is unambiguous for all dependencies in the path
+                Assert.isTrue(names.count(id.getName()) <= 1, pathSpec.getLocator(),
+                    "Option does not uniquely identify the dependency. Specify the group as well: name="
+                    + option.getName());
+            } else if (!option.getGroup().equals(id.getGroup())) {
+                continue;
+            }
 
-                if (dependencyPathSpec.getTo().equals(pathSpec.getTo())) {
-                    // This dependency is path of the path
-                    if (id.getName().equals(dependencyPathSpec.getDependency().getId().getName())) {
-                        count++;
-                    }
+            i.remove(); // To see if any remain unmatched later
+            matching.add(option);
 
-                    Assert.isTrue(count <= 1, pathSpec.getLocator(),
-                        "Option does not uniquely identify the dependency. Specify the group as well: name=" + name);
-                }
+            if (option.getVersion() != null) {
+                Assert.isTrue((override == null) || override.equals(option.getVersion()),
+                    "Multiple overrides are specified for " + artifact.getId().toShortString()
+                    + " that are inconsistent: " + option.getVersion() + " and " + override);
+                override = option.getVersion();
             }
         }
 
-        return true;
+        if (named.size() == 0) {
+            unmatched.remove(id.getName());
+        }
+
+        return override;
     }
 
     private RepoArtifactId override(RepoArtifactId id, Version version) {
@@ -405,11 +461,7 @@ public class Resolver {
         Set nextLevel = new HashSet();
 
         for (Iterator i = options.iterator(); i.hasNext();) {
-            String option = (String)i.next();
-
-            if (option.indexOf("(") > 0) {
-                nextLevel.add(option.substring(option.indexOf('(') + 1, option.lastIndexOf(')')));
-            }
+            nextLevel.addAll(((Option)i.next()).getChildren());
         }
 
         return nextLevel;
@@ -419,16 +471,28 @@ public class Resolver {
      * Returns a merged path from the collection of paths given, removing duplicates and ensuring
      * there are no conflicts. If a conflict occurs, a formatted tree showing the exacts paths of
      * any conflicts is contained in the exception message.
-     *
-     * TODO: rewrite this mess to avoid so many temporary maps and lists
+     * <p/>
+     * Each artifact is registered in a single index under its unversioned id, along with any ids
+     * it conflicts with (see {@link #register(Map, ws.quokka.core.repo_spi.RepoArtifact)}). An entry
+     * with more than one version is a conflict. Entries sharing an artifact are grouped together so
+     * that related conflicts are reported with the same number.
+     * <p/>
+     * The paths given are left untouched, as callers may share them between threads. Conflicts are marked
+     * on copies of the views instead.
      */
     public ResolvedPath merge(Collection paths) {
-        // Build a map of all artifacts based on unversioned ids
         StringBuffer id = new StringBuffer("Merged: [");
-        Map possibleConflicts = new HashMap();
-        Map merged = new HashMap();
+        Map index = new LinkedHashMap(); // ConflictKey -> ConflictEntry
+        Map merged = new LinkedHashMap(); // RepoArtifactId -> RepoArtifact
+        List copies = new ArrayList();
+        Map views = new IdentityHashMap(); // ResolvedArtifact -> copy of ResolvedArtifact
+        boolean conflict = false;
 
         for (Iterator i = paths.iterator(); i.hasNext();) {
+            copies.add(copy((ResolvedPath)i.next(), views));
+        }
+
+        for (Iterator i = copies.iterator(); i.hasNext();) {
             ResolvedPath path = (ResolvedPath)i.next();
             id.append(path.getId());
 
@@ -436,75 +500,132 @@ public class Resolver {
                 id.append(", ");
             }
 
-            for (Iterator j = path.getArtifacts().iterator(); j.hasNext();) {
-                RepoArtifact artifact = (RepoArtifact)j.next();
-                setConflict(artifact.getId(), null); // Clear conflict annotation
-                merged.put(artifact.getId(), artifact); // All artifacts with same id are equivalent
-
-                List conflictIds = toConflictIds(artifact);
+            for (Iterator j = path.getResolvedArtifacts().iterator(); j.hasNext();) {
+                ResolvedArtifact artifact = (ResolvedArtifact)j.next();
+                setConflict(artifact, null); // Clear any conflict annotation copied from a previous merge
+                merged.put(artifact.getId(), artifact.getArtifact()); // All artifacts with same id are equivalent
+                conflict |= register(index, artifact);
+            }
+        }
 
-                for (Iterator k = conflictIds.iterator(); k.hasNext();) {
-                    RepoArtifactId conflictId = (RepoArtifactId)k.next();
-                    RepoArtifactId unversioned = new RepoArtifactId(conflictId.getGroup(), conflictId.getName(),
-                            conflictId.getType(), (Version)null);
+        id.append("]");
 
-                    Map artifacts = (Map)possibleConflicts.get(unversioned);
+        if (conflict) {
+            // Number the groups in the order they were first encountered and mark them
+            int conflictIndex = 1;
 
-                    if (artifacts == null) {
-                        artifacts = new HashMap();
-                        possibleConflicts.put(unversioned, artifacts);
-                    }
+            for (Iterator i = index.values().iterator(); i.hasNext();) {
+                ConflictEntry entry = (ConflictEntry)i.next();
 
-                    List artifactsForVersion = (List)artifacts.get(conflictId.getVersion());
+                if (entry.isConflicted()) {
+                    ConflictEntry group = entry.getGroup();
 
-                    if (artifactsForVersion == null) {
-                        artifactsForVersion = new ArrayList();
-                        artifacts.put(conflictId.getVersion(), artifactsForVersion);
+                    if (group.conflictIndex == 0) {
+                        group.conflictIndex = conflictIndex++;
                     }
 
-                    artifactsForVersion.add(artifact);
+                    markConflicted(entry.artifacts, group.conflictIndex);
                 }
             }
-        }
 
-        id.append("]");
+            throw new BuildException("Conflicts have occurred between the following artifacts:\n"
+                + formatPaths(copies, true));
+        }
 
-        boolean conflict = false;
         ResolvedPath mergedPath = new ResolvedPath();
         mergedPath.setId(id.toString());
 
-        // Check for conflicts and mark them
-        int conflictIndex = 1;
+        for (Iterator i = merged.values().iterator(); i.hasNext();) {
+            mergedPath.add((RepoArtifact)i.next()); // Any artifact will do ... all are equal. Added without declaredBy
+        }
 
-        for (Iterator i = possibleConflicts.values().iterator(); i.hasNext();) {
-            Map artifacts = (Map)i.next();
+        return mergedPath;
+    }
 
-            if (artifacts.size() != 1) {
-                // Conflict detected.
-                conflict = true;
+    /**
+     * Returns a copy of the path with new views of its artifacts. The views that declared them are copied too,
+     * so that the copies can be annotated without affecting the original path.
+     */
+    private ResolvedPath copy(ResolvedPath path, Map views) {
+        ResolvedPath copy = new ResolvedPath();
+        copy.setId(path.getId());
 
-                for (Iterator j = artifacts.values().iterator(); j.hasNext();) {
-                    List artifactsForVersion = (List)j.next();
-                    markConflicted(artifactsForVersion, conflictIndex);
-                }
+        for (Iterator i = path.getResolvedArtifacts().iterator(); i.hasNext();) {
+            copy.add(copy((ResolvedArtifact)i.next(), views));
+        }
+
+        return copy;
+    }
+
+    private ResolvedArtifact copy(ResolvedArtifact artifact, Map views) {
+        ResolvedArtifact copy = (ResolvedArtifact)views.get(artifact);
 
-                conflictIndex++;
+        if (copy == null) {
+            copy = new ResolvedArtifact(artifact.getArtifact());
+            copy.setAnnotations((Annotations)artifact.getAnnotations().clone());
+            views.put(artifact, copy);
+
+            ResolvedArtifact declaredBy = getDeclaredBy(artifact);
+
+            if (declaredBy != null) {
+                copy.getAnnotations().put(DECLARED_BY, copy(declaredBy, views));
             }
         }
 
-        if (conflict) {
-            throw new BuildException("Conflicts have occurred between the following artifacts:\n"
-                + formatPaths(paths, true));
-        } else {
-            // No conflict
-            for (Iterator i = merged.values().iterator(); i.hasNext();) {
-                RepoArtifact artifact = (RepoArtifact)i.next();
-                mergedPath.add(artifact); // Any artifact will do ... all are equal
-                artifact.getId().getAnnotations().remove(DECLARED_BY); // In case the merged path is merged again or printed
+        return copy;
+    }
+
+    /**
+     * Registers the artifact in the index under its own id and any ids that will produce conflicts if
+     * conflicting artifacts are on the path. Returns true if a conflict has been detected.
+     */
+    private boolean register(Map index, ResolvedArtifact artifact) {
+        RepoArtifactId id = artifact.getId();
+        ConflictEntry entry = getEntry(index, id);
+        boolean conflict = entry.add(artifact, id.getVersion());
+
+        for (Iterator i = artifact.getArtifact().getConflicts().iterator(); i.hasNext();) {
+            RepoConflict repoConflict = (RepoConflict)i.next();
+            RepoArtifactId conflictId = repoConflict.getId();
+            String kind = repoConflict.getKind();
+            Object version;
+
+            if (kind.equals(RepoConflict.BUNDLED) || kind.equals(RepoConflict.RENAMED_RESET)
+                    || kind.equals(RepoConflict.EQUIVALENT)) {
+                // Any version of id named in the conflict must clash
+                // In the case of equivalence, if more than 1 group/name/type is equivalent, this will
+                // also result in a conflict.
+                version = id.getGroup() + "-" + id.getName() + "-" + id.getType() + "-conflict-dummy";
+            } else if (kind.equals(RepoConflict.RENAMED)) {
+                // Same version of the old name is OK, otherwise there's a conflict
+                version = id.getVersion();
+            } else if (kind.equals(RepoConflict.ALIAS)) {
+                // Any other version of the aliased id will lead to a conflict
+                version = conflictId.getVersion();
+            } else {
+                Assert.isTrue(false, repoConflict.getLocator(), "Unknown kind: " + kind);
+
+                return conflict; // Unreachable
             }
 
-            return mergedPath;
+            ConflictEntry conflictEntry = getEntry(index, conflictId);
+            conflict |= conflictEntry.add(artifact, version);
+            conflictEntry.union(entry);
         }
+
+        return conflict;
+    }
+
+    private ConflictEntry getEntry(Map index, RepoArtifactId id) {
+        ConflictKey key = new ConflictKey(id);
+        ConflictEntry entry = (ConflictEntry)index.get(key);
+
+        if (entry == null) {
+            entry = new ConflictEntry();
+            index.put(key, entry);
+        }
+
+        return entry;
     }
 
     /**
@@ -513,33 +634,39 @@ public class Resolver {
      */
     private void markConflicted(List artifacts, int conflictIndex) {
         for (Iterator i = artifacts.iterator(); i.hasNext();) {
-            RepoArtifact artifact = (RepoArtifact)i.next();
-            setConflict(artifact.getId(), Integer.toString(conflictIndex));
+            ResolvedArtifact artifact = (ResolvedArtifact)i.next();
+            setConflict(artifact, Integer.toString(conflictIndex));
 
-            for (RepoArtifactId id = getDeclaredBy(artifact.getId()); id != null; id = getDeclaredBy(id)) {
-                String conflict = getConflict(id);
+            for (ResolvedArtifact parent = getDeclaredBy(artifact); parent != null; parent = getDeclaredBy(parent)) {
+                String conflict = getConflict(parent);
 
                 if (conflict == null) {
-                    setConflict(id, PARENT);
+                    setConflict(parent, PARENT);
                 }
             }
         }
     }
 
-    private void setConflict(RepoArtifactId artifactId, String value) {
+    private void setConflict(ResolvedArtifact artifact, String value) {
         if (value == null) {
-            artifactId.getAnnotations().remove(CONFLICT);
+            artifact.getAnnotations().remove(CONFLICT);
         } else {
-            artifactId.getAnnotations().put(CONFLICT, value);
+            artifact.getAnnotations().put(CONFLICT, value);
         }
     }
 
-    private String getConflict(RepoArtifactId artifactId) {
-        return (String)artifactId.getAnnotations().get(CONFLICT);
+    private String getConflict(ResolvedArtifact artifact) {
+        return (String)artifact.getAnnotations().get(CONFLICT);
     }
 
-    private RepoArtifactId getDeclaredBy(RepoArtifactId artifactId) {
-        return (RepoArtifactId)artifactId.getAnnotations().get(DECLARED_BY);
+    private void setDeclaredBy(ResolvedArtifact artifact, ResolvedArtifact declaredBy) {
+        if (declaredBy != null) {
+            artifact.getAnnotations().put(DECLARED_BY, declaredBy);
+        }
+    }
+
+    private ResolvedArtifact getDeclaredBy(ResolvedArtifact artifact) {
+        return (ResolvedArtifact)artifact.getAnnotations().get(DECLARED_BY);
     }
 
     /**
@@ -566,19 +693,29 @@ public class Resolver {
         StringBuffer sb = new StringBuffer();
 
         Map roots = new TreeMap();
+        Map children = new HashMap(); // RepoArtifactId of parent -> (RepoArtifactId -> ResolvedArtifact)
 
-        for (Iterator i = path.getArtifacts().iterator(); i.hasNext();) {
-            RepoArtifact artifact = (RepoArtifact)i.next();
-            RepoArtifactId declaredBy = getDeclaredBy(artifact.getId());
+        for (Iterator i = path.getResolvedArtifacts().iterator(); i.hasNext();) {
+            ResolvedArtifact artifact = (ResolvedArtifact)i.next();
+            ResolvedArtifact declaredBy = getDeclaredBy(artifact);
 
             if (declaredBy == null) { // Find root nodes
                 roots.put(artifact.getId(), artifact);
+            } else {
+                Map siblings = (Map)children.get(declaredBy.getId());
+
+                if (siblings == null) {
+                    siblings = new TreeMap();
+                    children.put(declaredBy.getId(), siblings);
+                }
+
+                siblings.put(artifact.getId(), artifact);
             }
         }
 
         for (Iterator i = roots.values().iterator(); i.hasNext();) {
-            RepoArtifact artifact = (RepoArtifact)i.next();
-            formatPath(path.getArtifacts(), artifact, onlyConflicted, sb, "    ");
+            ResolvedArtifact artifact = (ResolvedArtifact)i.next();
+            formatPath(children, artifact, onlyConflicted, sb, "    ");
         }
 
         if ((sb.length() != 0) || !onlyConflicted) {
@@ -588,64 +725,551 @@ public class Resolver {
         return "";
     }
 
-    private void formatPath(List artifacts, RepoArtifact artifact, boolean onlyConflicted, StringBuffer sb,
+    private void formatPath(Map children, ResolvedArtifact artifact, boolean onlyConflicted, StringBuffer sb,
         String indent) {
-        Map children = new TreeMap();
-        String conflict = getConflict(artifact.getId());
+        String conflict = getConflict(artifact);
 
         if (!onlyConflicted || (conflict != null)) {
             String conflictId = ((conflict != null) && !conflict.equals(PARENT)) ? (" (conflict " + conflict + ")") : "";
             sb.append(indent).append(artifact.getId().toShortString()).append(conflictId).append("\n");
 
-            for (Iterator i = artifacts.iterator(); i.hasNext();) {
-                RepoArtifact child = (RepoArtifact)i.next();
+            Map siblings = (Map)children.get(artifact.getId());
+
+            if (siblings != null) {
+                for (Iterator i = siblings.values().iterator(); i.hasNext();) {
+                    ResolvedArtifact child = (ResolvedArtifact)i.next();
+                    formatPath(children, child, onlyConflicted, sb, indent + "    ");
+                }
+            }
+        }
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Overrides holds the overrides in effect while resolving a subtree, along with a fingerprint
+     * that identifies them when memoising subtrees. Combinations with the overrides of descendants
+     * are cached as the same artifacts tend to be encountered many times within a path.
+     */
+    private class Overrides {
+        private RepoOverrideIndex index;
+        private String fingerprint;
+        private Map combined = new HashMap();
+
+        public Overrides(List overrides) {
+            this.index = new RepoOverrideIndex(overrides);
+
+            StringBuffer sb = new StringBuffer();
+
+            for (Iterator i = overrides.iterator(); i.hasNext();) {
+                RepoOverride override = (RepoOverride)i.next();
+                sb.append(override.getGroup()).append(':').append(override.getName()).append(':')
+                  .append(override.getType()).append(':').append(override.getVersion()).append('=')
+                  .append(override.getWithVersion());
+
+                Set pathSpecs = new TreeSet(); // Path specs are unordered
+
+                for (Iterator j = override.getWithPathSpecs().iterator(); j.hasNext();) {
+                    RepoPathSpec pathSpec = (RepoPathSpec)j.next();
+                    pathSpecs.add(pathSpec.getFrom() + "," + pathSpec.getOptions() + "," + pathSpec.isDescend() + ","
+                        + pathSpec.isMandatory());
+                }
+
+                sb.append(pathSpecs).append(';');
+            }
+
+            fingerprint = sb.toString();
+        }
+
+        public List getOverrides() {
+            return index.getOverrides();
+        }
+
+        /**
+         * Returns the first override in declaration order that matches the id given, or null if none match
+         */
+        public RepoOverride getFirstMatch(RepoArtifactId id) {
+            return index.getFirstMatch(id);
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Returns these overrides combined with those of the artifact that apply to the path given
+         */
+        public synchronized Overrides combine(String from, RepoArtifact artifact) {
+            if (artifact.getOverrides().size() == 0) {
+                return this;
+            }
+
+            String key = from + ":" + artifact.getId().toShortString();
+            Overrides result = (Overrides)combined.get(key);
+
+            if (result == null) {
+                List list = new ArrayList(index.getOverrides());
+                list.addAll(filterOverrides(from, artifact.getOverrides()));
+                result = new Overrides(list);
+                combined.put(key, result);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * SubtreeKey identifies the context that a subtree is resolved in. Subtrees resolved with equal
+     * keys are identical, with the exception of the artifact they are declared by.
+     */
+    private static class SubtreeKey {
+        private RepoArtifactId id;
+        private String from;
+        private Boolean descend;
+        private Boolean mandatory;
+        private Set options;
+        private boolean force;
+        private String overrides;
+        private boolean retrieveArtifacts;
+        private int hash;
+
+        public SubtreeKey(RepoPathSpec pathSpec, Set options, boolean force, Overrides overrides,
+            boolean retrieveArtifacts) {
+            this.id = pathSpec.getDependency().getId();
+            this.from = pathSpec.getFrom();
+            this.descend = pathSpec.isDescend();
+            this.mandatory = pathSpec.isMandatory();
+            this.options = new HashSet(options);
+            this.force = force;
+            this.overrides = overrides.getFingerprint();
+            this.retrieveArtifacts = retrieveArtifacts;
+
+            hash = id.hashCode();
+            hash = (31 * hash) + from.hashCode();
+            hash = (31 * hash) + this.options.hashCode();
+            hash = (31 * hash) + this.overrides.hashCode();
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof SubtreeKey)) {
+                return false;
+            }
+
+            SubtreeKey other = (SubtreeKey)o;
+
+            return (hash == other.hash) && (force == other.force) && (retrieveArtifacts == other.retrieveArtifacts)
+            && id.equals(other.id) && from.equals(other.from) && descend.equals(other.descend)
+            && mandatory.equals(other.mandatory) && options.equals(other.options) && overrides.equals(other.overrides);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
 
-                if (artifact.getId().equals(getDeclaredBy(child.getId()))) {
-                    children.put(child.getId(), child);
+    /**
+     * Subtree is a memoised subtree of a resolved path. The artifacts are stored in the order they
+     * were resolved, along with the index of the artifact that declared them. This allows the
+     * subtree to be added to another path by creating new views of the artifacts and relinking the declaredBy
+     * annotations.
+     */
+    private class Subtree {
+        private RepoArtifact[] artifacts;
+        private int[] parents;
+        private Map descended = new HashMap(); // Ancestor -> index of the artifact descended into
+        private List appliedOverrides;
+
+        /**
+         * Creates a subtree from the artifacts added to the path from pathStart onwards, and the overrides
+         * applied from overridesStart onwards
+         */
+        public Subtree(ResolvedPath path, int pathStart, Ancestors ancestors, List appliedOverrides,
+            int overridesStart) {
+            List resolved = path.getResolvedArtifacts().subList(pathStart, path.getArtifacts().size());
+            artifacts = new RepoArtifact[resolved.size()];
+            parents = new int[resolved.size()];
+
+            Map indexes = new IdentityHashMap();
+
+            for (int i = 0; i < artifacts.length; i++) {
+                ResolvedArtifact artifact = (ResolvedArtifact)resolved.get(i);
+                Integer parent = (Integer)indexes.get(getDeclaredBy(artifact));
+                parents[i] = (parent == null) ? (-1) : parent.intValue();
+                indexes.put(artifact, new Integer(i));
+
+                Ancestor ancestor = ancestors.getAncestor(artifact);
+
+                if ((ancestor != null) && !descended.containsKey(ancestor)) {
+                    descended.put(ancestor, new Integer(i));
                 }
+
+                artifacts[i] = artifact.getArtifact();
             }
+
+            this.appliedOverrides = new ArrayList(appliedOverrides.subList(overridesStart, appliedOverrides.size()));
         }
 
-        for (Iterator i = children.values().iterator(); i.hasNext();) {
-            RepoArtifact child = (RepoArtifact)i.next();
-            formatPath(artifacts, child, onlyConflicted, sb, indent + "    ");
+        public void addTo(ResolvedPath path, ResolvedArtifact declaredBy, Ancestors ancestors,
+            List appliedOverrides) {
+            // Fail if the subtree descends into an artifact that is currently being descended into
+            for (Iterator i = ancestors.iterator(); i.hasNext();) {
+                Ancestor ancestor = (Ancestor)i.next();
+                Integer index = (Integer)descended.get(ancestor);
+
+                if (index != null) {
+                    LinkedList cycle = new LinkedList();
+
+                    for (int j = index.intValue(); j != -1; j = parents[j]) {
+                        cycle.addFirst(artifacts[j].getId());
+                    }
+
+                    throw ancestors.cycleDetected(ancestor, cycle);
+                }
+            }
+
+            ResolvedArtifact[] added = new ResolvedArtifact[artifacts.length];
+
+            for (int i = 0; i < artifacts.length; i++) {
+                added[i] = new ResolvedArtifact(artifacts[i]);
+                setDeclaredBy(added[i], (parents[i] == -1) ? declaredBy : added[parents[i]]);
+                path.add(added[i]);
+            }
+
+            for (Iterator i = descended.entrySet().iterator(); i.hasNext();) {
+                Map.Entry entry = (Map.Entry)i.next();
+                ancestors.setAncestor(added[((Integer)entry.getValue()).intValue()], (Ancestor)entry.getKey());
+            }
+
+            appliedOverrides.addAll(this.appliedOverrides);
         }
     }
 
     /**
-     * Generates a set of ids that will produce conflicts if conflicting artifacts are on the path
+     * NameIndex counts the dependencies of an artifact with each name for a given path. It is used
+     * to check that options without groups are unambiguous and is only built if such an option is used.
      */
-    private List toConflictIds(RepoArtifact artifact) {
-        List conflicts = new ArrayList();
-        conflicts.add(artifact.getId());
+    private static class NameIndex {
+        private RepoArtifact artifact;
+        private String to;
+        private Map counts; // Name -> Integer
+
+        public NameIndex(RepoArtifact artifact, String to) {
+            this.artifact = artifact;
+            this.to = to;
+        }
 
-        for (Iterator i = artifact.getConflicts().iterator(); i.hasNext();) {
-            RepoConflict conflict = (RepoConflict)i.next();
-            RepoArtifactId id = conflict.getId();
-            String kind = conflict.getKind();
+        public int count(String name) {
+            if (counts == null) {
+                counts = new HashMap();
 
-            if (kind.equals(RepoConflict.BUNDLED) || kind.equals(RepoConflict.RENAMED_RESET)
-                    || kind.equals(RepoConflict.EQUIVALENT)) {
-                // Any version of id named in the conflict must clash
-                // In the case of equivalence, if more than 1 group/name/type is equivalent, this will
-                // also result in a conflict.
-                String dummy = artifact.getId().getGroup() + "-" + artifact.getId().getName() + "-"
-                    + artifact.getId().getType() + "-conflict-dummy";
-                RepoArtifactId id1 = new RepoArtifactId(id.getGroup(), id.getName(), id.getType(), dummy);
-                System.out.println("adding " + id1.toShortString());
-                conflicts.add(id1);
-            } else if (kind.equals(RepoConflict.RENAMED)) {
-                // Same version of the old name is OK, otherwise there's a conflict
-                conflicts.add(new RepoArtifactId(id.getGroup(), id.getName(), id.getType(),
-                        artifact.getId().getVersion()));
-            } else if (kind.equals(RepoConflict.ALIAS)) {
-                // Any other version of the aliased id will lead to a conflict
-                conflicts.add(id);
-            } else {
-                Assert.isTrue(false, conflict.getLocator(), "Unknown kind: " + kind);
+                for (Iterator i = artifact.getDependencies().iterator(); i.hasNext();) {
+                    RepoDependency dependency = (RepoDependency)i.next();
+
+                    for (Iterator j = dependency.getPathSpecs().iterator(); j.hasNext();) {
+                        RepoPathSpec pathSpec = (RepoPathSpec)j.next();
+
+                        if (pathSpec.getTo().equals(to)) {
+                            Integer count = (Integer)counts.get(dependency.getId().getName());
+                            counts.put(dependency.getId().getName(),
+                                new Integer((count == null) ? 1 : (count.intValue() + 1)));
+                        }
+                    }
+                }
+            }
+
+            Integer count = (Integer)counts.get(name);
+
+            return (count == null) ? 0 : count.intValue();
+        }
+    }
+
+    /**
+     * Ancestor identifies an artifact that is being descended into via a particular path
+     */
+    private static class Ancestor {
+        private RepoArtifactId id;
+        private String from;
+
+        public Ancestor(RepoArtifactId id, String from) {
+            this.id = id;
+            this.from = from;
+        }
+
+        public RepoArtifactId getId() {
+            return id;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Ancestor)) {
+                return false;
+            }
+
+            Ancestor other = (Ancestor)o;
+
+            return id.equals(other.id) && from.equals(other.from);
+        }
+
+        public int hashCode() {
+            return (31 * id.hashCode()) + from.hashCode();
+        }
+    }
+
+    /**
+     * Ancestors is the stack of artifacts currently being descended into. Descending into an artifact
+     * again via the same path is a cycle and is reported immediately. It also records the ancestor
+     * entry of each artifact in the path that was descended into, so that memoised subtrees can be
+     * checked for cycles without being walked again.
+     */
+    private static class Ancestors {
+        private Set ancestors; // Preserves the order of descent for reporting
+        private Map descended; // ResolvedArtifact -> Ancestor
+
+        /**
+         * @param concurrent if true, the ancestors may be forked and used by multiple threads
+         */
+        public Ancestors(boolean concurrent) {
+            this(new LinkedHashSet(),
+                concurrent ? Collections.synchronizedMap(new IdentityHashMap()) : new IdentityHashMap());
+        }
+
+        private Ancestors(Set ancestors, Map descended) {
+            this.ancestors = ancestors;
+            this.descended = descended;
+        }
+
+        /**
+         * Returns a copy of the ancestors that may be used independently by another thread
+         */
+        public Ancestors fork() {
+            return new Ancestors(new LinkedHashSet(ancestors), descended);
+        }
+
+        public Iterator iterator() {
+            return ancestors.iterator();
+        }
+
+        public void push(Ancestor ancestor, ResolvedArtifact artifact) {
+            if (!ancestors.add(ancestor)) {
+                throw cycleDetected(ancestor, Collections.singletonList(ancestor.getId()));
+            }
+
+            descended.put(artifact, ancestor);
+        }
+
+        public void pop(Ancestor ancestor) {
+            ancestors.remove(ancestor);
+        }
+
+        public Ancestor getAncestor(ResolvedArtifact artifact) {
+            return (Ancestor)descended.get(artifact);
+        }
+
+        public void setAncestor(ResolvedArtifact artifact, Ancestor ancestor) {
+            descended.put(artifact, ancestor);
+        }
+
+        /**
+         * Returns an exception describing the cycle from the ancestor given through the remaining ids
+         */
+        public BuildException cycleDetected(Ancestor start, List remaining) {
+            StringBuffer sb = new StringBuffer();
+            boolean inCycle = false;
+
+            for (Iterator i = ancestors.iterator(); i.hasNext();) {
+                Ancestor ancestor = (Ancestor)i.next();
+                inCycle = inCycle || ancestor.equals(start);
+
+                if (inCycle) {
+                    sb.append(ancestor.getId().toShortString()).append(" -> ");
+                }
+            }
+
+            for (Iterator i = remaining.iterator(); i.hasNext();) {
+                sb.append(((RepoArtifactId)i.next()).toShortString()).append(i.hasNext() ? " -> " : "");
             }
+
+            return new BuildException("Dependency cycle detected. Quokka does not support circular dependencies: "
+                + sb);
+        }
+    }
+
+    /**
+     * SubtreeTask resolves a subtree into a separate path and list of applied overrides,
+     * allowing subtrees to be resolved in parallel
+     */
+    private class SubtreeTask extends TaskPool.Task {
+        private RepoPathSpec pathSpec;
+        private Set options;
+        private boolean force;
+        private ResolvedArtifact declaredBy;
+        private Overrides overrides;
+        private Ancestors ancestors;
+        private boolean retrieveArtifacts;
+        private ResolvedPath path = new ResolvedPath();
+        private List appliedOverrides = new ArrayList();
+        private int overridesIndex;
+
+        public SubtreeTask(RepoPathSpec pathSpec, Set options, boolean force, ResolvedArtifact declaredBy,
+            Overrides overrides, Ancestors ancestors, boolean retrieveArtifacts) {
+            this.pathSpec = pathSpec;
+            this.options = options;
+            this.force = force;
+            this.declaredBy = declaredBy;
+            this.overrides = overrides;
+            this.ancestors = ancestors;
+            this.retrieveArtifacts = retrieveArtifacts;
+        }
+
+        protected void compute() {
+            resolvePath(path, pathSpec, options, force, declaredBy, overrides, ancestors, appliedOverrides,
+                retrieveArtifacts);
         }
+    }
+
+    /**
+     * Forks holds the subtrees of an artifact that are being resolved in parallel. Joining adds them
+     * to the path in the order they were forked, so the result is the same as resolving sequentially.
+     */
+    private class Forks {
+        private List tasks = new ArrayList();
+
+        public void fork(SubtreeTask task, List appliedOverrides) {
+            task.overridesIndex = appliedOverrides.size(); // Overrides applied by the task come after any applied so far
+            tasks.add(task);
+            pool.fork(task);
+        }
+
+        /**
+         * Waits for all tasks to complete, adding their results. If a task fails, the remaining tasks are
+         * cancelled and the failure is rethrown.
+         */
+        public void join(ResolvedPath path, List appliedOverrides) {
+            int offset = 0;
+
+            for (int i = 0; i < tasks.size(); i++) {
+                SubtreeTask task = (SubtreeTask)tasks.get(i);
+
+                try {
+                    task.join();
+                } catch (RuntimeException e) {
+                    for (int j = i + 1; j < tasks.size(); j++) {
+                        ((SubtreeTask)tasks.get(j)).cancel();
+                    }
 
-        return conflicts;
+                    throw e;
+                }
+
+                for (Iterator j = task.path.getResolvedArtifacts().iterator(); j.hasNext();) {
+                    path.add((ResolvedArtifact)j.next());
+                }
+
+                appliedOverrides.addAll(task.overridesIndex + offset, task.appliedOverrides);
+                offset += task.appliedOverrides.size();
+            }
+
+            tasks.clear();
+        }
+    }
+
+    /**
+     * ConflictKey is the unversioned form of an id, used to index artifacts that may conflict
+     */
+    private static class ConflictKey {
+        private String group;
+        private String name;
+        private String type;
+        private int hash;
+
+        public ConflictKey(RepoArtifactId id) {
+            group = id.getGroup();
+            name = id.getName();
+            type = id.getType();
+            hash = (31 * ((31 * group.hashCode()) + name.hashCode())) + type.hashCode();
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof ConflictKey)) {
+                return false;
+            }
+
+            ConflictKey other = (ConflictKey)o;
+
+            return (hash == other.hash) && group.equals(other.group) && name.equals(other.name)
+            && type.equals(other.type);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * ConflictEntry holds the artifacts registered under a particular unversioned id. Entries that
+     * share an artifact are joined into a group (a union-find set) so conflicts can be numbered by group.
+     */
+    private static class ConflictEntry {
+        private List artifacts = new ArrayList();
+        private Object version;
+        private boolean conflicted;
+        private ConflictEntry parent = this;
+        private int conflictIndex;
+
+        /**
+         * Adds the artifact with the version given, returning true if the version differs from those
+         * already added
+         */
+        public boolean add(ResolvedArtifact artifact, Object version) {
+            if (artifacts.size() == 0) {
+                this.version = version;
+            } else if (!conflicted && !((version == null) ? (this.version == null) : version.equals(this.version))) {
+                conflicted = true;
+            }
+
+            artifacts.add(artifact);
+
+            return conflicted;
+        }
+
+        public boolean isConflicted() {
+            return conflicted;
+        }
+
+        public ConflictEntry getGroup() {
+            ConflictEntry root = this;
+
+            while (root.parent != root) {
+                root = root.parent;
+            }
+
+            // Compress the path to the root
+            for (ConflictEntry entry = this; entry != root;) {
+                ConflictEntry next = entry.parent;
+                entry.parent = root;
+                entry = next;
+            }
+
+            return root;
+        }
+
+        public void union(ConflictEntry other) {
+            ConflictEntry root = getGroup();
+            ConflictEntry otherRoot = other.getGroup();
+
+            if (root != otherRoot) {
+                root.parent = otherRoot;
+            }
+        }
     }
 }
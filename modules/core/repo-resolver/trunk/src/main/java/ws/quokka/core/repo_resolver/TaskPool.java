@@ -0,0 +1,163 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_resolver;
+
+import org.apache.tools.ant.BuildException;
+
+import java.util.LinkedList;
+
+
+/**
+ * TaskPool executes tasks on a fixed number of daemon threads. Tasks may fork further tasks and
+ * later join them. Joining a task that has not started yet runs it on the joining thread, so a
+ * thread waiting for sub-tasks is never left waiting for a pool thread to become free.
+ */
+class TaskPool {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private LinkedList queue = new LinkedList();
+    private String name;
+    private int threads;
+    private int started;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * @param name the name used as a prefix for the pool's threads
+     * @param threads the maximum number of threads to start
+     */
+    public TaskPool(String name, int threads) {
+        this.name = name;
+        this.threads = threads;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Queues the task for execution. Threads are started on demand up to the maximum for the pool.
+     */
+    public void fork(Task task) {
+        synchronized (queue) {
+            queue.addLast(task);
+
+            if (started < threads) {
+                Thread thread = new Thread(new Worker(), name + "-" + ++started);
+                thread.setDaemon(true); // The pool lives as long as its owner, so don't prevent exiting
+                thread.start();
+            }
+
+            queue.notify();
+        }
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Task is a unit of work that is run at most once, either by a pool thread or the thread joining it
+     */
+    public abstract static class Task {
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private int state = PENDING;
+        private Throwable error;
+
+        protected abstract void compute();
+
+        /**
+         * Runs the task if it hasn't been started already
+         */
+        void run() {
+            synchronized (this) {
+                if (state != PENDING) {
+                    return;
+                }
+
+                state = RUNNING;
+            }
+
+            try {
+                compute();
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                synchronized (this) {
+                    state = DONE;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Prevents the task from running if it hasn't been started already
+         */
+        public synchronized void cancel() {
+            if (state == PENDING) {
+                state = DONE;
+            }
+        }
+
+        /**
+         * Waits for the task to complete, running it on the current thread if it has not been started.
+         * Any exception thrown by the task is rethrown.
+         */
+        public void join() {
+            run();
+
+            synchronized (this) {
+                while (state != DONE) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new BuildException("Interrupted while waiting for a task to complete", e);
+                    }
+                }
+            }
+
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException)error;
+            } else if (error instanceof Error) {
+                throw (Error)error;
+            } else if (error != null) {
+                throw new BuildException(error);
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            while (true) {
+                Task task;
+
+                synchronized (queue) {
+                    while (queue.isEmpty()) {
+                        try {
+                            queue.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+
+                    task = (Task)queue.removeFirst();
+                }
+
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_resolver;
+
+import ws.quokka.core.test.AbstractTest;
+import ws.quokka.core.version.Version;
+
+import java.util.List;
+
+
+/**
+ *
+ */
+public class OptionTest extends AbstractTest {
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void testParse() {
+        List options = Option.parse("group1:name1@1.0(name2(-name3), group4:name4), -name5");
+        assertEquals(2, options.size());
+
+        Option option = (Option)options.get(0);
+        assertFalse(option.isExclusion());
+        assertEquals("group1", option.getGroup());
+        assertEquals("name1", option.getName());
+        assertEquals(new Version("1.0"), option.getVersion());
+        assertEquals(2, option.getChildren().size());
+
+        Option child = (Option)option.getChildren().get(0);
+        assertNull(child.getGroup());
+        assertEquals("name2", child.getName());
+        assertNull(child.getVersion());
+        assertEquals(1, child.getChildren().size());
+        assertTrue(((Option)child.getChildren().get(0)).isExclusion());
+        assertEquals("group4", ((Option)option.getChildren().get(1)).getGroup());
+
+        option = (Option)options.get(1);
+        assertTrue(option.isExclusion());
+        assertEquals("name5", option.getName());
+        assertEquals(0, option.getChildren().size());
+    }
+
+    public void testParseCached() {
+        assertSame(Option.parse("name1(name2)"), Option.parse("name1(name2)"));
+    }
+
+    public void testInvalid() {
+        try {
+            Option.parse("group:name:extra");
+            fail("Exception expected");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().indexOf("Invalid option format") != -1);
+        }
+    }
+}
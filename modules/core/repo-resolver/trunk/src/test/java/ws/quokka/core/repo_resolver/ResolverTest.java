@@ -36,13 +36,13 @@ public class ResolverTest extends AbstractTest {
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private Resolver resolver;
-    private MockRepository repo;
+    private CountingRepository repo;
     private Map paths = new HashMap();
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
     protected void setUp() throws Exception {
-        repo = new MockRepository();
+        repo = new CountingRepository();
         resolver = new Resolver(repo, new MockLogger());
     }
 
@@ -85,6 +85,139 @@ public class ResolverTest extends AbstractTest {
         }
     }
 
+    public void testCycleReported() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep2"), "root");
+        dep(root, get("dep1"), "root");
+        dep(get("dep2"), get("dep111"), "runtime");
+        dep(get("dep111"), get("dep1"), "runtime");
+
+        repo.resolved.clear();
+
+        try {
+            resolver.resolvePath("root", root);
+            fail("Expected exception");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage().endsWith(
+                    ": dep111:dep111:jar:1.0 -> dep1:dep1:jar:1.0 -> dep11:dep11:jar:1.0 -> dep111:dep111:jar:1.0"));
+            assertEquals(1, repo.getCount(id("dep1")));
+        }
+    }
+
+    public void testSharedSubtreesResolvedOnce() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep1"), "root");
+        dep(root, get("dep2"), "root");
+        dep(get("dep1"), get("dep3:dep3:jar:2.0"), "runtime");
+        dep(get("dep2"), get("dep3:dep3:jar:2.0"), "runtime");
+
+        repo.resolved.clear();
+
+        ResolvedPath path = resolver.resolvePath("root", root);
+        assertEquals("Path: root\n" + "    dep1:dep1:jar:1.0\n" + "        dep11:dep11:jar:1.0\n"
+            + "            dep111:dep111:jar:1.0\n" + "        dep12:dep12:jar:1.0\n"
+            + "            dep121:dep121:jar:1.0\n" + "        dep3:dep3:jar:2.0\n"
+            + "            dep31:dep31:jar:2.0\n" + "    dep2:dep2:jar:1.0\n" + "        dep21:dep21:jar:1.0\n"
+            + "        dep3:dep3:jar:2.0\n" + "            dep31:dep31:jar:2.0\n", resolver.formatPath(path, false));
+        assertEquals(1, repo.getCount(id("dep3:dep3:jar:2.0")));
+        assertEquals(1, repo.getCount(id("dep31:dep31:jar:2.0")));
+    }
+
+    public void testDiamondsResolvedInLinearTime() {
+        RepoArtifact root = createRoot();
+        String[] previous = null;
+
+        for (int level = 0; level < 16; level++) {
+            String[] current = new String[] { "left" + level, "right" + level };
+
+            for (int i = 0; i < current.length; i++) {
+                artifact(current[i]);
+
+                if (previous == null) {
+                    dep(root, get(current[i]), "root");
+                } else {
+                    dep(get(previous[0]), get(current[i]), "runtime");
+                    dep(get(previous[1]), get(current[i]), "runtime");
+                }
+            }
+
+            previous = current;
+        }
+
+        repo.resolved.clear();
+
+        ResolvedPath path = resolver.resolvePath("root", root);
+        assertEquals((2 << 16) - 2, path.getArtifacts().size());
+        assertEquals(32, repo.getCount());
+        assertPath(path, Strings.join(repo.resolved.keySet().iterator(), ","));
+    }
+
+    public void testExplicitOverrideIsNotRetained() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep1"), "root(dep11:dep11(dep111@2.0))");
+        assertPath(resolver.resolvePath("root", root), "dep1, dep11, dep111:dep111:jar:2.0, dep12, dep121");
+
+        root = createRoot();
+        dep(root, get("dep1"), "root");
+        assertPath(resolver.resolvePath("root", root), "dep1, dep11, dep111, dep12, dep121");
+    }
+
+    public void testParallelResolution() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        root.addPath(path("root2", true, true));
+        dep(root, get("dep2"), "root");
+        dep(root, get("dep1"), "root(dep11(dep111@2.0))");
+        dep(root, get("dep3"), "root");
+        dep(root, get("dep1"), "root2");
+        dep(get("dep2"), get("dep12"), "runtime");
+        dep(get("dep21"), get("dep3:dep3:jar:2.0"), "runtime");
+        artifact("dep121:dep121:jar:2.0");
+        override(root, "root", "dep121", "1.0", "2.0", null);
+
+        Resolver parallel = new Resolver(repo, new MockLogger());
+        parallel.setThreads(4);
+        repo.delay = 10;
+
+        String[] pathIds = new String[] { "root", "root2" };
+
+        for (int i = 0; i < pathIds.length; i++) {
+            List expectedOverrides = new ArrayList();
+            ResolvedPath expected = resolver.resolvePath(pathIds[i], root, expectedOverrides, false, true);
+            List actualOverrides = new ArrayList();
+            ResolvedPath actual = parallel.resolvePath(pathIds[i], root, actualOverrides, false, true);
+
+            assertEquals(ids(expected), ids(actual));
+            assertEquals(resolver.formatPath(expected, false), parallel.formatPath(actual, false));
+            assertEquals(expectedOverrides, actualOverrides);
+        }
+    }
+
+    public void testParallelResolutionFailure() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep1"), "root(dep11(dep111@3.0))");
+        dep(root, get("dep2"), "root(dep99)");
+
+        Resolver parallel = new Resolver(repo, new MockLogger());
+        parallel.setThreads(4);
+
+        try {
+            parallel.resolvePath("root", root);
+            fail("Expected exception");
+        } catch (UnresolvedArtifactException e) {
+            assertEquals(id("dep111:dep111:jar:3.0"), e.getArtifactId());
+        }
+    }
+
     public void testOptionsWithMultipleLevels() {
         RepoArtifact root = createRoot();
         artifact("dep1");
@@ -156,6 +289,31 @@ public class ResolverTest extends AbstractTest {
         }
     }
 
+    public void testOptionVersionOnlyOverridesMatchingDependency() {
+        createArtifacts1();
+        artifact("dep12:dep12:jar:2.0");
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep1"), "root(dep12@2.0)");
+        assertPath(resolver.resolvePath("root", root), "dep1, dep11, dep111, dep12:dep12:jar:2.0");
+    }
+
+    public void testUnmatchedOptions() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep1"), "root(dep11, dep99, -dep98)");
+
+        try {
+            resolver.resolvePath("root", root);
+            fail("Exception expected");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().indexOf("Options do not match dependencies of artifact") != -1);
+            assertTrue(e.getMessage().indexOf("dep99") != -1);
+            assertTrue(e.getMessage().indexOf("-dep98") != -1);
+        }
+    }
+
     public void testExplicitOverride() {
         createArtifacts1();
 
@@ -246,6 +404,100 @@ public class ResolverTest extends AbstractTest {
         assertPath(path, "dep1, dep11, dep111, dep3, dep12, dep121");
     }
 
+    public void testArtifactsSharedBetweenPaths() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep1"), "root");
+        dep(root, get("dep2"), "root");
+        dep(get("dep2"), get("dep12"), "runtime");
+
+        ResolvedPath path = resolver.resolvePath("root", root);
+        assertSame(repo.resolve(id("dep1:dep1:jar:1.0")), path.getArtifacts().get(0));
+
+        // The same artifact is declared by different parents in the same path
+        List declaredBy = new ArrayList();
+
+        for (Iterator i = path.getResolvedArtifacts().iterator(); i.hasNext();) {
+            ResolvedArtifact artifact = (ResolvedArtifact)i.next();
+
+            if (artifact.getId().getName().equals("dep12")) {
+                assertSame(get("dep12"), artifact.getArtifact());
+                declaredBy.add(((ResolvedArtifact)artifact.getAnnotations().get("declaredBy")).getId().getName());
+            }
+        }
+
+        assertEquals(Arrays.asList(new String[] { "dep1", "dep2" }), declaredBy);
+
+        // Merging and printing leaves the paths and artifacts untouched
+        String formatted = resolver.formatPath(path, false);
+        resolver.merge(Collections.singleton(path));
+        assertEquals(formatted, resolver.formatPath(path, false));
+        assertTrue(get("dep12").getId().getAnnotations().entrySet().isEmpty());
+    }
+
+    public void testMergeConflictsLeavePathsUntouched() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep1"), "root");
+        dep(root, get("dep1:dep1:jar:2.0"), "root");
+
+        ResolvedPath path = resolver.resolvePath("root", root);
+
+        try {
+            resolver.merge(Collections.singleton(path));
+            fail("Expected exception");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage().indexOf("(conflict 1)") != -1);
+        }
+
+        for (Iterator i = path.getResolvedArtifacts().iterator(); i.hasNext();) {
+            ResolvedArtifact artifact = (ResolvedArtifact)i.next();
+            assertNull(artifact.getAnnotations().get(Resolver.CONFLICT));
+        }
+    }
+
+    public void testMergedInResolutionOrder() {
+        createArtifacts1();
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep2"), "root");
+        dep(root, get("dep1"), "root");
+        dep(get("dep12"), get("dep21"), "runtime");
+
+        ResolvedPath path = resolver.merge(Collections.singleton(resolver.resolvePath("root", root)));
+        RepoArtifactId[] expected = new RepoArtifactId[] {
+                id("dep2"), id("dep21"), id("dep1"), id("dep11"), id("dep111"), id("dep12"), id("dep121")
+            };
+        assertEquals(Arrays.asList(expected), ids(path));
+    }
+
+    public void testMergeConflictsNumberedByGroup() {
+        createArtifacts1();
+
+        RepoArtifact dep2 = get("dep2");
+        dep2.addConflict(new RepoConflict(id("dep11"), RepoConflict.BUNDLED));
+
+        RepoArtifact root = createRoot();
+        dep(root, get("dep3"), "root");
+        dep(root, get("dep1"), "root");
+        dep(root, get("dep3:dep3:jar:2.0"), "root");
+        dep(root, dep2, "root");
+
+        ResolvedPath path = resolver.resolvePath("root", root);
+
+        try {
+            resolver.merge(Collections.singleton(path));
+            fail("Expected exception");
+        } catch (BuildException e) {
+            assertEquals("Conflicts have occurred between the following artifacts:\n" + "Path: root\n"
+                + "    dep1:dep1:jar:1.0\n" + "        dep11:dep11:jar:1.0 (conflict 2)\n"
+                + "    dep2:dep2:jar:1.0 (conflict 2)\n" + "    dep3:dep3:jar:1.0 (conflict 1)\n"
+                + "    dep3:dep3:jar:2.0 (conflict 1)\n", e.getMessage());
+        }
+    }
+
     public void testResolvePathOptionalDescend() {
         createArtifacts1();
 
@@ -483,6 +735,16 @@ public class ResolverTest extends AbstractTest {
         assertPath(path, "dep1, dep11, dep111, dep112, dep2");
     }
 
+    private List ids(ResolvedPath path) {
+        List ids = new ArrayList();
+
+        for (Iterator i = path.getArtifacts().iterator(); i.hasNext();) {
+            ids.add(((RepoArtifact)i.next()).getId());
+        }
+
+        return ids;
+    }
+
     private void printPath(ResolvedPath path) {
         System.out.println(resolver.formatPath(path, false));
     }
@@ -759,4 +1021,42 @@ public class ResolverTest extends AbstractTest {
             assertTrue(e.getMessage().indexOf("Conflicts have occurred") != -1);
         }
     }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    private static class CountingRepository extends MockRepository {
+        private Map resolved = new HashMap();
+        private long delay;
+
+        public RepoArtifact resolve(RepoArtifactId id, boolean retrieveArtifact) {
+            synchronized (this) {
+                Integer count = (Integer)resolved.get(id.toShortString());
+                resolved.put(id.toShortString(), new Integer((count == null) ? 1 : (count.intValue() + 1)));
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+
+            return super.resolve(id, retrieveArtifact);
+        }
+
+        public synchronized int getCount(RepoArtifactId id) {
+            Integer count = (Integer)resolved.get(id.toShortString());
+
+            return (count == null) ? 0 : count.intValue();
+        }
+
+        public synchronized int getCount() {
+            int count = 0;
+
+            for (Iterator i = resolved.values().iterator(); i.hasNext();) {
+                count += ((Integer)i.next()).intValue();
+            }
+
+            return count;
+        }
+    }
 }
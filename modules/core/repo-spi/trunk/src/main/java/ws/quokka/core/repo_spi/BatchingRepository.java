@@ -0,0 +1,40 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_spi;
+
+
+/**
+ * BatchingRepository is implemented by repositories that can defer the work that follows each install or remove
+ * until a batch of changes is complete. Callers making many changes should make them between {@link #startBatch()}
+ * and {@link #commitBatch()}, committing in a finally block. Repositories that wrap other repositories implement
+ * it by forwarding batches to those they wrap.
+ */
+public interface BatchingRepository {
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Defers the work that follows each change until the matching call to {@link #commitBatch()}.
+     * Batches may be nested, in which case the work is done when the outermost batch is committed.
+     */
+    void startBatch();
+
+    /**
+     * Completes the batch started by the matching call to {@link #startBatch()}
+     */
+    void commitBatch();
+}
@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -40,8 +41,9 @@ public class RepoArtifact extends AnnotatedObject implements Cloneable {
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private RepoArtifactId id;
-    private Set dependencies = new HashSet();
+    private Set dependencies = new LinkedHashSet();
     private File localCopy;
+    private File repositoryFile;
     private Set paths = new HashSet();
     private Set conflicts = new HashSet();
     private List overrides = new ArrayList();
@@ -191,6 +193,21 @@ public class RepoArtifact extends AnnotatedObject implements Cloneable {
         this.localCopy = localCopy;
     }
 
+    /**
+     * Returns the file the metadata of the artifact was parsed from. This may be null if the artifact
+     * was not parsed from a file, or if the repository does not store metadata in files.
+     */
+    public File getRepositoryFile() {
+        return repositoryFile;
+    }
+
+    /**
+     * @see #getRepositoryFile()
+     */
+    public void setRepositoryFile(File repositoryFile) {
+        this.repositoryFile = repositoryFile;
+    }
+
     /**
      * Returns a short description of this artifact, currently just the id
      */
@@ -262,7 +279,7 @@ public class RepoArtifact extends AnnotatedObject implements Cloneable {
     }
 
     public boolean equals(Object o) {
-        // Note: localCopy, hash and annotations are excluded from equality testing
+        // Note: localCopy, repositoryFile, hash and annotations are excluded from equality testing
         if (this == o) {
             return true;
         }
@@ -24,6 +24,11 @@ import ws.quokka.core.util.StringGenerator;
 import ws.quokka.core.util.Strings;
 import ws.quokka.core.version.Version;
 
+import java.lang.ref.WeakReference;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
 
 /**
  * RepoArtifactId represents the unique identifier of an artifact in a quokka repository.
@@ -33,6 +38,8 @@ import ws.quokka.core.version.Version;
  * <li>All artifacts within a group should be released at the same time with the same version</li>
  * <li>Groups and names are limited to the following characters: A-Z, a-z, 0-9, '.' and '-'</li>
  * </ol>
+ * Ids are immutable, with the exception of their annotations. Canonical instances can be obtained
+ * via {@link #intern()} for use as keys in long lived collections.
  */
 public class RepoArtifactId extends AnnotatedObject implements Cloneable, Comparable {
     //~ Static fields/initializers -------------------------------------------------------------------------------------
@@ -40,6 +47,21 @@ public class RepoArtifactId extends AnnotatedObject implements Cloneable, Compar
     public static final String ID_SEPARATOR = ":";
     public static final String PATH_SEPARATOR = "_";
     private static final String VALID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789.-";
+    private static final Map CANONICAL = new WeakHashMap(); // RepoArtifactId -> WeakReference(RepoArtifactId)
+
+    /**
+     * Annotations shared by all canonical ids. They are always empty as canonical ids are shared
+     * between contexts. Clone the id to obtain an instance that can be annotated.
+     */
+    private static final Annotations CANONICAL_ANNOTATIONS = new Annotations() {
+            public void put(String key, Object value) {
+                throw new UnsupportedOperationException("Canonical ids cannot be annotated, clone the id instead");
+            }
+
+            public Object clone() {
+                return new Annotations();
+            }
+        };
 
     static {
         STRING_GENERATOR.add(new StringGenerator.Generator() {
@@ -59,6 +81,9 @@ public class RepoArtifactId extends AnnotatedObject implements Cloneable, Compar
     private String name;
     private String type;
     private Version version;
+    private transient int hash; // Cached as ids are immutable
+    private transient String shortString;
+    private transient String pathString;
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
 
@@ -172,16 +197,24 @@ public class RepoArtifactId extends AnnotatedObject implements Cloneable, Compar
      * Returns the id in format group:name:type:version
      */
     public String toShortString() {
-        return noNull(group) + ID_SEPARATOR + noNull(name) + ID_SEPARATOR + noNull(type) + ID_SEPARATOR
-        + noNull(version);
+        if (shortString == null) {
+            shortString = noNull(group) + ID_SEPARATOR + noNull(name) + ID_SEPARATOR + noNull(type) + ID_SEPARATOR
+                + noNull(version);
+        }
+
+        return shortString;
     }
 
     /**
      * Returns the id in format group_name_type_version
      */
     public String toPathString() {
-        return noNull(group) + PATH_SEPARATOR + noNull(name) + PATH_SEPARATOR + noNull(type) + PATH_SEPARATOR
-        + ((version == null) ? "" : version.toString());
+        if (pathString == null) {
+            pathString = noNull(group) + PATH_SEPARATOR + noNull(name) + PATH_SEPARATOR + noNull(type) + PATH_SEPARATOR
+                + ((version == null) ? "" : version.toString());
+        }
+
+        return pathString;
     }
 
     /**
@@ -227,6 +260,10 @@ public class RepoArtifactId extends AnnotatedObject implements Cloneable, Compar
 
         RepoArtifactId that = (RepoArtifactId)o;
 
+        if (hashCode() != that.hashCode()) {
+            return false;
+        }
+
         if ((group != null) ? (!group.equals(that.group)) : (that.group != null)) {
             return false;
         }
@@ -243,6 +280,14 @@ public class RepoArtifactId extends AnnotatedObject implements Cloneable, Compar
     }
 
     public int hashCode() {
+        if (hash == 0) {
+            hash = calculateHashCode();
+        }
+
+        return hash;
+    }
+
+    private int calculateHashCode() {
         int result = 31 * ((group != null) ? group.hashCode() : 0);
         result = (31 * result) + ((name != null) ? name.hashCode() : 0);
         result = (31 * result) + ((type != null) ? type.hashCode() : 0);
@@ -254,7 +299,7 @@ public class RepoArtifactId extends AnnotatedObject implements Cloneable, Compar
     public Object clone() {
         try {
             RepoArtifactId clone = (RepoArtifactId)super.clone();
-            clone.setAnnotations((Annotations)clone.getAnnotations().clone());
+            clone.setAnnotations((Annotations)clone.getAnnotations().clone()); // Canonical ids clone to empty
 
             return clone;
         } catch (CloneNotSupportedException e) {
@@ -273,10 +318,42 @@ public class RepoArtifactId extends AnnotatedObject implements Cloneable, Compar
     }
 
     /**
-     * Returns a copy of the id with the version set to null
+     * Returns the canonical id with the version set to null
      */
     public RepoArtifactId toUnversionedId() {
-        return new RepoArtifactId(group, name, type, (Version)null);
+        return ((version == null) ? this : new RepoArtifactId(group, name, type, (Version)null)).intern();
+    }
+
+    /**
+     * Returns the canonical instance of this id. Canonical instances are shared and therefore cannot be
+     * annotated or have a locator. They are intended for use as keys and in other long lived collections
+     * where holding onto the annotations of a particular context would be wasteful. Their versions are
+     * canonical too (see {@link Version#intern()}).
+     */
+    public RepoArtifactId intern() {
+        if (isCanonical()) {
+            return this;
+        }
+
+        synchronized (CANONICAL) {
+            WeakReference reference = (WeakReference)CANONICAL.get(this);
+            RepoArtifactId canonical = (reference == null) ? null : (RepoArtifactId)reference.get();
+
+            if (canonical == null) {
+                canonical = new RepoArtifactId(group, name, type, (version == null) ? null : version.intern());
+                canonical.setAnnotations(CANONICAL_ANNOTATIONS);
+                CANONICAL.put(canonical, new WeakReference(canonical));
+            }
+
+            return canonical;
+        }
+    }
+
+    /**
+     * Returns true if this is a canonical instance obtained via {@link #intern()}
+     */
+    public boolean isCanonical() {
+        return getAnnotations() == CANONICAL_ANNOTATIONS;
     }
 
     /**
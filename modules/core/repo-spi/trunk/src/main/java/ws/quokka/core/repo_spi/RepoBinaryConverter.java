@@ -0,0 +1,293 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_spi;
+
+import org.xml.sax.Locator;
+import org.xml.sax.helpers.LocatorImpl;
+
+import ws.quokka.core.util.AnnotatedObject;
+import ws.quokka.core.version.Version;
+import ws.quokka.core.version.VersionRangeUnion;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+
+/**
+ * RepoBinaryConverter converts artifacts to and from a compact binary form. It is intended for caching
+ * parsed repository files and is considerably faster than {@link RepoXmlConverter}.
+ * <p/>
+ * The form captures the state of an artifact after parsing, including the locations of declarations
+ * so that error messages match those of the XML form. Transient state such as the local copy and
+ * hash are not included. The format is versioned via {@link #FORMAT_VERSION} and readers should
+ * discard any data written with a different version.
+ */
+public class RepoBinaryConverter {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    public static final int FORMAT_VERSION = 1;
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Writes the artifact to the output given
+     */
+    public static void write(RepoArtifact artifact, DataOutput out)
+            throws IOException {
+        writeId(artifact.getId(), out);
+        writeLocator(artifact, out);
+        writeString(artifact.getDescription(), out);
+        writeString(artifact.getImportedFrom(), out);
+        out.writeBoolean(artifact.isStub());
+        out.writeLong((artifact.getTimestamp() == null) ? (-1) : artifact.getTimestamp().getTime());
+
+        out.writeInt(artifact.getPaths().size());
+
+        for (Iterator i = artifact.getPaths().iterator(); i.hasNext();) {
+            RepoPath path = (RepoPath)i.next();
+            writeString(path.getId(), out);
+            writeString(path.getDescription(), out);
+            out.writeBoolean(path.isDescendDefault());
+            out.writeBoolean(path.isMandatoryDefault());
+            writeLocator(path, out);
+        }
+
+        out.writeInt(artifact.getDependencies().size());
+
+        for (Iterator i = artifact.getDependencies().iterator(); i.hasNext();) {
+            RepoDependency dependency = (RepoDependency)i.next();
+            writeId(dependency.getId(), out);
+            writeLocator(dependency, out);
+            writePathSpecs(dependency.getPathSpecs(), out);
+        }
+
+        out.writeInt(artifact.getOverrides().size());
+
+        for (Iterator i = artifact.getOverrides().iterator(); i.hasNext();) {
+            RepoOverride override = (RepoOverride)i.next();
+            writeStrings(override.getPaths(), out);
+            writeString(override.getGroup(), out);
+            writeString(override.getName(), out);
+            writeString(override.getType(), out);
+            writeString((override.getVersion() == null) ? null : override.getVersion().toString(), out);
+            writeString((override.getWithVersion() == null) ? null : override.getWithVersion().toString(), out);
+            writeLocator(override, out);
+            writePathSpecs(override.getWithPathSpecs(), out);
+        }
+
+        out.writeInt(artifact.getConflicts().size());
+
+        for (Iterator i = artifact.getConflicts().iterator(); i.hasNext();) {
+            RepoConflict conflict = (RepoConflict)i.next();
+            writeId(conflict.getId(), out);
+            writeString(conflict.getKind(), out);
+            writeLocator(conflict, out);
+        }
+
+        out.writeInt(artifact.getLicenses().size());
+
+        for (Iterator i = artifact.getLicenses().iterator(); i.hasNext();) {
+            writeId((RepoArtifactId)i.next(), out);
+        }
+    }
+
+    /**
+     * Reads an artifact previously written with {@link #write(RepoArtifact, java.io.DataOutput)}
+     */
+    public static RepoArtifact read(DataInput in) throws IOException {
+        RepoArtifact artifact = new RepoArtifact(readId(in));
+        readLocator(artifact, in);
+        artifact.setDescription(readString(in));
+        artifact.setImportedFrom(readString(in));
+        artifact.setStub(in.readBoolean());
+
+        long timestamp = in.readLong();
+        artifact.setTimestamp((timestamp == -1) ? null : new Date(timestamp));
+
+        for (int i = in.readInt(); i > 0; i--) {
+            RepoPath path = new RepoPath(readString(in), readString(in), in.readBoolean(), in.readBoolean());
+            readLocator(path, in);
+            artifact.addPath(path);
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            RepoDependency dependency = new RepoDependency();
+            dependency.setId(readId(in));
+            readLocator(dependency, in);
+
+            for (int j = in.readInt(); j > 0; j--) {
+                dependency.addPathSpec(readPathSpec(in));
+            }
+
+            artifact.addDependency(dependency);
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            Set paths = readStrings(in);
+            String group = readString(in);
+            String name = readString(in);
+            String type = readString(in);
+            String version = readString(in);
+            String withVersion = readString(in);
+            RepoOverride override = new RepoOverride(paths, group, name, type,
+                    (version == null) ? null : VersionRangeUnion.parse(version),
+                    (withVersion == null) ? null : Version.parse(withVersion));
+            readLocator(override, in);
+
+            for (int j = in.readInt(); j > 0; j--) {
+                override.addWithPathSpec(readPathSpec(in));
+            }
+
+            artifact.addOverride(override);
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            RepoConflict conflict = new RepoConflict(readId(in), readString(in));
+            readLocator(conflict, in);
+            artifact.addConflict(conflict);
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            artifact.addLicense(readId(in));
+        }
+
+        return artifact;
+    }
+
+    private static void writePathSpecs(Collection pathSpecs, DataOutput out)
+            throws IOException {
+        out.writeInt(pathSpecs.size());
+
+        for (Iterator i = pathSpecs.iterator(); i.hasNext();) {
+            RepoPathSpec pathSpec = (RepoPathSpec)i.next();
+            writeString(pathSpec.getFrom(), out);
+            writeString(pathSpec.getTo(), out);
+            writeString(pathSpec.getOptions(), out);
+            writeBoolean(pathSpec.isDescend(), out);
+            writeBoolean(pathSpec.isMandatory(), out);
+            writeLocator(pathSpec, out);
+        }
+    }
+
+    private static RepoPathSpec readPathSpec(DataInput in)
+            throws IOException {
+        RepoPathSpec pathSpec = new RepoPathSpec(readString(in), readString(in), readString(in), readBoolean(in),
+                readBoolean(in));
+        readLocator(pathSpec, in);
+
+        return pathSpec;
+    }
+
+    private static void writeId(RepoArtifactId id, DataOutput out)
+            throws IOException {
+        writeString(id.getGroup(), out);
+        writeString(id.getName(), out);
+        writeString(id.getType(), out);
+        writeString((id.getVersion() == null) ? null : id.getVersion().toString(), out);
+        writeLocator(id, out);
+    }
+
+    private static RepoArtifactId readId(DataInput in) throws IOException {
+        String group = readString(in);
+        String name = readString(in);
+        String type = readString(in);
+        String version = readString(in);
+        RepoArtifactId id = new RepoArtifactId(group, name, type, (version == null) ? null : new Version(version));
+        readLocator(id, in);
+
+        return id;
+    }
+
+    private static void writeLocator(AnnotatedObject object, DataOutput out)
+            throws IOException {
+        Locator locator = object.getLocator();
+        out.writeBoolean(locator != null);
+
+        if (locator != null) {
+            writeString(locator.getPublicId(), out);
+            writeString(locator.getSystemId(), out);
+            out.writeInt(locator.getLineNumber());
+            out.writeInt(locator.getColumnNumber());
+        }
+    }
+
+    private static void readLocator(AnnotatedObject object, DataInput in)
+            throws IOException {
+        if (in.readBoolean()) {
+            LocatorImpl locator = new LocatorImpl();
+            locator.setPublicId(readString(in));
+            locator.setSystemId(readString(in));
+            locator.setLineNumber(in.readInt());
+            locator.setColumnNumber(in.readInt());
+            object.setLocator(locator);
+        }
+    }
+
+    private static void writeStrings(Collection strings, DataOutput out)
+            throws IOException {
+        out.writeInt(strings.size());
+
+        for (Iterator i = strings.iterator(); i.hasNext();) {
+            writeString((String)i.next(), out);
+        }
+    }
+
+    private static Set readStrings(DataInput in) throws IOException {
+        Set strings = new HashSet();
+
+        for (int i = in.readInt(); i > 0; i--) {
+            strings.add(readString(in));
+        }
+
+        return strings;
+    }
+
+    private static void writeString(String string, DataOutput out)
+            throws IOException {
+        out.writeBoolean(string != null);
+
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBoolean(Boolean value, DataOutput out)
+            throws IOException {
+        out.writeByte((value == null) ? NULL : (value.booleanValue() ? TRUE : FALSE));
+    }
+
+    private static Boolean readBoolean(DataInput in) throws IOException {
+        byte value = in.readByte();
+
+        return (value == NULL) ? null : ((value == TRUE) ? Boolean.TRUE : Boolean.FALSE);
+    }
+}
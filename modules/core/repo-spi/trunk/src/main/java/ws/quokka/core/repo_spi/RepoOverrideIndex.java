@@ -0,0 +1,190 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_spi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * RepoOverrideIndex indexes a list of overrides by group, name and type so that the overrides matching
+ * an artifact id can be found without comparing the id to every override. Overrides that leave any of
+ * these attributes unset are placed in wildcard buckets.
+ * <br>
+ * Declaration order is significant as the first matching override takes precedence, so matches
+ * are always returned in the order of the list the index was created with.
+ */
+public class RepoOverrideIndex {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private List overrides;
+    private Map buckets = new HashMap(); // group -> name -> type -> List of Entry. Wildcards use null keys
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public RepoOverrideIndex(List overrides) {
+        this.overrides = Collections.unmodifiableList(new ArrayList(overrides));
+
+        int index = 0;
+
+        for (Iterator i = overrides.iterator(); i.hasNext();) {
+            RepoOverride override = (RepoOverride)i.next();
+            Map names = getOrCreate(buckets, override.getGroup());
+            Map types = getOrCreate(names, override.getName());
+            List bucket = (List)types.get(override.getType());
+
+            if (bucket == null) {
+                bucket = new ArrayList();
+                types.put(override.getType(), bucket);
+            }
+
+            bucket.add(new Entry(index++, override));
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    private static Map getOrCreate(Map map, String key) {
+        Map value = (Map)map.get(key);
+
+        if (value == null) {
+            value = new HashMap();
+            map.put(key, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the overrides in declaration order
+     */
+    public List getOverrides() {
+        return overrides;
+    }
+
+    /**
+     * Returns the first override in declaration order that matches the id, or null if there are none
+     */
+    public RepoOverride getFirstMatch(RepoArtifactId id) {
+        Entry first = null;
+        List buckets = getBuckets(id);
+
+        for (Iterator i = buckets.iterator(); i.hasNext();) {
+            List bucket = (List)i.next();
+
+            // Buckets are in declaration order, so the first match in each is the only candidate
+            for (Iterator j = bucket.iterator(); j.hasNext();) {
+                Entry entry = (Entry)j.next();
+
+                if ((first != null) && (entry.index > first.index)) {
+                    break;
+                }
+
+                if (entry.override.matches(id)) {
+                    first = entry;
+
+                    break;
+                }
+            }
+        }
+
+        return (first == null) ? null : first.override;
+    }
+
+    /**
+     * Returns all overrides that match the id in declaration order
+     */
+    public List getMatches(RepoArtifactId id) {
+        List matches = new ArrayList();
+
+        for (Iterator i = getBuckets(id).iterator(); i.hasNext();) {
+            for (Iterator j = ((List)i.next()).iterator(); j.hasNext();) {
+                Entry entry = (Entry)j.next();
+
+                if (entry.override.matches(id)) {
+                    matches.add(entry);
+                }
+            }
+        }
+
+        Collections.sort(matches);
+
+        List result = new ArrayList();
+
+        for (Iterator i = matches.iterator(); i.hasNext();) {
+            result.add(((Entry)i.next()).override);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the buckets that may contain overrides matching the id, i.e. those for the id's group, name
+     * and type along with the wildcard buckets
+     */
+    private List getBuckets(RepoArtifactId id) {
+        List result = new ArrayList(8);
+        String[] groups = keys(id.getGroup());
+        String[] names = keys(id.getName());
+        String[] types = keys(id.getType());
+
+        for (int i = 0; i < groups.length; i++) {
+            Map groupBuckets = (Map)buckets.get(groups[i]);
+
+            for (int j = 0; (groupBuckets != null) && (j < names.length); j++) {
+                Map nameBuckets = (Map)groupBuckets.get(names[j]);
+
+                for (int k = 0; (nameBuckets != null) && (k < types.length); k++) {
+                    List bucket = (List)nameBuckets.get(types[k]);
+
+                    if (bucket != null) {
+                        result.add(bucket);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private String[] keys(String value) {
+        return (value == null) ? new String[] { null } : new String[] { value, null };
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    private static class Entry implements Comparable {
+        private int index;
+        private RepoOverride override;
+
+        public Entry(int index, RepoOverride override) {
+            this.index = index;
+            this.override = override;
+        }
+
+        public int compareTo(Object o) {
+            int other = ((Entry)o).index;
+
+            return (index < other) ? (-1) : ((index == other) ? 0 : 1);
+        }
+    }
+}
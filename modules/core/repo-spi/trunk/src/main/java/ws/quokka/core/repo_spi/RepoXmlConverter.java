@@ -357,7 +357,6 @@ public class RepoXmlConverter {
                     converter = getConverter(RepoDependency.class);
 
                     RepoDependency dependency = (RepoDependency)converter.fromXml(dependencyEl);
-                    artifact.addDependency(dependency);
 
                     // Verify dependencies match the paths
                     for (Iterator j = dependency.getPathSpecs().iterator(); j.hasNext();) {
@@ -378,6 +377,9 @@ public class RepoXmlConverter {
                                 (path.isDescendDefault()) ? Boolean.TRUE : Boolean.FALSE,
                                 (path.isMandatoryDefault()) ? Boolean.TRUE : Boolean.FALSE));
                     }
+
+                    // Add after defaults are merged as the hash code of the dependency depends on them
+                    artifact.addDependency(dependency);
                 }
             }
 
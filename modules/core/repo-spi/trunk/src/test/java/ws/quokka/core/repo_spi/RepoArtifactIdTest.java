@@ -0,0 +1,87 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_spi;
+
+import ws.quokka.core.test.AbstractTest;
+import ws.quokka.core.version.Version;
+
+
+/**
+ *
+ */
+public class RepoArtifactIdTest extends AbstractTest {
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void testIntern() {
+        RepoArtifactId id = new RepoArtifactId("group", "name", "jar", "1.0");
+        RepoArtifactId canonical = id.intern();
+        assertTrue(canonical.isCanonical());
+        assertFalse(id.isCanonical());
+        assertEquals(id, canonical);
+        assertSame(canonical, new RepoArtifactId("group", "name", "jar", "1.0").intern());
+        assertSame(canonical, canonical.intern());
+    }
+
+    public void testVersionsAreInterned() {
+        Version version = new Version("1.0").intern();
+        assertSame(version, new Version("1.0").intern());
+        assertSame(version, version.intern());
+        assertNotSame(version, new Version("1.1").intern());
+        assertSame(version, new RepoArtifactId("group", "name", "jar", "1.0").intern().getVersion());
+        assertSame(version, new RepoArtifactId("group", "other", "jar", "1.0").intern().getVersion());
+    }
+
+    public void testCanonicalIdsCannotBeAnnotated() {
+        RepoArtifactId id = new RepoArtifactId("group", "name", "jar", "1.0");
+        id.getAnnotations().put("key", "value");
+
+        RepoArtifactId canonical = id.intern();
+        assertNull(canonical.getAnnotations().get("key"));
+
+        try {
+            canonical.getAnnotations().put("key", "value");
+            fail("Expected exception");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        // Clones may be annotated independently
+        RepoArtifactId clone = (RepoArtifactId)canonical.clone();
+        assertFalse(clone.isCanonical());
+        clone.getAnnotations().put("key", "value");
+        assertEquals("value", clone.getAnnotations().get("key"));
+        assertNull(canonical.getAnnotations().get("key"));
+    }
+
+    public void testUnversionedId() {
+        RepoArtifactId id = new RepoArtifactId("group", "name", "jar", "1.0");
+        RepoArtifactId unversioned = id.toUnversionedId();
+        assertNull(unversioned.getVersion());
+        assertSame(unversioned, new RepoArtifactId("group", "name", "jar", "2.0").toUnversionedId());
+        assertSame(unversioned, new RepoArtifactId("group", "name", "jar", (Version)null).toUnversionedId());
+    }
+
+    public void testCachedStrings() {
+        RepoArtifactId id = new RepoArtifactId("group", "name", "jar", "1.0");
+        assertEquals("group:name:jar:1.0", id.toShortString());
+        assertSame(id.toShortString(), id.toShortString());
+        assertEquals("group_name_jar_1.0", id.toPathString());
+        assertSame(id.toPathString(), id.toPathString());
+        assertEquals(id.hashCode(), ((RepoArtifactId)id.clone()).hashCode());
+    }
+}
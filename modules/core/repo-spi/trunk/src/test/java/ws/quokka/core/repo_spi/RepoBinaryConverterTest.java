@@ -0,0 +1,142 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_spi;
+
+import ws.quokka.core.bootstrap_util.QuokkaEntityResolver;
+import ws.quokka.core.test.AbstractTest;
+import ws.quokka.core.util.xml.XmlConverter;
+import ws.quokka.core.version.Version;
+import ws.quokka.core.version.VersionRangeUnion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ *
+ */
+public class RepoBinaryConverterTest extends AbstractTest {
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void testConvert() throws IOException {
+        RepoArtifact artifact = createArtifact();
+        RepoArtifact converted = roundTrip(artifact);
+        assertEquals(artifact.getId(), converted.getId());
+        assertEquals(artifact, converted);
+        assertEquals(artifact.toString(), converted.toString());
+    }
+
+    public void testConvertParsed() throws IOException {
+        XmlConverter converter = RepoXmlConverter.getXmlConverter();
+        String xml = converter.toXml(createArtifact(), "artifact", "quokka.ws/dtd/repository-0.2",
+                "http://quokka.ws/dtd/repository-0.2.dtd");
+
+        QuokkaEntityResolver resolver = new QuokkaEntityResolver();
+        resolver.addVersion("repository", new String[] { "0.2" });
+
+        RepoArtifact parsed = (RepoArtifact)converter.fromXml(RepoArtifact.class, xml, resolver);
+        RepoArtifact converted = roundTrip(parsed);
+        assertEquals(parsed, converted);
+
+        // Locations should be retained for error reporting
+        RepoDependency dependency = (RepoDependency)parsed.getDependencies().iterator().next();
+        RepoDependency convertedDependency = (RepoDependency)converted.getDependencies().iterator().next();
+        assertNotNull(dependency.getLocator());
+        assertEquals(dependency.getLocator().getLineNumber(), convertedDependency.getLocator().getLineNumber());
+        assertEquals(dependency.getLocator().getColumnNumber(), convertedDependency.getLocator().getColumnNumber());
+
+        // Path specs should refer back to their dependency
+        RepoPathSpec pathSpec = (RepoPathSpec)convertedDependency.getPathSpecs().iterator().next();
+        assertSame(convertedDependency, pathSpec.getDependency());
+    }
+
+    public void testDependencyOrderRetained() throws IOException {
+        RepoArtifact artifact = new RepoArtifact(new RepoArtifactId("group", "name", "jar", "1.0"));
+        List expected = new ArrayList();
+
+        for (int i = 0; i < 20; i++) {
+            RepoDependency dependency = new RepoDependency();
+            dependency.setId(new RepoArtifactId("group" + i, "name" + i, "jar", "1.0"));
+            dependency.addPathSpec(new RepoPathSpec("runtime", "runtime", null, Boolean.TRUE, Boolean.TRUE));
+            artifact.addDependency(dependency);
+            expected.add(dependency.getId());
+        }
+
+        List actual = new ArrayList();
+
+        for (Iterator i = roundTrip(artifact).getDependencies().iterator(); i.hasNext();) {
+            actual.add(((RepoDependency)i.next()).getId());
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    private RepoArtifact roundTrip(RepoArtifact artifact)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        RepoBinaryConverter.write(artifact, out);
+        out.close();
+
+        return RepoBinaryConverter.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private RepoArtifact createArtifact() {
+        RepoArtifact artifact = new RepoArtifact(new RepoArtifactId("group", "name", "type", new Version("version")));
+        artifact.setDescription("Some description");
+        artifact.addConflict(new RepoConflict(
+                new RepoArtifactId("originalgroup", "originalname", "originaltype", "1.1"), RepoConflict.RENAMED));
+        artifact.addConflict(new RepoConflict(
+                new RepoArtifactId("originalgroup.subgroup", "subgroup", "type1", (Version)null), RepoConflict.BUNDLED));
+        artifact.setTimestamp(new Date());
+        artifact.setStub(true);
+        artifact.addLicense(new RepoArtifactId("license.apache", "apache", "license", "2.0"));
+        artifact.setImportedFrom("Somewhere");
+
+        RepoDependency dependency = new RepoDependency();
+        dependency.setId(new RepoArtifactId("dgroup", "dname", "dtype", new Version("dversion")));
+        dependency.addPathSpec(new RepoPathSpec("runtime", "runtime", "some options", Boolean.TRUE, Boolean.TRUE));
+        artifact.addDependency(dependency);
+
+        Set paths = new HashSet();
+        paths.add("path1");
+        paths.add("path2");
+        artifact.addOverride(new RepoOverride(paths, "group1", "name1", "type", VersionRangeUnion.parse("1.0"),
+                Version.parse("2.0")));
+
+        RepoOverride override = new RepoOverride(Collections.singleton("path3"), "group2", "name2", "type2",
+                VersionRangeUnion.parse("[1.0,1.1]"), Version.parse("2.1"));
+        override.addWithPathSpec(new RepoPathSpec("!<crud(a,b)", false));
+        artifact.addOverride(override);
+
+        artifact.addPath(new RepoPath("runtime", "Runtime path", true, true));
+
+        return artifact;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_spi;
+
+import ws.quokka.core.test.AbstractTest;
+import ws.quokka.core.version.Version;
+import ws.quokka.core.version.VersionRangeUnion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ *
+ */
+public class RepoOverrideIndexTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private RepoOverride byType = override(null, null, "jar", null);
+    private RepoOverride byName = override("group1", "name1", null, "[1.0,1.0]");
+    private RepoOverride exact = override("group1", "name1", "jar", null);
+    private RepoOverride byGroup = override("group1", null, null, null);
+    private RepoOverride other = override("group2", "name2", "jar", null);
+    private RepoOverrideIndex index = new RepoOverrideIndex(Arrays.asList(
+                new RepoOverride[] { byType, byName, exact, byGroup, other }));
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public void testFirstMatchInDeclarationOrder() {
+        assertSame(byType, index.getFirstMatch(new RepoArtifactId("group1", "name1", "jar", "1.0")));
+        assertSame(byName, index.getFirstMatch(new RepoArtifactId("group1", "name1", "zip", "1.0")));
+        assertSame(byGroup, index.getFirstMatch(new RepoArtifactId("group1", "name1", "zip", "2.0")));
+        assertNull(index.getFirstMatch(new RepoArtifactId("group3", "name3", "zip", "1.0")));
+    }
+
+    public void testMatches() {
+        assertEquals(Arrays.asList(new RepoOverride[] { byType, byName, exact, byGroup }),
+            index.getMatches(new RepoArtifactId("group1", "name1", "jar", "1.0")));
+        assertEquals(Arrays.asList(new RepoOverride[] { byType, other }),
+            index.getMatches(new RepoArtifactId("group2", "name2", "jar", "1.0")));
+        assertEquals(Collections.EMPTY_LIST, index.getMatches(new RepoArtifactId("group3", "name3", "zip", "1.0")));
+    }
+
+    public void testMatchesLinearScan() {
+        List overrides = new ArrayList();
+
+        for (int i = 0; i < 50; i++) {
+            String group = ((i % 3) == 0) ? null : ("group" + (i % 5));
+            String name = ((i % 4) == 0) ? null : ("name" + (i % 7));
+            overrides.add(override(group, name, ((i % 2) == 0) ? null : "jar", null));
+        }
+
+        RepoOverrideIndex index = new RepoOverrideIndex(overrides);
+
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 7; j++) {
+                RepoArtifactId id = new RepoArtifactId("group" + i, "name" + j, ((i + j) % 2 == 0) ? "jar" : "zip",
+                        "1.0");
+                List expected = new ArrayList();
+
+                for (int k = 0; k < overrides.size(); k++) {
+                    RepoOverride override = (RepoOverride)overrides.get(k);
+
+                    if (override.matches(id)) {
+                        expected.add(override);
+                    }
+                }
+
+                assertEquals(expected, index.getMatches(id));
+                assertSame((expected.size() == 0) ? null : expected.get(0), index.getFirstMatch(id));
+            }
+        }
+    }
+
+    private RepoOverride override(String group, String name, String type, String version) {
+        return new RepoOverride(Collections.singleton("*"), group, name, type,
+            (version == null) ? null : VersionRangeUnion.parse(version), Version.parse("9.0"));
+    }
+}
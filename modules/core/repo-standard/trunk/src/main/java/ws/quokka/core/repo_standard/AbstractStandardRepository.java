@@ -17,12 +17,9 @@
 
 package ws.quokka.core.repo_standard;
 
-import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
-import org.apache.tools.ant.Target;
 import org.apache.tools.ant.input.InputRequest;
 import org.apache.tools.ant.input.MultipleChoiceInputRequest;
-import org.apache.tools.ant.taskdefs.Checksum;
 import org.apache.tools.ant.util.FileUtils;
 
 import ws.quokka.core.bootstrap_util.Assert;
@@ -41,7 +38,6 @@ import ws.quokka.core.util.Strings;
 import ws.quokka.core.util.xml.Document;
 
 import java.io.File;
-import java.io.IOException;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -63,18 +59,19 @@ public abstract class AbstractStandardRepository extends AbstractRepository {
     private List parents = new ArrayList();
     private boolean confirmImport;
     private Logger log;
+    private Project logProject;
     private boolean snapshots;
     private boolean installSnapshots;
     private boolean releases;
     private boolean installReleases;
     private List supports;
     private List installSupports;
+    private ParsedArtifactCache parsedCache;
+    private BlobStore blobStore;
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
     public void initialise() {
-        log = new ProjectLogger(getProject());
-
         hierarchical = getBoolean("hierarchical", true);
         confirmImport = getBoolean("confirmImport", false);
         snapshots = getBoolean("snapshots", false);
@@ -85,6 +82,23 @@ public abstract class AbstractStandardRepository extends AbstractRepository {
         installSupports = Strings.commaSepList(getProperty("installSupports", null));
         installSupports.addAll((installSupports.size() == 0) ? supports : Collections.EMPTY_LIST);
 
+        // Cache parsed repository files in binary form unless disabled by setting parsedCache to false
+        String cacheDir = getProperties().getProperty("q.cacheDir");
+        String parsedCacheDir = getProperty("parsedCache",
+                (cacheDir == null) ? null : normalise(new File(cacheDir + "/parsed-repo")).getPath());
+
+        if ((parsedCacheDir != null) && !parsedCacheDir.equals("false")) {
+            parsedCache = new ParsedArtifactCache(new File(parsedCacheDir));
+        }
+
+        // Keep artifacts in a content addressed store shared between repositories if configured. The store can
+        // be set for all repositories via q.repo.blobStore and disabled for a particular repository with "false".
+        String blobStoreDir = getProperty("blobStore", getProperty(null, "blobStore", false));
+
+        if ((blobStoreDir != null) && !blobStoreDir.equals("false")) {
+            blobStore = new BlobStore(normalise(new File(blobStoreDir)));
+        }
+
         // Initialise any parents
         List names = Strings.commaSepList(getProperty("parents", false));
 
@@ -97,7 +111,16 @@ public abstract class AbstractStandardRepository extends AbstractRepository {
         }
     }
 
-    public Logger log() {
+    /**
+     * Returns a logger for the factory's current project. The project can change if the repository outlives
+     * a build, for example when cached by a daemon.
+     */
+    public synchronized Logger log() {
+        if ((log == null) || (logProject != getProject())) {
+            logProject = getProject();
+            log = new ProjectLogger(logProject);
+        }
+
         return log;
     }
 
@@ -146,17 +169,43 @@ public abstract class AbstractStandardRepository extends AbstractRepository {
         return value;
     }
 
+    /**
+     * Returns the content addressed store used to hold artifacts, or null if artifacts are copied directly
+     */
+    protected BlobStore getBlobStore() {
+        return blobStore;
+    }
+
     protected FileUtils getFileUtils() {
         return FileUtils.getFileUtils();
     }
 
     protected void copy(File source, File destination, boolean overwrite, boolean preserveLastModified) {
-        try {
-            getProject().log("Copying " + source.getPath() + " to " + destination.getPath(), Project.MSG_DEBUG);
-            getFileUtils().copyFile(source, destination, null, overwrite, preserveLastModified);
-        } catch (IOException e) {
-            throw new BuildException(e);
+        if (!overwrite && destination.exists() && (destination.lastModified() >= source.lastModified())) {
+            return; // Up to date
+        }
+
+        if ((blobStore != null) && blobStore.put(source, destination)) {
+            getProject().log("Linked " + destination.getPath() + " to " + blobStore.getDir().getPath(),
+                Project.MSG_DEBUG);
+
+            return;
         }
+
+        // The checksum is calculated while copying so that generating it later doesn't require another read.
+        // The copy is renamed over the destination, as writing to it would write through any link to a blob.
+        getProject().log("Copying " + source.getPath() + " to " + destination.getPath(), Project.MSG_DEBUG);
+
+        IOUtils utils = new IOUtils();
+        utils.createDir(destination.getParentFile());
+
+        File temp = utils.createTempFile("copy", ".tmp", destination.getParentFile());
+        ChecksumService checksums = ChecksumService.getInstance();
+        String checksum = checksums.copy(source, temp, ChecksumService.MD5, preserveLastModified);
+        Assert.isTrue(!destination.exists() || destination.delete(), "Cannot delete: " + destination.getPath());
+        Assert.isTrue(temp.renameTo(destination),
+            "Could not rename " + temp.getPath() + " to " + destination.getPath());
+        checksums.put(destination, ChecksumService.MD5, checksum);
     }
 
     protected boolean confirmImport(RepoArtifactId id, Repository parent) {
@@ -174,7 +223,7 @@ public abstract class AbstractStandardRepository extends AbstractRepository {
     }
 
     protected void importArtifact(RepoArtifact artifact, File artifactFile, File repositoryFile, Repository parent) {
-        log.info("Importing artifact from " + parent.getName() + " to " + getName() + ": "
+        log().info("Importing artifact from " + parent.getName() + " to " + getName() + ": "
             + artifact.getId().toShortString());
 
         // Copy artifact
@@ -192,6 +241,10 @@ public abstract class AbstractStandardRepository extends AbstractRepository {
         Assert.isTrue(repositoryFile.getParentFile().exists() || repositoryFile.getParentFile().mkdirs(),
             "Unable to getOrCreate repository directory: " + repositoryFile.getParent());
         RepoXmlConverter.toXml(artifact, repositoryFile);
+
+        if (parsedCache != null) {
+            parsedCache.remove(repositoryFile); // Modification time may not change if rewritten quickly
+        }
     }
 
     protected void copyArtifact(RepoArtifact artifact, File artifactFile) {
@@ -202,12 +255,22 @@ public abstract class AbstractStandardRepository extends AbstractRepository {
     }
 
     protected RepoArtifact parse(RepoArtifactId id, File xml) {
-        QuokkaEntityResolver resolver = new QuokkaEntityResolver();
-        resolver.addVersion("repository", new String[] { "0.1", "0.2" });
+        RepoArtifact artifact = (parsedCache == null) ? null : parsedCache.get(xml);
+
+        if (artifact == null) {
+            QuokkaEntityResolver resolver = new QuokkaEntityResolver();
+            resolver.addVersion("repository", new String[] { "0.1", "0.2" });
+
+            artifact = (RepoArtifact)RepoXmlConverter.getXmlConverter().fromXml(RepoArtifact.class,
+                    Document.parse(xml, resolver).getRoot());
+
+            if (parsedCache != null) {
+                parsedCache.put(xml, artifact);
+            }
+        }
 
-        RepoArtifact artifact = (RepoArtifact)RepoXmlConverter.getXmlConverter().fromXml(RepoArtifact.class,
-                Document.parse(xml, resolver).getRoot());
         artifact.setId(id);
+        artifact.setRepositoryFile(xml);
 
         return artifact;
     }
@@ -223,19 +286,7 @@ public abstract class AbstractStandardRepository extends AbstractRepository {
     }
 
     private static String checksum(File file) {
-        Project project = new Project();
-        project.init();
-
-        Checksum checksum = new Checksum();
-        checksum.setProject(project);
-        checksum.setOwningTarget(new Target());
-        checksum.setFile(file);
-
-        String property = "checksum";
-        checksum.setProperty(property);
-        checksum.execute();
-
-        return project.getProperty(property);
+        return ChecksumService.getInstance().checksum(file);
     }
 
     protected File normalise(File file) {
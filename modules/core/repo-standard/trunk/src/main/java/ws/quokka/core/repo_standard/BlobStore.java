@@ -0,0 +1,156 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.repo_standard;
+
+import ws.quokka.core.bootstrap_util.Assert;
+import ws.quokka.core.bootstrap_util.IOUtils;
+
+import java.io.File;
+
+import java.lang.reflect.Method;
+
+
+/**
+ * BlobStore is a content addressed store of files, keyed by their SHA-256 checksum. Repositories configured with
+ * a store keep a single copy of each distinct artifact in the store and expose it at the location given by
+ * their layout as a hard link, so that the same artifact held by several repositories only occupies disk space
+ * once. Installing content that is already in the store only requires creating a link.
+ * <p/>
+ * Hard links are created via java.nio.file.Files when running on Java 7 or later. If links are not supported
+ * (earlier JVMs, or the store and the repository are on different file systems), repositories copy files
+ * instead.
+ * <p/>
+ * Files in the store are never written to once added, and files exposed via links are replaced rather than
+ * overwritten, so that modifying one repository never affects another. Blobs are not currently removed when
+ * the last link to them is deleted.
+ */
+public class BlobStore {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static Method toPath;
+    private static Method createLink;
+
+    static {
+        try {
+            Class path = Class.forName("java.nio.file.Path");
+            toPath = File.class.getMethod("toPath", new Class[0]);
+            createLink = Class.forName("java.nio.file.Files").getMethod("createLink", new Class[] { path, path });
+        } catch (Exception e) {
+            // Hard links are not supported prior to Java 7
+        }
+    }
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private File dir;
+    private IOUtils utils = new IOUtils();
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public BlobStore(File dir) {
+        this.dir = dir;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Returns the location of the blob with the given SHA-256 checksum, which may not exist
+     */
+    public File getBlob(String checksum) {
+        return new File(dir, checksum.substring(0, 2) + "/" + checksum.substring(2));
+    }
+
+    /**
+     * Adds the content of the source file to the store and makes it available at the destination
+     * @return true if the destination is linked to the store. If false, links are not supported and the
+     * destination is left untouched, so the caller should copy the file instead.
+     */
+    public boolean put(File source, File destination) {
+        ChecksumService checksums = ChecksumService.getInstance();
+        String checksum = checksums.checksum(source, ChecksumService.SHA256);
+        File blob = getBlob(checksum);
+        boolean created = false;
+
+        if (!blob.exists()) {
+            utils.createDir(blob.getParentFile());
+
+            File temp = utils.createTempFile("blob", ".tmp", blob.getParentFile());
+            checksums.copy(source, temp, ChecksumService.SHA256, true);
+
+            if (temp.renameTo(blob)) {
+                created = true;
+            } else {
+                // Another build may have added the same content concurrently
+                temp.delete();
+                Assert.isTrue(blob.exists(), "Could not rename " + temp.getPath() + " to " + blob.getPath());
+            }
+        }
+
+        utils.createDir(destination.getParentFile());
+
+        File link = new File(destination.getPath() + ".link");
+        link.delete();
+
+        if (link(link, blob)) {
+            Assert.isTrue(!destination.exists() || destination.delete(), "Cannot delete: " + destination.getPath());
+            Assert.isTrue(link.renameTo(destination), "Could not rename " + link.getPath() + " to " + destination);
+
+            return true;
+        }
+
+        if (created) {
+            blob.delete(); // Pointless keeping a copy that cannot be shared
+        }
+
+        return false;
+    }
+
+    /**
+     * Replaces the file with a link to a blob of the same content, adding the content to the store if required
+     */
+    public boolean add(File file) {
+        return put(file, file);
+    }
+
+    /**
+     * Returns true if hard links are supported by the JVM. They may still fail if the file system does not
+     * support them.
+     */
+    public static boolean isLinkSupported() {
+        return createLink != null;
+    }
+
+    private boolean link(File link, File existing) {
+        if (createLink == null) {
+            return false;
+        }
+
+        try {
+            Object linkPath = toPath.invoke(link, new Object[0]);
+            Object existingPath = toPath.invoke(existing, new Object[0]);
+            createLink.invoke(null, new Object[] { linkPath, existingPath });
+
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -64,6 +64,17 @@ public class BundledRepository extends FileRepository {
             expand.setDest(getRootDir());
             expand.setSrc(artifact.getLocalCopy());
             expand.execute();
+
+            if (getBlobStore() != null) {
+                // Share the extracted artifacts with other repositories using the same store
+                File[] files = getRootDir().listFiles();
+
+                for (int i = 0; (files != null) && (i < files.length); i++) {
+                    if (files[i].isFile()) {
+                        getBlobStore().add(files[i]);
+                    }
+                }
+            }
         }
     }
 
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.repo_standard;
+
+import org.apache.tools.ant.BuildException;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * ChecksumService calculates checksums of files, returning them as lower case hex strings (the same format as
+ * Ant's checksum task). Files are read via NIO channels, with message digests and buffers reused per thread.
+ * <p/>
+ * Checksums are cached by the absolute path of the file, and are only reused while the length and modification
+ * time of the file are unchanged. The copy methods calculate the checksum while the data is streamed, caching it
+ * for the destination so that it never needs to be read again.
+ */
+public class ChecksumService {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    public static final String MD5 = "MD5";
+    public static final String SHA256 = "SHA-256";
+    private static final int MAX_CACHED = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ChecksumService instance = new ChecksumService();
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private Map cache = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_CACHED;
+            }
+        };
+
+    private ThreadLocal digests = new ThreadLocal() {
+            protected Object initialValue() {
+                return new HashMap();
+            }
+        };
+
+    private ThreadLocal buffers = new ThreadLocal() {
+            protected Object initialValue() {
+                return ByteBuffer.allocate(BUFFER_SIZE);
+            }
+        };
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the service shared by all repositories
+     */
+    public static ChecksumService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the MD5 checksum of the file
+     */
+    public String checksum(File file) {
+        return checksum(file, MD5);
+    }
+
+    public String checksum(File file, String algorithm) {
+        String checksum = getCached(file, algorithm);
+
+        if (checksum != null) {
+            return checksum;
+        }
+
+        MessageDigest digest = getDigest(algorithm);
+        ByteBuffer buffer = (ByteBuffer)buffers.get();
+
+        try {
+            FileInputStream in = new FileInputStream(file);
+
+            try {
+                FileChannel channel = in.getChannel();
+                buffer.clear();
+
+                while (channel.read(buffer) != -1) {
+                    digest.update(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new BuildException("Unable to calculate checksum of " + file.getPath() + ": " + e.getMessage(), e);
+        }
+
+        checksum = new IOUtils().toHex(digest.digest());
+        put(file, algorithm, checksum);
+
+        return checksum;
+    }
+
+    /**
+     * Copies the source file to the destination, returning the checksum of the contents
+     * @param preserveLastModified if true, the destination will have the same modification time as the source
+     */
+    public String copy(File source, File destination, String algorithm, boolean preserveLastModified) {
+        String checksum;
+
+        try {
+            checksum = copy(new FileInputStream(source), destination, algorithm);
+        } catch (IOException e) {
+            throw new BuildException("Unable to copy " + source.getPath() + ": " + e.getMessage(), e);
+        }
+
+        if (preserveLastModified) {
+            destination.setLastModified(source.lastModified());
+            put(destination, algorithm, checksum); // Update the cached modification time
+        }
+
+        put(source, algorithm, checksum);
+
+        return checksum;
+    }
+
+    /**
+     * Copies the stream to the destination file and closes it, returning the checksum of the contents
+     */
+    public String copy(InputStream in, File destination, String algorithm) {
+        MessageDigest digest = getDigest(algorithm);
+        ByteBuffer buffer = (ByteBuffer)buffers.get();
+        byte[] bytes = buffer.array();
+
+        try {
+            try {
+                FileOutputStream out = new FileOutputStream(destination);
+
+                try {
+                    FileChannel channel = out.getChannel();
+
+                    for (int read = in.read(bytes); read != -1; read = in.read(bytes)) {
+                        digest.update(bytes, 0, read);
+                        buffer.clear();
+                        buffer.limit(read);
+
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new BuildException("Unable to write " + destination.getPath() + ": " + e.getMessage(), e);
+        }
+
+        String checksum = new IOUtils().toHex(digest.digest());
+        put(destination, algorithm, checksum);
+
+        return checksum;
+    }
+
+    /**
+     * Records the checksum of a file calculated elsewhere, such as when a file with a known checksum is renamed
+     */
+    public void put(File file, String algorithm, String checksum) {
+        synchronized (cache) {
+            cache.put(getKey(file, algorithm), new Entry(file.length(), file.lastModified(), checksum));
+        }
+    }
+
+    /**
+     * Discards all cached checksums
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private String getCached(File file, String algorithm) {
+        Entry entry;
+
+        synchronized (cache) {
+            entry = (Entry)cache.get(getKey(file, algorithm));
+        }
+
+        if ((entry != null) && (entry.length == file.length()) && (entry.lastModified == file.lastModified())) {
+            return entry.checksum;
+        }
+
+        return null;
+    }
+
+    private String getKey(File file, String algorithm) {
+        return algorithm + ":" + file.getAbsolutePath();
+    }
+
+    private MessageDigest getDigest(String algorithm) {
+        Map threadDigests = (Map)digests.get();
+        MessageDigest digest = (MessageDigest)threadDigests.get(algorithm);
+
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new BuildException(e);
+            }
+
+            threadDigests.put(algorithm, digest);
+        }
+
+        digest.reset();
+
+        return digest;
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    private static class Entry {
+        private long length;
+        private long lastModified;
+        private String checksum;
+
+        public Entry(long length, long lastModified, String checksum) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+}
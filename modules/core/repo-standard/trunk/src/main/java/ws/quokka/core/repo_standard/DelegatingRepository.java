@@ -19,6 +19,7 @@ package ws.quokka.core.repo_standard;
 
 import ws.quokka.core.bootstrap_util.Assert;
 import ws.quokka.core.repo_spi.AbstractRepository;
+import ws.quokka.core.repo_spi.BatchingRepository;
 import ws.quokka.core.repo_spi.RepoArtifact;
 import ws.quokka.core.repo_spi.RepoArtifactId;
 import ws.quokka.core.repo_spi.Repository;
@@ -37,7 +38,7 @@ import java.util.Set;
 /**
  *
  */
-public class DelegatingRepository extends AbstractRepository {
+public class DelegatingRepository extends AbstractRepository implements BatchingRepository {
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private List repositories = new ArrayList();
@@ -87,6 +88,26 @@ public class DelegatingRepository extends AbstractRepository {
         }
     }
 
+    public void startBatch() {
+        for (Iterator i = repositories.iterator(); i.hasNext();) {
+            Object repository = i.next();
+
+            if (repository instanceof BatchingRepository) {
+                ((BatchingRepository)repository).startBatch();
+            }
+        }
+    }
+
+    public void commitBatch() {
+        for (Iterator i = repositories.iterator(); i.hasNext();) {
+            Object repository = i.next();
+
+            if (repository instanceof BatchingRepository) {
+                ((BatchingRepository)repository).commitBatch();
+            }
+        }
+    }
+
     public void remove(RepoArtifactId artifactId) {
         throw new UnsupportedOperationException("Remove is not supported for the DelegatingRepository");
     }
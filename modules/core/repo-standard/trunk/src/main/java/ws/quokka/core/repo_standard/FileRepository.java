@@ -164,7 +164,7 @@ public class FileRepository extends AbstractStandardRepository {
                     } else {
                         String type = tokens[1];
                         autoRegisterType(type, getExtension(file.getName()));
-                        ids.add(new RepoArtifactId(group, tokens[0], type, version));
+                        ids.add(new RepoArtifactId(group, tokens[0], type, version).intern());
                     }
                 } else {
                     log().verbose("Skipping file as it is not a valid artifact: " + file.getPath());
@@ -276,7 +276,7 @@ public class FileRepository extends AbstractStandardRepository {
                 String type = tokens[3];
                 autoRegisterType(type, getExtension(file.getName()));
 
-                RepoArtifactId id = new RepoArtifactId(tokens[0], tokens[2], type, tokens[1]);
+                RepoArtifactId id = new RepoArtifactId(tokens[0], tokens[2], type, tokens[1]).intern();
                 ids.add(id);
             } else {
                 log().verbose("Skipping file as it is not a valid artifact: " + file.getPath());
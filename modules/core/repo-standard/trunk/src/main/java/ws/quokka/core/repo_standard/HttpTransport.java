@@ -0,0 +1,206 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.repo_standard;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.util.Base64Converter;
+
+import ws.quokka.core.bootstrap_util.Assert;
+import ws.quokka.core.bootstrap_util.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import java.util.Locale;
+import java.util.Properties;
+
+
+/**
+ * HttpTransport retrieves files over HTTP for {@link UrlRepository}. Each file is retrieved with a single request,
+ * with the status code distinguishing missing files from other failures. Responses are always read to the end and
+ * closed so that the JVM can keep the connection alive and reuse it for the next request to the same host.
+ * <p/>
+ * Conditional requests are supported by saving the validators (ETag and Last-Modified) of a response alongside
+ * the destination file. If the server then reports that the file has not been modified, the existing copy is
+ * left untouched.
+ */
+public class HttpTransport {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    public static final int OK = 0;
+    public static final int NOT_MODIFIED = 1;
+    public static final int NOT_FOUND = 2;
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private String authorization;
+    private IOUtils utils = new IOUtils();
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public HttpTransport(String user, String password) {
+        if ((user != null) || (password != null)) {
+            authorization = "Basic " + new Base64Converter().encode((user + ":" + password).getBytes());
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true if the url given can be retrieved by this transport
+     */
+    public static boolean supports(URL url) {
+        String protocol = url.getProtocol().toLowerCase(Locale.US);
+
+        return protocol.equals("http") || protocol.equals("https");
+    }
+
+    /**
+     * Retrieves the url to the destination given. The destination is only replaced once the file has been
+     * retrieved in full.
+     * @param conditional if true, the request is conditional on the validators saved by a previous conditional
+     *                    request for the same destination, and the validators of the response are saved for next time
+     * @return {@link #OK} if the file was retrieved, {@link #NOT_MODIFIED} if the existing destination is still
+     * current, or {@link #NOT_FOUND} if the file does not exist. Any other response is reported as an exception.
+     */
+    public int get(URL url, File destination, boolean conditional) {
+        Assert.isTrue(supports(url), "Unsupported protocol: " + url.toString());
+
+        File validators = getValidatorsFile(destination);
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+            connection.setUseCaches(false);
+
+            if (authorization != null) {
+                connection.setRequestProperty("Authorization", authorization);
+            }
+
+            if (conditional && destination.exists() && validators.exists()) {
+                Properties previous = utils.loadProperties(validators);
+                setHeader(connection, "If-None-Match", previous.getProperty(ETAG));
+                setHeader(connection, "If-Modified-Since", previous.getProperty(LAST_MODIFIED));
+            }
+
+            int status = connection.getResponseCode();
+
+            if (status == HttpURLConnection.HTTP_OK) {
+                // Download to a file unique to this request, so that concurrent requests cannot collide
+                utils.createDir(destination.getParentFile());
+
+                File temp = utils.createTempFile("download", ".part", destination.getParentFile());
+
+                try {
+                    // Calculate the checksum while downloading as it is typically required afterwards
+                    ChecksumService checksums = ChecksumService.getInstance();
+                    String checksum = checksums.copy(connection.getInputStream(), temp, ChecksumService.MD5);
+                    rename(temp, destination);
+                    checksums.put(destination, ChecksumService.MD5, checksum);
+                } finally {
+                    temp.delete(); // Only exists if the download failed
+                }
+
+                if (conditional) {
+                    saveValidators(connection, validators);
+                }
+
+                return OK;
+            }
+
+            consume((status >= 400) ? connection.getErrorStream() : connection.getInputStream());
+
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return NOT_MODIFIED;
+            } else if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return NOT_FOUND;
+            }
+
+            throw new BuildException("Unable to get " + url.toString() + ": " + status + " "
+                + connection.getResponseMessage());
+        } catch (IOException e) {
+            throw new BuildException("Unable to get " + url.toString() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private File getValidatorsFile(File destination) {
+        return new File(destination.getPath() + ".validators");
+    }
+
+    private void saveValidators(HttpURLConnection connection, File validators) {
+        Properties properties = new Properties();
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+
+        if (etag != null) {
+            properties.setProperty(ETAG, etag);
+        }
+
+        if (lastModified != null) {
+            properties.setProperty(LAST_MODIFIED, lastModified);
+        }
+
+        if (properties.size() == 0) {
+            validators.delete();
+        } else {
+            File temp = utils.createTempFile("validators", ".tmp", validators.getParentFile());
+
+            try {
+                utils.saveProperties(temp, properties);
+                rename(temp, validators);
+            } finally {
+                temp.delete();
+            }
+        }
+    }
+
+    private void rename(File source, File destination) {
+        destination.delete();
+        Assert.isTrue(source.renameTo(destination),
+            "Could not rename " + source.getPath() + " to " + destination.getPath());
+    }
+
+    private void setHeader(HttpURLConnection connection, String header, String value) {
+        if (value != null) {
+            connection.setRequestProperty(header, value);
+        }
+    }
+
+    /**
+     * Reads the stream to the end and closes it, allowing the underlying connection to be reused
+     */
+    private void consume(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+
+        try {
+            byte[] buffer = new byte[4096];
+
+            while (in.read(buffer) != -1) {
+                ;
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
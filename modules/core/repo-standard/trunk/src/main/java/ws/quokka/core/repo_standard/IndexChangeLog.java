@@ -0,0 +1,221 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.repo_standard;
+
+import ws.quokka.core.bootstrap_util.Assert;
+import ws.quokka.core.bootstrap_util.IOUtils;
+
+import java.io.File;
+
+import java.util.Iterator;
+import java.util.Properties;
+
+
+/**
+ * IndexChangeLog is an append-only, numbered log of the changes made to a repository index. It is published by
+ * {@link IndexedRepository} alongside the full index archive. A {@link UrlRepository} holding an earlier
+ * revision of the index can fetch just the changes made since, rather than the whole archive. The archive
+ * itself is only rewritten periodically, so clients fetching it must then apply the changes made after it.
+ * <p/>
+ * The log is stored in the directory containing the archive:
+ * <ul>
+ * <li>_index.revision holds the current revision, the base revision and the revision of the archive. The log
+ * contains the changes from base + 1 to the current revision inclusive. Clients with a revision earlier than
+ * the base must fetch the full archive.</li>
+ * <li>_index-changes/&lt;revision&gt;.properties holds the files of the index that changed at that revision.
+ * Each key is "put:" or "delete:" followed by a path relative to the index root, with the content of the
+ * file as the value of puts.</li>
+ * </ul>
+ * Once the log exceeds its maximum size, the oldest changes are compacted away by advancing the base. Changes
+ * made after the archive are always retained. Applying a change is idempotent, so clients may safely apply a
+ * change more than once.
+ */
+public class IndexChangeLog {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    public static final String REVISION_FILE = "_index.revision";
+    public static final String CHANGES_DIR = "_index-changes";
+    public static final String REVISION = "revision";
+    public static final String BASE = "base";
+    public static final String ARCHIVE = "archive";
+    private static final String PUT = "put:";
+    private static final String DELETE = "delete:";
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private File dir;
+    private int maxChanges;
+    private long revision;
+    private long base;
+    private long archive;
+    private IOUtils utils = new IOUtils();
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * @param dir the directory containing the index archive
+     * @param maxChanges the maximum number of changes to retain before compacting the log
+     */
+    public IndexChangeLog(File dir, int maxChanges) {
+        this.dir = dir;
+        this.maxChanges = maxChanges;
+
+        File revisionFile = new File(dir, REVISION_FILE);
+
+        if (revisionFile.exists()) {
+            Properties properties = utils.loadProperties(revisionFile);
+            revision = getRevision(properties);
+            base = getBase(properties);
+            archive = getArchive(properties);
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public long getBase() {
+        return base;
+    }
+
+    /**
+     * Returns the revision of the index contained in the archive
+     */
+    public long getArchive() {
+        return archive;
+    }
+
+    /**
+     * Marks the archive as containing the current revision, allowing earlier changes to be compacted
+     */
+    public void archived() {
+        archive = revision;
+        compact();
+    }
+
+    /**
+     * Records the current state of the files given as the next revision. Files that no longer exist are
+     * recorded as deleted.
+     * @param indexRoot the root directory of the index, which must contain the files
+     */
+    public void record(File indexRoot, File[] files) {
+        Properties change = new Properties();
+        String root = indexRoot.getAbsolutePath();
+
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            String path = file.getAbsolutePath();
+            Assert.isTrue(path.startsWith(root + File.separator), file.getPath() + " is not within " + root);
+            path = path.substring(root.length() + 1).replace(File.separatorChar, '/');
+
+            if (file.exists()) {
+                change.setProperty(PUT + path, utils.fileToString(file, "UTF8"));
+            } else {
+                change.setProperty(DELETE + path, "");
+            }
+        }
+
+        revision++;
+        utils.createDir(new File(dir, CHANGES_DIR));
+        utils.saveProperties(new File(dir, getChangePath(revision)), change);
+        compact();
+    }
+
+    private void compact() {
+        while (((revision - base) > maxChanges) && (base < archive)) {
+            base++;
+            new File(dir, getChangePath(base)).delete();
+        }
+    }
+
+    /**
+     * Discards all recorded changes, so that clients must fetch the full archive to reach the next revision
+     */
+    public void reset() {
+        revision++;
+        base = revision;
+        archive = revision;
+
+        File[] changes = new File(dir, CHANGES_DIR).listFiles();
+
+        for (int i = 0; (changes != null) && (i < changes.length); i++) {
+            changes[i].delete();
+        }
+    }
+
+    /**
+     * Publishes the current revision. This should be called once the change has been recorded and any rewrite
+     * of the archive is complete, so that clients never see a revision that is not yet available.
+     */
+    public void commit() {
+        Properties properties = new Properties();
+        properties.setProperty(REVISION, Long.toString(revision));
+        properties.setProperty(BASE, Long.toString(base));
+        properties.setProperty(ARCHIVE, Long.toString(archive));
+        utils.saveProperties(new File(dir, REVISION_FILE), properties);
+    }
+
+    /**
+     * Returns the path of the change for the given revision, relative to the directory containing the archive
+     */
+    public static String getChangePath(long revision) {
+        return CHANGES_DIR + "/" + revision + ".properties";
+    }
+
+    public static long getRevision(Properties properties) {
+        return Long.parseLong(properties.getProperty(REVISION, "0"));
+    }
+
+    public static long getBase(Properties properties) {
+        return Long.parseLong(properties.getProperty(BASE, "0"));
+    }
+
+    /**
+     * Returns the revision of the archive, which defaults to the current revision as earlier logs rewrote the
+     * archive on every change
+     */
+    public static long getArchive(Properties properties) {
+        return Long.parseLong(properties.getProperty(ARCHIVE, properties.getProperty(REVISION, "0")));
+    }
+
+    /**
+     * Applies a change loaded from a change file to the expanded index given
+     */
+    public static void apply(Properties change, File indexRoot) {
+        IOUtils utils = new IOUtils();
+
+        for (Iterator i = change.keySet().iterator(); i.hasNext();) {
+            String key = (String)i.next();
+            boolean put = key.startsWith(PUT);
+            Assert.isTrue(put || key.startsWith(DELETE), "Invalid index change: " + key);
+
+            String path = key.substring(put ? PUT.length() : DELETE.length());
+            Assert.isTrue(!path.startsWith("/") && (path.indexOf("..") == -1), "Invalid index change path: " + path);
+
+            File file = new File(indexRoot, path);
+
+            if (put) {
+                utils.createDir(file.getParentFile());
+                utils.stringToFile(change.getProperty(key), file, "UTF8");
+            } else {
+                Assert.isTrue(!file.exists() || file.delete(), "Cannot delete: " + file.getPath());
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 
 package ws.quokka.core.repo_standard;
 
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Delete;
 import org.apache.tools.ant.taskdefs.Tar;
 import org.apache.tools.ant.util.FileUtils;
@@ -25,14 +26,19 @@ import ws.quokka.core.bootstrap_util.Assert;
 import ws.quokka.core.bootstrap_util.Logger;
 import ws.quokka.core.bootstrap_util.ProjectLogger;
 import ws.quokka.core.repo_spi.AbstractRepository;
+import ws.quokka.core.repo_spi.BatchingRepository;
 import ws.quokka.core.repo_spi.RepoArtifact;
 import ws.quokka.core.repo_spi.RepoArtifactId;
 import ws.quokka.core.repo_spi.Repository;
 
 import java.io.File;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -41,20 +47,36 @@ import java.util.Iterator;
  * Note that the index itself if never queries via this repository - it is just maintained to be a mirror
  * of the underlying cache. It's intial purpose is to provide an index that be uploaded for use
  * via UrlRepositories.
+ * <p/>
+ * Each install or remove is appended to an {@link IndexChangeLog} published alongside the archive, allowing
+ * UrlRepositories to update their copy of the index incrementally. The archive itself is only rewritten once
+ * 'indexCompaction' changes (100 by default) have accumulated since it was last written. The log retains the most
+ * recent 'indexChanges' changes (500 by default).
+ * <p/>
+ * UrlRepositories that fetch the archive apply the changes made since it was written, so they always see the
+ * current index. However, clients that predate the log only read the archive and will see an index that is up to
+ * 'indexCompaction' changes old. Repositories that must serve such clients should set 'indexCompaction' to 1, which
+ * rewrites the archive on every change.
+ * <p/>
+ * Installs and removes made between {@link #startBatch()} and {@link #commitBatch()} are published as a single
+ * change. Batches are also forwarded by repositories wrapping this one, such as {@link DelegatingRepository}.
  */
-public class IndexedRepository extends AbstractRepository {
+public class IndexedRepository extends AbstractRepository implements BatchingRepository {
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     private Repository repository;
     private ChecksumRepository indexRepository;
     private File indexRoot;
+    private IndexChangeLog changeLog;
+    private int compaction;
+    private int batchDepth;
+    private Set pending = new LinkedHashSet();
     private Logger log;
+    private Project logProject;
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
     public void initialise() {
-        log = new ProjectLogger(getFactory().getProject());
-
         // Allow either direct instantiation or configuration via properties
         if (repository == null) {
             String root = getFactory().getProperties().getProperty(prefix() + "root");
@@ -78,6 +100,22 @@ public class IndexedRepository extends AbstractRepository {
             getFactory().getProperties().put("q.repo." + id + ".url", url);
             indexRepository = (ChecksumRepository)getFactory().getOrCreate(id, true);
         }
+
+        String maxChanges = getFactory().getProperties().getProperty(prefix() + "indexChanges", "500");
+        changeLog = new IndexChangeLog(indexRoot.getParentFile(), Integer.parseInt(maxChanges));
+        compaction = Integer.parseInt(getFactory().getProperties().getProperty(prefix() + "indexCompaction", "100"));
+    }
+
+    /**
+     * Returns a logger for the factory's current project, which can change if the repository outlives a build
+     */
+    private synchronized Logger log() {
+        if ((log == null) || (logProject != getFactory().getProject())) {
+            logProject = getFactory().getProject();
+            log = new ProjectLogger(logProject);
+        }
+
+        return log;
     }
 
     public void setIndexRoot(File indexRoot) {
@@ -106,7 +144,60 @@ public class IndexedRepository extends AbstractRepository {
 
     public void install(RepoArtifact artifact) {
         indexRepository.install(artifact);
-        archiveIndex();
+        changed(artifact.getId());
+    }
+
+    /**
+     * Defers publishing changes to the index until the matching call to {@link #commitBatch()}. Batches may
+     * be nested, in which case the changes are published when the outermost batch is committed.
+     */
+    public synchronized void startBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Publishes the changes made since the matching call to {@link #startBatch()}
+     */
+    public synchronized void commitBatch() {
+        Assert.isTrue(batchDepth > 0, "commitBatch called without a matching startBatch");
+        batchDepth--;
+
+        if (batchDepth == 0) {
+            commitIndex();
+        }
+    }
+
+    private synchronized void changed(RepoArtifactId id) {
+        pending.add(id);
+
+        if (batchDepth == 0) {
+            commitIndex();
+        }
+    }
+
+    private void commitIndex() {
+        if (pending.size() == 0) {
+            return;
+        }
+
+        List files = new ArrayList();
+
+        for (Iterator i = pending.iterator(); i.hasNext();) {
+            RepoArtifactId id = (RepoArtifactId)i.next();
+            files.add(indexRepository.getArtifactFile(id));
+            files.add(indexRepository.getRepositoryFile(id));
+        }
+
+        pending.clear();
+        changeLog.record(indexRoot, (File[])files.toArray(new File[files.size()]));
+
+        File archive = new File(indexRoot.getParentFile(), "_index.tar.bz2");
+
+        if (!archive.exists() || ((changeLog.getRevision() - changeLog.getArchive()) >= compaction)) {
+            archiveIndex();
+        }
+
+        changeLog.commit();
     }
 
     private void archiveIndex() {
@@ -126,11 +217,13 @@ public class IndexedRepository extends AbstractRepository {
         File out = new File(indexRoot.getParentFile(), "_index.tar.bz2");
         Assert.isTrue(!out.exists() || out.delete(), "Cannot delete: " + out.getPath());
         Assert.isTrue(temp.renameTo(out), "Cannot rename " + temp.getPath());
+
+        changeLog.archived();
     }
 
     public void remove(RepoArtifactId artifactId) {
         indexRepository.remove(artifactId);
-        archiveIndex();
+        changed(artifactId);
     }
 
     public Collection listArtifactIds(boolean includeReferenced) {
@@ -153,12 +246,13 @@ public class IndexedRepository extends AbstractRepository {
         return repository.listArtifactIds(group, name, type, includeReferenced);
     }
 
-    public void rebuildCaches() {
-        log.info("Rebuilding index for '" + getName() + "' repository");
+    public synchronized void rebuildCaches() {
+        log().info("Rebuilding index for '" + getName() + "' repository");
 
         Delete delete = (Delete)getFactory().getProject().createTask("delete");
         delete.setDir(indexRoot);
         delete.execute();
+        changeLog.reset();
 
         for (Iterator i = repository.listArtifactIds(false).iterator(); i.hasNext();) {
             RepoArtifactId id = (RepoArtifactId)i.next();
@@ -166,6 +260,8 @@ public class IndexedRepository extends AbstractRepository {
             indexRepository.install(repoArtifact, true);
         }
 
+        pending.clear(); // Included in the rebuilt archive
         archiveIndex();
+        changeLog.commit();
     }
 }
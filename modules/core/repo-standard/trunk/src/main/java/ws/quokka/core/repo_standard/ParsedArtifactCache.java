@@ -0,0 +1,140 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ws.quokka.core.repo_standard;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.repo_spi.RepoArtifact;
+import ws.quokka.core.repo_spi.RepoBinaryConverter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+
+/**
+ * ParsedArtifactCache stores parsed repository files on disk in binary form, allowing subsequent
+ * builds to skip XML parsing. Entries are keyed by the absolute path of the repository file and
+ * are only used if the size and modification time of the file are unchanged.
+ * <p/>
+ * The cache is purely an optimisation: any problem reading or writing an entry is treated as a miss.
+ * Entries are written to a temporary file and renamed so that concurrent builds never see partial entries.
+ */
+public class ParsedArtifactCache {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private File dir;
+    private IOUtils utils = new IOUtils();
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public ParsedArtifactCache(File dir) {
+        this.dir = dir;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the cached artifact for the repository file given, or null if there is no valid entry
+     */
+    public RepoArtifact get(File file) {
+        File entry = getEntry(file);
+
+        if (!entry.exists()) {
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+
+            try {
+                if ((in.readInt() != RepoBinaryConverter.FORMAT_VERSION) || !in.readUTF().equals(getKey(file))
+                        || (in.readLong() != file.length()) || (in.readLong() != file.lastModified())) {
+                    return null;
+                }
+
+                return RepoBinaryConverter.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null; // Corrupt entry
+        }
+    }
+
+    /**
+     * Stores the artifact parsed from the repository file given
+     */
+    public void put(File file, RepoArtifact artifact) {
+        File entry = getEntry(file);
+        File temp = null;
+
+        try {
+            if (!dir.exists() && !dir.mkdirs()) {
+                return;
+            }
+
+            temp = File.createTempFile(entry.getName(), ".tmp", dir);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+            try {
+                out.writeInt(RepoBinaryConverter.FORMAT_VERSION);
+                out.writeUTF(getKey(file));
+                out.writeLong(file.length());
+                out.writeLong(file.lastModified());
+                RepoBinaryConverter.write(artifact, out);
+            } finally {
+                out.close();
+            }
+
+            entry.delete();
+
+            if (temp.renameTo(entry)) {
+                temp = null;
+            }
+        } catch (IOException e) {
+            // Ignore, the artifact just won't be cached
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes any entry for the repository file given
+     */
+    public void remove(File file) {
+        getEntry(file).delete();
+    }
+
+    private String getKey(File file) {
+        return file.getAbsolutePath();
+    }
+
+    private File getEntry(File file) {
+        return new File(dir, utils.md5String(getKey(file).getBytes()) + ".bin");
+    }
+}
@@ -20,7 +20,6 @@ package ws.quokka.core.repo_standard;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.taskdefs.Delete;
 import org.apache.tools.ant.taskdefs.Untar;
-import org.apache.tools.ant.util.Base64Converter;
 
 import ws.quokka.core.bootstrap_util.Assert;
 import ws.quokka.core.bootstrap_util.IOUtils;
@@ -31,19 +30,25 @@ import ws.quokka.core.repo_spi.Repository;
 import ws.quokka.core.repo_spi.UnresolvedArtifactException;
 
 import java.io.File;
-import java.io.IOException;
 
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
 
 
 /**
- *
+ * UrlRepository retrieves artifacts from a remote repository. HTTP urls are retrieved via {@link HttpTransport},
+ * which reuses connections and revalidates the index and repository files with conditional requests. Other
+ * protocols are retrieved via Ant's get task.
+ * <p/>
+ * If the repository publishes an {@link IndexChangeLog}, an expired index is brought up to date by applying
+ * the changes since the revision held locally. The full archive is only fetched if the changes are no longer
+ * available, and is then brought up to date by applying the changes made since it was written.
  */
 public class UrlRepository extends AbstractStandardRepository {
     //~ Instance fields ------------------------------------------------------------------------------------------------
@@ -57,6 +62,9 @@ public class UrlRepository extends AbstractStandardRepository {
     private long indexExpiry;
     private ChecksumRepository indexRepository;
     private boolean indexed;
+    private HttpTransport transport;
+    private File metadata;
+    private final Map locks = new HashMap(); // Relative path -> lock for cached repository files
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
@@ -74,6 +82,13 @@ public class UrlRepository extends AbstractStandardRepository {
         user = getProperty("user", false);
         password = getProperty("password", false);
         indexed = getBoolean("indexed", true);
+        transport = new HttpTransport(user, password);
+
+        Object cacheDir = getProperties().get("q.cacheDir");
+
+        if (cacheDir != null) {
+            metadata = normalise(new File(getProperty("metadata", cacheDir + "/url-repo/" + getName() + "-metadata")));
+        }
 
         if (indexed) {
             String defaultIndex = getProperties().get("q.cacheDir") + "/index-repo/" + getName() + "-index";
@@ -149,6 +164,14 @@ public class UrlRepository extends AbstractStandardRepository {
     }
 
     protected boolean getRemoteFile(String relativePath, File destination) {
+        return getRemoteFile(relativePath, destination, false) != HttpTransport.NOT_FOUND;
+    }
+
+    /**
+     * Retrieves a remote file, returning one of the {@link HttpTransport} status codes. Conditional requests
+     * are only supported for HTTP urls, other protocols always retrieve the file.
+     */
+    protected int getRemoteFile(String relativePath, File destination, boolean conditional) {
         URL url;
 
         try {
@@ -158,48 +181,19 @@ public class UrlRepository extends AbstractStandardRepository {
             throw new BuildException(e);
         }
 
+        if (HttpTransport.supports(url)) {
+            return transport.get(url, destination, conditional);
+        }
+
         try {
             IOUtils utils = new IOUtils();
             utils.createDir(destination.getParentFile());
             utils.download(getProject(), url, user, password, destination);
         } catch (Exception e) {
-            if (notFound(url)) {
-                return false;
-            } else {
-                throw new BuildException("Unable to get " + url.toString() + ": " + e.getMessage(), e);
-            }
-        }
-
-        return true;
-    }
-
-    /**
-     * Tries to work out if the error is because the url is not found versus other errors.
-     * Currently only supports HTTP.
-     * <p/>
-     * TODO: Reimplement get so that reconnection isn't required to check the not found case.
-     */
-    protected boolean notFound(URL url) {
-        if (!url.getProtocol().toLowerCase(Locale.US).equals("http")) {
-            return false;
+            throw new BuildException("Unable to get " + url.toString() + ": " + e.getMessage(), e);
         }
 
-        try {
-            HttpURLConnection connection = (HttpURLConnection)url.openConnection();
-
-            try {
-                if ((user != null) || (password != null)) {
-                    String encoding = new Base64Converter().encode((user + ":" + password).getBytes());
-                    connection.setRequestProperty("Authorization", "Basic " + encoding);
-                }
-
-                return connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND;
-            } finally {
-                connection.disconnect();
-            }
-        } catch (IOException e) {
-            return false;
-        }
+        return HttpTransport.OK;
     }
 
     public void install(RepoArtifact artifact) {
@@ -226,32 +220,131 @@ public class UrlRepository extends AbstractStandardRepository {
             return;
         }
 
-        boolean available = getRemoteIndex();
+        Properties remoteRevision = getRemoteRevision();
 
-        if (!available && !exists) {
+        if (exists && (remoteRevision != null) && updateIndexIncrementally(remoteRevision)) {
+            indexArchive.setLastModified(System.currentTimeMillis()); // Restart the expiry period
+
+            return;
+        }
+
+        int status = getRemoteIndex();
+
+        if ((status == HttpTransport.NOT_FOUND) && !exists) {
             throw new UnsupportedOperationException(); // Not an indexed repository
         }
 
-        if (available) {
+        if ((status == HttpTransport.OK) || ((status == HttpTransport.NOT_MODIFIED) && !indexExpanded.exists())) {
             extractIndex();
+            saveArchiveRevision(remoteRevision);
+        }
+
+        if ((remoteRevision != null) && (status != HttpTransport.NOT_FOUND)) {
+            updateIndexIncrementally(remoteRevision); // Apply the changes made since the archive was written
+        }
+
+        if (status == HttpTransport.NOT_MODIFIED) {
+            log().verbose("Repository index for '" + getName() + "' is up to date");
+            indexArchive.setLastModified(System.currentTimeMillis()); // Restart the expiry period
+        }
+    }
+
+    /**
+     * Brings the expanded index up to date by applying the changes published since the local revision.
+     * Returns false if the changes are not available, in which case the full archive must be fetched.
+     */
+    private boolean updateIndexIncrementally(Properties remoteRevision) {
+        File revisionFile = new File(index, IndexChangeLog.REVISION_FILE);
+
+        if (!revisionFile.exists() || !indexExpanded.exists()) {
+            return false;
+        }
+
+        IOUtils utils = new IOUtils();
+        long local = IndexChangeLog.getRevision(utils.loadProperties(revisionFile));
+        long revision = IndexChangeLog.getRevision(remoteRevision);
+
+        if ((local < IndexChangeLog.getBase(remoteRevision)) || (local > revision)) {
+            return false; // Compacted, or the index has been rebuilt
+        }
+
+        File change = new File(index, "_index-change.properties");
+
+        try {
+            for (long i = local + 1; i <= revision; i++) {
+                if (getRemoteFile(IndexChangeLog.getChangePath(i), change, false) == HttpTransport.NOT_FOUND) {
+                    return false; // Compacted since the revision was fetched
+                }
+
+                IndexChangeLog.apply(utils.loadProperties(change), indexExpanded);
+                saveRevision(i);
+            }
+        } catch (BuildException e) {
+            log().debug("Unable to update index for '" + getName() + "' incrementally: " + e.getMessage());
+
+            return false;
+        } finally {
+            change.delete();
+        }
+
+        if (revision > local) {
+            log().verbose("Applied " + (revision - local) + " change(s) to the repository index for '" + getName()
+                + "'");
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the revision published by the remote repository, or null if it does not publish a change log
+     */
+    private Properties getRemoteRevision() {
+        File revisionFile = new File(index, IndexChangeLog.REVISION_FILE + ".remote");
+
+        try {
+            if (getRemoteFile(IndexChangeLog.REVISION_FILE, revisionFile, false) == HttpTransport.OK) {
+                return new IOUtils().loadProperties(revisionFile);
+            }
+        } catch (Exception e) {
+            log().debug("Unable to get index revision for '" + getName() + "': " + e.getMessage());
+        } finally {
+            revisionFile.delete();
         }
+
+        return null;
     }
 
-    private boolean getRemoteIndex() {
-        boolean available;
+    /**
+     * Records the revision of the archive that has just been extracted
+     */
+    private void saveArchiveRevision(Properties remoteRevision) {
+        if (remoteRevision == null) {
+            new File(index, IndexChangeLog.REVISION_FILE).delete();
+        } else {
+            saveRevision(IndexChangeLog.getArchive(remoteRevision));
+        }
+    }
+
+    private void saveRevision(long revision) {
+        Properties properties = new Properties();
+        properties.setProperty(IndexChangeLog.REVISION, Long.toString(revision));
+        new IOUtils().saveProperties(new File(index, IndexChangeLog.REVISION_FILE), properties);
+    }
 
+    private int getRemoteIndex() {
         try {
             String indexName = "_index.tar.bz2";
             log().info("Attempting to download repository index for '" + getName() + "' from " + url.toString()
                 + indexName);
-            available = getRemoteFile(indexName, indexArchive); // Ant's get uses temp file internally, so is safe
+
+            // Both transports download to a temporary file, so the existing index is safe
+            return getRemoteFile(indexName, indexArchive, true);
         } catch (Exception e) {
             // Ignore ... there may not be an index, or we might be off line
             log().debug("Unable to get index for '" + getName() + "': " + e.getMessage());
-            available = false;
-        }
 
-        return available;
+            return HttpTransport.NOT_FOUND;
+        }
     }
 
     protected void extractIndex() {
@@ -289,6 +382,10 @@ public class UrlRepository extends AbstractStandardRepository {
     }
 
     protected RepoArtifact getRemoteRepositoryFile(RepoArtifactId id) {
+        if ((metadata != null) && HttpTransport.supports(url)) {
+            return getCachedRepositoryFile(id);
+        }
+
         File repositoryFile = new IOUtils().createTempFile(id.toPathString(), "_repository.xml");
 
         try {
@@ -302,6 +399,40 @@ public class UrlRepository extends AbstractStandardRepository {
         return null;
     }
 
+    /**
+     * Revalidates a locally cached copy of the repository file with a conditional request, so that unchanged
+     * files (typically snapshot metadata that is checked on every build) are not downloaded again
+     */
+    private RepoArtifact getCachedRepositoryFile(RepoArtifactId id) {
+        RepoType type = getFactory().getType(id.getType());
+        String relativePath = getRelativePath(id, type.getId() + "_repository.xml");
+        File repositoryFile = new File(metadata, relativePath);
+
+        // Serialise requests for the same file only, as the cached copy and its validators are shared
+        synchronized (getLock(relativePath)) {
+            if (getRemoteFile(relativePath, repositoryFile, true) == HttpTransport.NOT_FOUND) {
+                repositoryFile.delete();
+
+                return null;
+            }
+
+            return parse(id, repositoryFile);
+        }
+    }
+
+    private Object getLock(String relativePath) {
+        synchronized (locks) {
+            Object lock = locks.get(relativePath);
+
+            if (lock == null) {
+                lock = new Object();
+                locks.put(relativePath, lock);
+            }
+
+            return lock;
+        }
+    }
+
     public RepoArtifact updateSnapshot(RepoArtifact artifact) {
         RepoArtifact latest = null;
 
@@ -335,10 +466,20 @@ public class UrlRepository extends AbstractStandardRepository {
     }
 
     public void rebuildCaches() {
-        boolean available = getRemoteIndex();
+        if (!indexed) {
+            return;
+        }
 
-        if (available) {
+        Properties remoteRevision = getRemoteRevision();
+        int status = getRemoteIndex();
+
+        if ((status == HttpTransport.OK) || (status == HttpTransport.NOT_MODIFIED)) {
             extractIndex();
+            saveArchiveRevision(remoteRevision);
+
+            if (remoteRevision != null) {
+                updateIndexIncrementally(remoteRevision);
+            }
         }
     }
 }
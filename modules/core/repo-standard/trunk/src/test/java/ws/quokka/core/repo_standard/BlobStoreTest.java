@@ -0,0 +1,86 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.repo_standard;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.File;
+
+
+/**
+ *
+ */
+public class BlobStoreTest extends AbstractTest {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private BlobStore store;
+    private IOUtils utils = new IOUtils();
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteOutputDir();
+        getOutputDir().mkdirs();
+        store = new BlobStore(new File(getOutputDir(), "blobs"));
+    }
+
+    public void testIdenticalContentIsStoredOnce() {
+        File first = new File(getOutputDir(), "repo1/first.jar");
+        File second = new File(getOutputDir(), "repo2/second.jar");
+        assertEquals(BlobStore.isLinkSupported(), store.put(write("a", "abc"), first));
+
+        if (!BlobStore.isLinkSupported()) {
+            assertFalse(first.exists());
+
+            return;
+        }
+
+        assertTrue(store.put(write("b", "abc"), second));
+        assertEquals("abc", utils.fileToString(first));
+        assertEquals("abc", utils.fileToString(second));
+
+        File blob = store.getBlob(ABC_SHA256);
+        assertEquals("abc", utils.fileToString(blob));
+        assertEquals(1, blob.getParentFile().getParentFile().list().length);
+
+        // Replacing a linked file leaves the store and other links untouched
+        assertTrue(store.put(write("c", "xyz"), first));
+        assertEquals("xyz", utils.fileToString(first));
+        assertEquals("abc", utils.fileToString(second));
+        assertEquals("abc", utils.fileToString(blob));
+    }
+
+    public void testAdd() {
+        File file = write("file", "abc");
+        assertEquals(BlobStore.isLinkSupported(), store.add(file));
+        assertEquals("abc", utils.fileToString(file));
+        assertEquals(BlobStore.isLinkSupported(), store.getBlob(ABC_SHA256).exists());
+    }
+
+    private File write(String name, String content) {
+        File file = new File(getOutputDir(), name);
+        utils.stringToFile(content, file);
+
+        return file;
+    }
+}
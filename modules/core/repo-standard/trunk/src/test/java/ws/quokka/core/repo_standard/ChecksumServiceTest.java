@@ -0,0 +1,91 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.repo_standard;
+
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.test.AbstractTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+
+/**
+ *
+ */
+public class ChecksumServiceTest extends AbstractTest {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private ChecksumService service = new ChecksumService();
+    private IOUtils utils = new IOUtils();
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteOutputDir();
+        getOutputDir().mkdirs();
+    }
+
+    public void testChecksums() {
+        File empty = write("empty", "");
+        File abc = write("abc", "abc");
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", service.checksum(empty));
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", service.checksum(abc));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            service.checksum(abc, ChecksumService.SHA256));
+    }
+
+    public void testCachedUntilModified() {
+        File file = write("file", "abc");
+        long lastModified = file.lastModified();
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", service.checksum(file));
+
+        // Same length and modification time, so the cached checksum is returned
+        write("file", "xyz").setLastModified(lastModified);
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", service.checksum(file));
+
+        file.setLastModified(lastModified - 10000);
+        assertEquals(new IOUtils().md5String("xyz".getBytes()), service.checksum(file));
+    }
+
+    public void testCopyCalculatesChecksum() {
+        File source = write("source", "abc");
+        source.setLastModified(source.lastModified() - 10000);
+
+        File destination = new File(getOutputDir(), "destination");
+        assertEquals("900150983cd24fb0d6963f7d28e17f72",
+            service.copy(source, destination, ChecksumService.MD5, true));
+        assertEquals("abc", utils.fileToString(destination));
+        assertEquals(source.lastModified(), destination.lastModified());
+
+        // The destination's checksum is cached from the copy
+        write("destination", "xyz").setLastModified(source.lastModified());
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", service.checksum(destination));
+
+        File streamed = new File(getOutputDir(), "streamed");
+        assertEquals(service.checksum(source, ChecksumService.SHA256),
+            service.copy(new ByteArrayInputStream("abc".getBytes()), streamed, ChecksumService.SHA256));
+        assertEquals("abc", utils.fileToString(streamed));
+    }
+
+    private File write(String name, String content) {
+        File file = new File(getOutputDir(), name);
+        utils.stringToFile(content, file);
+
+        return file;
+    }
+}
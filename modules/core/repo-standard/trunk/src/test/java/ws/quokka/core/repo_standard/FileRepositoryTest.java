@@ -17,9 +17,13 @@
 
 package ws.quokka.core.repo_standard;
 
+import ws.quokka.core.bootstrap_util.IOUtils;
+import ws.quokka.core.repo_spi.RepoArtifact;
 import ws.quokka.core.repo_spi.RepoArtifactId;
 import ws.quokka.core.version.Version;
 
+import java.io.File;
+
 import java.util.HashSet;
 import java.util.Set;
 
@@ -41,6 +45,24 @@ public class FileRepositoryTest extends AbstractRepositoryTest {
         resolveArtifact(new RepoArtifactId("group1", "name1", "jar", new Version("version1")), 1);
     }
 
+    public void testResolveWithParsedCache() {
+        File cache = new File(getOutputDir(), "parsed-repo");
+        delete(cache);
+        put("root", getTestCaseResource("hierarchical-repository").getAbsolutePath());
+        put("parsedCache", cache.getAbsolutePath());
+        initialise();
+
+        RepoArtifactId id = new RepoArtifactId("group1", "name1", "jar", new Version("version1"));
+        RepoArtifact parsed = resolveArtifact(id, 1);
+        assertEquals(1, cache.list().length);
+
+        RepoArtifact cached = resolveArtifact(id, 1);
+        assertEquals(parsed, cached);
+        assertEquals(parsed.getLocalCopy(), cached.getLocalCopy());
+        assertEquals(((FileRepository)repository).getRepositoryFile(id), cached.getRepositoryFile());
+        assertEquals(1, cache.list().length);
+    }
+
     public void testResolveArtifactHierachicalWithRepoVersion() {
         put("root", getTestCaseResource("hierarchical-repository").getAbsolutePath());
         initialise();
@@ -122,4 +144,77 @@ public class FileRepositoryTest extends AbstractRepositoryTest {
             remove(id);
         }
     }
+
+    public void testImportsShareBlobStore() {
+        deleteOutputDir();
+
+        File store = new File(getOutputDir(), "blobs");
+        properties.put(AbstractStandardRepository.PREFIX + "blobStore", store.getAbsolutePath());
+        put("root", new File(getOutputDir(), "repo1").getAbsolutePath());
+        put("parents", "parent");
+        put("other", "class", "file");
+        put("other", "root", new File(getOutputDir(), "repo2").getAbsolutePath());
+        put("other", "parents", "parent");
+        put("parent", "class", "file");
+        put("parent", "root", getTestCaseResource("hierarchical-repository").getAbsolutePath());
+        put("parent", "blobStore", "false"); // Leave the test resources alone
+        initialise();
+
+        RepoArtifactId id = new RepoArtifactId("group1", "name2", "jar", new Version("version1"));
+        File local = repository.resolve(id).getLocalCopy();
+        File other = factory.getOrCreate("other", true).resolve(id).getLocalCopy();
+        assertTrue(local.getPath().startsWith(new File(getOutputDir(), "repo1").getPath()));
+        assertTrue(other.getPath().startsWith(new File(getOutputDir(), "repo2").getPath()));
+
+        if (BlobStore.isLinkSupported()) {
+            // Both repositories link to the same blob
+            assertEquals(1, store.list().length);
+            assertEquals(1, store.listFiles()[0].list().length);
+        }
+    }
+
+    public void testCopyWithStoreDisabledDoesNotWriteThroughLinks() {
+        deleteOutputDir();
+
+        File store = new File(getOutputDir(), "blobs");
+        File root = new File(getOutputDir(), "repo");
+        put("root", root.getAbsolutePath());
+        put("blobStore", store.getAbsolutePath());
+        put("unlinked", "class", "file");
+        put("unlinked", "root", root.getAbsolutePath());
+        put("unlinked", "blobStore", "false");
+        initialise();
+
+        IOUtils utils = new IOUtils();
+        getOutputDir().mkdirs();
+
+        File original = new File(getOutputDir(), "original.jar");
+        utils.stringToFile("abc", original);
+        original.setLastModified(System.currentTimeMillis() - 20000);
+
+        RepoArtifactId id = new RepoArtifactId("group1", "name1", "jar", new Version("version1"));
+        RepoArtifact artifact = new RepoArtifact(id);
+        artifact.setLocalCopy(original);
+        repository.install(artifact);
+
+        File[] blobs = store.listFiles();
+
+        if (!BlobStore.isLinkSupported() || (blobs == null)) {
+            return;
+        }
+
+        File blob = blobs[0].listFiles()[0];
+        assertEquals("abc", utils.fileToString(blob));
+
+        // Installing different content over the link must replace it rather than write through it
+        File updated = new File(getOutputDir(), "updated.jar");
+        utils.stringToFile("xyz", updated);
+
+        RepoArtifact replacement = new RepoArtifact(id);
+        replacement.setLocalCopy(updated);
+        factory.getOrCreate("unlinked", true).install(replacement);
+
+        assertEquals("xyz", utils.fileToString(new File(root, "group1/version1/name1_jar.jar")));
+        assertEquals("abc", utils.fileToString(blob));
+    }
 }
@@ -20,12 +20,15 @@ package ws.quokka.core.repo_standard;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Untar;
 
+import ws.quokka.core.bootstrap_util.IOUtils;
 import ws.quokka.core.repo_spi.RepoArtifact;
 import ws.quokka.core.repo_spi.RepoArtifactId;
 import ws.quokka.core.version.Version;
 
 import java.io.File;
 
+import java.util.Properties;
+
 
 /**
  *
@@ -41,6 +44,7 @@ public class IndexedRepositoryTest extends AbstractRepositoryTest {
         deleteOutputDir();
         put("root", "somefile");
         put("indexRoot", getOutputDir().getPath());
+        put("indexCompaction", "1"); // Rewrite the archive on every change
         put("somefile", "root", getTestResource("FileRepositoryTest/hierarchical-repository").getAbsolutePath());
         put("somefile", "class", "file");
         initialise();
@@ -68,6 +72,71 @@ public class IndexedRepositoryTest extends AbstractRepositoryTest {
         }
     }
 
+    public void testChangesAreAppendedAndBatched() {
+        deleteOutputDir();
+        put("root", "files");
+        put("indexRoot", getOutputDir().getPath());
+        put("indexCompaction", "3");
+        put("files", "root", new File(getOutputDir(), "files").getAbsolutePath());
+        put("files", "class", "file");
+        initialise();
+
+        IndexedRepository indexed = (IndexedRepository)repository;
+        indexed.install(new RepoArtifact(pathsId("name1"))); // Writes the initial archive
+        indexed.install(new RepoArtifact(pathsId("name2")));
+        assertRevision(2, 1);
+
+        // A batch is published as a single change
+        indexed.startBatch();
+        indexed.install(new RepoArtifact(pathsId("name3")));
+        indexed.install(new RepoArtifact(pathsId("name4")));
+        indexed.remove(pathsId("name3"));
+        indexed.commitBatch();
+        assertRevision(3, 1);
+
+        Properties change = new IOUtils().loadProperties(new File(getOutputDir(), IndexChangeLog.getChangePath(3)));
+        assertTrue(change.containsKey("delete:group1/1.0/name3_paths_repository.xml"));
+        assertTrue(change.containsKey("put:group1/1.0/name4_paths_repository.xml"));
+
+        // The archive is compacted once enough changes have accumulated
+        indexed.install(new RepoArtifact(pathsId("name5")));
+        assertRevision(4, 4);
+
+        File extractedDir = new File(getOutputDir(), "untarred-index");
+        untar(new File(getOutputDir(), "_index.tar.bz2"), extractedDir);
+        assertExists(extractedDir, "group1/1.0/name2_paths_repository.xml");
+        assertExists(extractedDir, "group1/1.0/name5_paths_repository.xml");
+        assertNotExists(extractedDir, "group1/1.0/name3_paths_repository.xml");
+    }
+
+    public void testArchiveIsNotRewrittenOnEveryChangeByDefault() {
+        deleteOutputDir();
+        put("root", "files");
+        put("indexRoot", getOutputDir().getPath());
+        put("files", "root", new File(getOutputDir(), "files").getAbsolutePath());
+        put("files", "class", "file");
+        initialise();
+
+        IndexedRepository indexed = (IndexedRepository)repository;
+        indexed.install(new RepoArtifact(pathsId("name1"))); // Writes the initial archive
+
+        for (int i = 2; i <= 5; i++) {
+            indexed.install(new RepoArtifact(pathsId("name" + i)));
+        }
+
+        assertRevision(5, 1);
+    }
+
+    private void assertRevision(long revision, long archive) {
+        Properties properties = new IOUtils().loadProperties(new File(getOutputDir(), IndexChangeLog.REVISION_FILE));
+        assertEquals(revision, IndexChangeLog.getRevision(properties));
+        assertEquals(archive, IndexChangeLog.getArchive(properties));
+    }
+
+    private RepoArtifactId pathsId(String name) {
+        return new RepoArtifactId("group1", name, "paths", new Version("1.0"));
+    }
+
     private void untar(File out, File extractedDir) {
         Project project = new Project();
         project.init();
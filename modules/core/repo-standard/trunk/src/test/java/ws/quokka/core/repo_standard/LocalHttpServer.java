@@ -0,0 +1,293 @@
+/*
+ * Copyright 2007-2008 Andrew O'Malley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ws.quokka.core.repo_standard;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * LocalHttpServer is a minimal HTTP/1.1 server for testing transports. It serves content added via
+ * {@link #put(String, byte[], String)} or from a root directory, supports persistent connections and ETag based
+ * conditional requests, and records the requests and connections it receives.
+ */
+public class LocalHttpServer implements Runnable {
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private ServerSocket serverSocket;
+    private Map resources = Collections.synchronizedMap(new HashMap());
+    private List requests = Collections.synchronizedList(new ArrayList());
+    private List sockets = Collections.synchronizedList(new ArrayList());
+    private volatile boolean closed;
+    private File root;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    public LocalHttpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread thread = new Thread(this, "LocalHttpServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    /**
+     * Serves the content given at the path, which is relative to the root url
+     * @param etag the entity tag to return, or null to omit it
+     */
+    public void put(String path, byte[] content, String etag) {
+        resources.put("/" + path, new Resource(content, etag, 200));
+    }
+
+    /**
+     * Responds to requests for the path with the status given and no content
+     */
+    public void putStatus(String path, int status) {
+        resources.put("/" + path, new Resource(new byte[0], null, status));
+    }
+
+    /**
+     * Serves files from the directory given for paths that have not been added via put
+     */
+    public void setRoot(File root) {
+        this.root = root;
+    }
+
+    public List getRequests() {
+        return requests;
+    }
+
+    public Request getLastRequest() {
+        return (Request)requests.get(requests.size() - 1);
+    }
+
+    public int getConnections() {
+        return sockets.size();
+    }
+
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+
+        synchronized (sockets) {
+            for (Iterator i = sockets.iterator(); i.hasNext();) {
+                ((Socket)i.next()).close();
+            }
+        }
+    }
+
+    public void run() {
+        while (!closed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                sockets.add(socket);
+
+                Thread thread = new Thread(new Runnable() {
+                            public void run() {
+                                handle(socket);
+                            }
+                        }, "LocalHttpServer-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            while (true) {
+                String line = readLine(in);
+
+                if ((line == null) || (line.length() == 0)) {
+                    break;
+                }
+
+                String[] tokens = line.split(" ");
+                Request request = new Request(tokens[0], tokens[1]);
+
+                for (String header = readLine(in); (header != null) && (header.length() != 0);
+                        header = readLine(in)) {
+                    int colon = header.indexOf(':');
+                    request.headers.put(header.substring(0, colon).trim().toLowerCase(Locale.US),
+                        header.substring(colon + 1).trim());
+                }
+
+                respond(request, out);
+
+                if ("close".equalsIgnoreCase(request.getHeader("connection"))) {
+                    break;
+                }
+            }
+
+            socket.close();
+        } catch (IOException e) {
+            // Connection dropped by the client or server closed
+        }
+    }
+
+    private void respond(Request request, OutputStream out)
+            throws IOException {
+        Resource resource = (Resource)resources.get(request.path);
+        File file = (root == null) ? null : new File(root, request.path.substring(1));
+
+        if ((resource == null) && (file != null) && file.isFile()) {
+            resource = new Resource(read(file), null, 200);
+        }
+
+        byte[] body;
+        String headers = "";
+
+        if (resource == null) {
+            request.status = 404;
+            body = "Not found".getBytes("UTF8");
+        } else if (resource.status != 200) {
+            request.status = resource.status;
+            body = resource.content;
+        } else if ((resource.etag != null) && resource.etag.equals(request.getHeader("if-none-match"))) {
+            request.status = 304;
+            body = null;
+            headers = "ETag: " + resource.etag + "\r\n";
+        } else {
+            request.status = 200;
+            body = resource.content;
+            headers = (resource.etag == null) ? "" : ("ETag: " + resource.etag + "\r\n");
+        }
+
+        StringBuffer response = new StringBuffer("HTTP/1.1 ").append(request.status).append(" Status\r\n");
+        response.append(headers);
+
+        if (body != null) {
+            response.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+
+        response.append("\r\n");
+        requests.add(request); // Recorded before responding so that it is visible as soon as the client continues
+        out.write(response.toString().getBytes("UTF8"));
+
+        if ((body != null) && !request.method.equals("HEAD")) {
+            out.write(body);
+        }
+
+        out.flush();
+    }
+
+    private byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        StringBuffer line = new StringBuffer();
+
+        while (true) {
+            int ch = in.read();
+
+            if (ch == -1) {
+                return (line.length() == 0) ? null : line.toString();
+            }
+
+            if (ch == '\n') {
+                return line.toString();
+            }
+
+            if (ch != '\r') {
+                line.append((char)ch);
+            }
+        }
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    public static class Request {
+        private String method;
+        private String path;
+        private Map headers = new HashMap();
+        private int status;
+
+        public Request(String method, String path) {
+            this.method = method;
+            this.path = path;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the value of the header, where the name given is lower case
+         */
+        public String getHeader(String name) {
+            return (String)headers.get(name);
+        }
+    }
+
+    private static class Resource {
+        private byte[] content;
+        private String etag;
+        private int status;
+
+        public Resource(byte[] content, String etag, int status) {
+            this.content = content;
+            this.etag = etag;
+            this.status = status;
+        }
+    }
+}
@@ -17,15 +17,24 @@
 
 package ws.quokka.core.repo_standard;
 
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Tar;
 import org.apache.tools.ant.util.FileUtils;
 
+import ws.quokka.core.bootstrap_util.IOUtils;
 import ws.quokka.core.repo_spi.RepoArtifact;
 import ws.quokka.core.repo_spi.RepoArtifactId;
+import ws.quokka.core.repo_spi.UnresolvedArtifactException;
 import ws.quokka.core.version.Version;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -35,12 +44,28 @@ import java.util.Set;
  *
  */
 public class UrlRepositoryTest extends AbstractRepositoryTest {
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    private static final String XML_PATH = "group1/version1/name1_jar_repository.xml";
+    private static final String JAR_PATH = "group1/version1/name1_jar.jar";
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    private LocalHttpServer server;
+    private RepoArtifactId id = new RepoArtifactId("group1", "name1", "jar", new Version("version1"));
+
     //~ Methods --------------------------------------------------------------------------------------------------------
 
     protected void setUp() throws Exception {
         name = "url";
     }
 
+    protected void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
     public void testIndexing() throws InterruptedException, IOException {
         deleteOutputDir();
 
@@ -72,6 +97,230 @@ public class UrlRepositoryTest extends AbstractRepositoryTest {
 //        assertTrue(artifacts.contains("group2.subgroup1:name3:paths:1.1~3: null"));
     }
 
+    public void testHttpResolveReusesConnection() throws IOException {
+        startServer(false);
+        server.put(JAR_PATH, "jar".getBytes(), null);
+        server.put(XML_PATH, getRepositoryXml(), "\"v1\"");
+
+        RepoArtifact artifact = resolveArtifact(id, 1);
+        assertEquals("jar", new IOUtils().fileToString(artifact.getLocalCopy()));
+
+        // Missing files are detected from the response to a single request
+        try {
+            repository.resolve(new RepoArtifactId("group1", "missing", "jar", new Version("version1")));
+            fail("Expected exception");
+        } catch (UnresolvedArtifactException e) {
+            // Expected
+        }
+
+        assertEquals(4, server.getRequests().size());
+        assertEquals(404, server.getLastRequest().getStatus());
+        assertEquals(1, server.getConnections());
+    }
+
+    public void testServerErrorIsNotTreatedAsMissing()
+            throws IOException {
+        startServer(false);
+        server.putStatus(JAR_PATH, 500);
+
+        try {
+            repository.resolve(id);
+            fail("Expected exception");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage().indexOf("500") != -1);
+        }
+    }
+
+    public void testSnapshotMetadataIsRevalidated() throws IOException {
+        startServer(false);
+        server.put(JAR_PATH, "jar".getBytes(), null);
+        server.put(XML_PATH, getRepositoryXml(), "\"v1\"");
+
+        RepoArtifact artifact = resolveArtifact(id, 1);
+        assertNull(server.getLastRequest().getHeader("if-none-match"));
+
+        // The cached copy is reused as the server reports it is unchanged
+        assertNull(repository.updateSnapshot(artifact));
+        assertEquals(XML_PATH, server.getLastRequest().getPath().substring(1));
+        assertEquals("\"v1\"", server.getLastRequest().getHeader("if-none-match"));
+        assertEquals(304, server.getLastRequest().getStatus());
+    }
+
+    public void testConcurrentRevalidation() throws IOException, InterruptedException {
+        startServer(false);
+        server.put(JAR_PATH, "jar".getBytes(), null);
+        server.put(XML_PATH, getRepositoryXml(), "\"v1\"");
+
+        final RepoArtifact artifact = resolveArtifact(id, 1);
+        final Throwable[] errors = new Throwable[8];
+        Thread[] threads = new Thread[errors.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                        public void run() {
+                            try {
+                                repository.updateSnapshot(artifact);
+                            } catch (Throwable e) {
+                                errors[index] = e;
+                            }
+                        }
+                    };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertNull(errors[i]);
+        }
+
+        // Downloads are made to temporary files that are always renamed or removed
+        File[] files = new File(getOutputDir(), "cache/url-repo/url-metadata/" + XML_PATH).getParentFile().listFiles();
+        assertEquals(2, files.length); // The repository file and its validators
+    }
+
+    public void testIndexIsRevalidated() throws IOException {
+        startServer(true);
+        server.put("_index.tar.bz2", createIndex(), "\"i1\"");
+        assertEquals(1, repository.listArtifactIds(false).size());
+
+        // Expire the index, which should then be revalidated rather than downloaded
+        File indexArchive = expireIndex();
+        assertEquals(1, repository.listArtifactIds(false).size());
+
+        assertEquals(4, server.getRequests().size()); // Each update also asks for the (unpublished) revision
+        assertEquals("\"i1\"", server.getLastRequest().getHeader("if-none-match"));
+        assertEquals(304, server.getLastRequest().getStatus());
+        assertTrue((System.currentTimeMillis() - indexArchive.lastModified()) < (1000L * 60 * 60));
+    }
+
+    public void testIndexIsUpdatedIncrementally() throws IOException {
+        IndexedRepository publisher = startPublisher(10, 10);
+        publisher.install(new RepoArtifact(pathsId("name1")));
+        assertEquals(1, repository.listArtifactIds(false).size());
+
+        publisher.install(new RepoArtifact(pathsId("name2")));
+        expireIndex();
+
+        // Only the revision and the new change are fetched
+        int requests = server.getRequests().size();
+        assertEquals(2, repository.listArtifactIds(false).size());
+        assertEquals(requests + 2, server.getRequests().size());
+        assertEquals("/_index-changes/2.properties", server.getLastRequest().getPath());
+
+        publisher.remove(pathsId("name1"));
+        expireIndex();
+
+        Collection ids = repository.listArtifactIds(false);
+        assertEquals(1, ids.size());
+        assertTrue(ids.contains(pathsId("name2")));
+    }
+
+    public void testCompactedChangesFallBackToArchive()
+            throws IOException {
+        IndexedRepository publisher = startPublisher(1, 1);
+        publisher.install(new RepoArtifact(pathsId("name1")));
+        assertEquals(1, repository.listArtifactIds(false).size());
+
+        // The change for revision 2 is compacted away by revision 3
+        publisher.install(new RepoArtifact(pathsId("name2")));
+        publisher.install(new RepoArtifact(pathsId("name3")));
+        expireIndex();
+        assertEquals(3, repository.listArtifactIds(false).size());
+        assertEquals("/_index.tar.bz2", server.getLastRequest().getPath());
+        assertEquals(200, server.getLastRequest().getStatus());
+    }
+
+    public void testArchiveIsCombinedWithLaterChanges()
+            throws IOException {
+        IndexedRepository publisher = startPublisher(10, 10);
+        publisher.install(new RepoArtifact(pathsId("name1")));
+        publisher.install(new RepoArtifact(pathsId("name2"))); // Appended to the log only
+        assertEquals(2, repository.listArtifactIds(false).size());
+        assertEquals("/_index-changes/2.properties", server.getLastRequest().getPath());
+    }
+
+    private IndexedRepository startPublisher(int maxChanges, int compaction)
+            throws IOException {
+        File published = new File(getOutputDir(), "published");
+        put("publisher", "class", "indexed");
+        put("publisher", "root", "published-files");
+        put("publisher", "indexRoot", published.getAbsolutePath());
+        put("publisher", "indexChanges", Integer.toString(maxChanges));
+        put("publisher", "indexCompaction", Integer.toString(compaction));
+        put("published-files", "class", "file");
+        put("published-files", "root", new File(published, "files").getAbsolutePath());
+        startServer(true);
+        server.setRoot(published);
+
+        return (IndexedRepository)factory.getOrCreate("publisher", true);
+    }
+
+    private RepoArtifactId pathsId(String name) {
+        return new RepoArtifactId("group1", name, "paths", new Version("1.0"));
+    }
+
+    private File expireIndex() {
+        File indexArchive = new File(getOutputDir(), "index/_index.tar.bz2");
+        indexArchive.setLastModified(System.currentTimeMillis() - (1000L * 60 * 60 * 48));
+
+        return indexArchive;
+    }
+
+    private void startServer(boolean indexed) throws IOException {
+        deleteOutputDir();
+        server = new LocalHttpServer();
+        properties.put("q.cacheDir", new File(getOutputDir(), "cache").getAbsolutePath());
+        put("root", server.getUrl());
+        put("indexed", Boolean.toString(indexed));
+        put("index", new File(getOutputDir(), "index").getAbsolutePath());
+        initialise();
+    }
+
+    private byte[] getRepositoryXml() throws IOException {
+        return read(getTestResource("FileRepositoryTest/hierarchical-repository/" + XML_PATH));
+    }
+
+    private byte[] createIndex() throws IOException {
+        File dir = new File(getOutputDir(), "index-source");
+        IOUtils utils = new IOUtils();
+        utils.createDir(new File(dir, "group1/version1"));
+        utils.stringToFile(new String(getRepositoryXml(), "UTF8"), new File(dir, XML_PATH));
+        utils.stringToFile("d41d8cd98f00b204e9800998ecf8427e", new File(dir, JAR_PATH + ".MD5"));
+
+        File archive = new File(getOutputDir(), "_index.tar.bz2");
+        Tar tar = new Tar();
+        Project project = new Project();
+        project.init();
+        tar.setProject(project);
+        tar.setDestFile(archive);
+        tar.setBasedir(dir);
+
+        Tar.TarCompressionMethod method = new Tar.TarCompressionMethod();
+        method.setValue("bzip2");
+        tar.setCompression(method);
+        tar.execute();
+
+        return read(archive);
+    }
+
+    private byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
     public void testRemoteResolve() {
         put("root", "http://quokka.ws/repository/0.2");
         initialise();
@@ -33,7 +33,7 @@ import java.util.Set;
 public class Annotations implements Cloneable {
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
-    private Map annotations = new HashMap();
+    private Map annotations; // Created on demand as most objects are never annotated
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
@@ -41,6 +41,10 @@ public class Annotations implements Cloneable {
      * Stores an annotation
      */
     public void put(String key, Object value) {
+        if (annotations == null) {
+            annotations = new HashMap();
+        }
+
         annotations.put(key, value);
     }
 
@@ -48,21 +52,21 @@ public class Annotations implements Cloneable {
      * Returns the annotation, or null if it doesn't exist
      */
     public Object get(String key) {
-        return annotations.get(key);
+        return (annotations == null) ? null : annotations.get(key);
     }
 
     /**
      * Removes an annotation
      */
     public Object remove(String key) {
-        return annotations.remove(key);
+        return (annotations == null) ? null : annotations.remove(key);
     }
 
     /**
      * Returns the keys of all annotations
      */
     public Set entrySet() {
-        return Collections.unmodifiableMap(annotations).entrySet();
+        return (annotations == null) ? Collections.EMPTY_SET : Collections.unmodifiableMap(annotations).entrySet();
     }
 
     /**
@@ -72,7 +76,8 @@ public class Annotations implements Cloneable {
         return new ExceptionHandler() {
                 public Object run() throws CloneNotSupportedException {
                     Annotations clone = (Annotations)Annotations.super.clone();
-                    clone.annotations = (Map)((HashMap)clone.annotations).clone();
+                    clone.annotations = (clone.annotations == null) ? null
+                                                                    : (Map)((HashMap)clone.annotations).clone();
 
                     return clone;
                 }
@@ -37,7 +37,11 @@ package ws.quokka.core.version;
  */
 import ws.quokka.core.bootstrap_util.Assert;
 
+import java.lang.ref.WeakReference;
+
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.WeakHashMap;
 
 
 /**
@@ -70,11 +74,15 @@ import java.util.StringTokenizer;
  * NOTE: Qualifier handling is different in OSGi vs JSR 277. Qualified versions are greater than unqualified
  * in OSGi, but are less than in 277. This takes the 277 approach. Unlike 277, the underscore character
  * is not permitted anywhere within the version.
+ * <p/>
+ * Versions are immutable. Canonical instances can be obtained via {@link #intern()} for use in long lived
+ * collections.
  */
 public class Version implements Comparable {
     //~ Static fields/initializers -------------------------------------------------------------------------------------
 
     private static final String SEPARATOR = "."; //$NON-NLS-1$
+    private static final Map CANONICAL = new WeakHashMap(); // Version -> WeakReference(Version)
 
     /**
      * The empty version "0.0.0.0". Equivalent to calling
@@ -91,6 +99,8 @@ public class Version implements Comparable {
     private String qualifier;
     private int repositoryVersion;
     private String nonStandardString;
+    private String string; // Cached as versions are immutable
+    private int hash;
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
 
@@ -289,6 +299,24 @@ public class Version implements Comparable {
         return new Version(version);
     }
 
+    /**
+     * Returns the canonical instance of this version. As versions are immutable, the first instance
+     * interned becomes the canonical instance for all equal versions.
+     */
+    public Version intern() {
+        synchronized (CANONICAL) {
+            WeakReference reference = (WeakReference)CANONICAL.get(this);
+            Version canonical = (reference == null) ? null : (Version)reference.get();
+
+            if (canonical == null) {
+                canonical = this;
+                CANONICAL.put(canonical, new WeakReference(canonical));
+            }
+
+            return canonical;
+        }
+    }
+
     /**
      * Returns the major component of this version identifier.
      *
@@ -344,13 +372,17 @@ public class Version implements Comparable {
      * @return The string representation of this version identifier.
      */
     public String toString() {
-        if (nonStandardString != null) {
-            return nonStandardString + ((repositoryVersion == 0) ? "" : ("~" + repositoryVersion));
+        if (string == null) {
+            if (nonStandardString != null) {
+                string = nonStandardString + ((repositoryVersion == 0) ? "" : ("~" + repositoryVersion));
+            } else {
+                string = major + SEPARATOR + minor + (((micro == 0) && (update == 0)) ? "" : (SEPARATOR + micro))
+                    + ((update == 0) ? "" : (SEPARATOR + update)) + ((qualifier == null) ? "" : ("-" + qualifier))
+                    + ((repositoryVersion == 0) ? "" : ("~" + repositoryVersion));
+            }
         }
 
-        return major + SEPARATOR + minor + (((micro == 0) && (update == 0)) ? "" : (SEPARATOR + micro))
-        + ((update == 0) ? "" : (SEPARATOR + update)) + ((qualifier == null) ? "" : ("-" + qualifier))
-        + ((repositoryVersion == 0) ? "" : ("~" + repositoryVersion));
+        return string;
     }
 
     /**
@@ -359,6 +391,14 @@ public class Version implements Comparable {
      * @return An integer which is a hash code value for this object.
      */
     public int hashCode() {
+        if (hash == 0) {
+            hash = calculateHashCode();
+        }
+
+        return hash;
+    }
+
+    private int calculateHashCode() {
         if (nonStandardString != null) {
             return (nonStandardString.hashCode() * 31) + repositoryVersion;
         }
@@ -37,7 +37,7 @@ public class VersionRange {
     private boolean isLowInclusive = false;
     private Version high = null;
     private boolean isHighInclusive = false;
-    private String toString = null;
+    private String toString = null; // Lazily generated, so excluded from equals and hashCode
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
 
@@ -173,15 +173,7 @@ public class VersionRange {
             return false;
         }
 
-        if ((low != null) ? (!low.equals(that.low)) : (that.low != null)) {
-            return false;
-        }
-
-        if ((toString != null) ? (!toString.equals(that.toString)) : (that.toString != null)) {
-            return false;
-        }
-
-        return true;
+        return !((low != null) ? (!low.equals(that.low)) : (that.low != null));
     }
 
     public int hashCode() {
@@ -190,7 +182,6 @@ public class VersionRange {
         result = (31 * result) + (isLowInclusive ? 1 : 0);
         result = (31 * result) + ((high != null) ? high.hashCode() : 0);
         result = (31 * result) + (isHighInclusive ? 1 : 0);
-        result = (31 * result) + ((toString != null) ? toString.hashCode() : 0);
 
         return result;
     }